@@ -0,0 +1,100 @@
+package assignment2;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Accepts connections from one listening socket on its own thread and hands each to a dispatcher.
+ *
+ * Counts the connections it accepted and the accepts that failed, and how many it accepted in the
+ * last full second, so uneven load between several acceptors on one port shows up in the metrics.
+ * A failed accept, such as one refused because the process is out of file descriptors, is retried
+ * after a short jittered backoff rather than at once, so a persistent failure does not spin a core.
+ * The loop ends when the listening socket is closed.
+ */
+public class Acceptor implements Runnable {
+    // First retry after a failed accept waits up to this long; further failures double it up to the cap
+    private static final long RETRY_BASE_MS = 10;
+    private static final long RETRY_MAX_MS = 500;
+
+    private final ServerSocket serverSocket;
+    private final Consumer<Socket> dispatch;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    // Accepts in the current and the previous second; written by the accepting thread only
+    private volatile long currentSecond = 0;
+    private volatile long currentCount = 0;
+    private volatile long previousCount = 0;
+
+    /**
+     * Creates an acceptor for the socket; dispatch is called with every accepted connection.
+     */
+    public Acceptor(ServerSocket serverSocket, Consumer<Socket> dispatch) {
+        this.serverSocket = serverSocket;
+        this.dispatch = dispatch;
+    }
+
+    @Override
+    public void run() {
+        Backoff backoff = new Backoff(RETRY_BASE_MS, RETRY_MAX_MS);
+        while (true) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (serverSocket.isClosed()) return;
+                errors.increment();
+                System.err.println("Accept failed: " + e.getMessage());
+                try {
+                    Thread.sleep(backoff.nextDelay());
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                continue;
+            }
+            backoff.reset();
+            accepted.increment();
+            countAccept(System.currentTimeMillis() / 1000);
+            dispatch.accept(socket);
+        }
+    }
+
+    /**
+     * Returns the number of connections accepted so far.
+     */
+    public long getAccepted() {
+        return accepted.sum();
+    }
+
+    /**
+     * Returns the number of accepts that failed while the socket was open.
+     */
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    /**
+     * Returns the number of connections accepted during the last full second.
+     */
+    public long getLastSecondCount() {
+        long second = System.currentTimeMillis() / 1000;
+        long current = currentSecond;
+        if (second == current + 1) return currentCount;
+        if (second == current) return previousCount;
+        return 0;
+    }
+
+    private void countAccept(long second) {
+        if (second != currentSecond) {
+            previousCount = second == currentSecond + 1 ? currentCount : 0;
+            currentCount = 0;
+            currentSecond = second;
+        }
+        currentCount++;
+    }
+}
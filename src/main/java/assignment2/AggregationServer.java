@@ -2,247 +2,1136 @@ package assignment2;
 
 import java.io.*;
 import java.net.*;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * AggregationServer listens for Content Servers PUTting weather data and Read Clients GETting aggregated weather data.
- * Manages Lamport clocks for ordering and expires old data after 30 seconds.
+ * Manages Lamport clocks for ordering and expires old data after 30 seconds by default.
+ * Optionally streams applied PUTs to backup servers, which serve GETs and take over PUTs on failover,
+ * and can run as one shard of a cluster that partitions stations by consistent hashing.
+ *
+ * Each instance is configured by a ServerConfig and holds all of its own state, so several servers
+ * can run in one JVM; start() binds and serves in the background and stop() shuts down gracefully.
  */
 public class AggregationServer {
-    // Expiry threshold for weather data in milliseconds (30 seconds)
-    private static final int EXPIRY_MS = 30000;
-    // Persistent data store file name
-    private static final String DATA_STORE = "server_data.json";
+    // Size of each chunk of a streamed GET response, which bounds its buffer memory
+    private static final int GET_CHUNK_BYTES = 8192;
+    // Interval between expiry sweeps, and between evictions of idle rate-limit buckets
+    private static final long EXPIRY_SWEEP_MS = 2000;
+    private static final long LIMITER_EVICT_MS = 10000;
+    // Number of compiled GET filters kept for reuse
+    private static final int FILTER_CACHE_SIZE = 256;
+    // Bytes of change log entries sent per GET /changes unless the client asks for fewer or more
+    private static final long CHANGES_DEFAULT_BYTES = 1 << 20;
+    // Response bodies that never change, encoded once
+    private static final byte[] MISSING_LENGTH_BODY = HttpResponses.utf8("Missing Content-Length.\r\n");
+    private static final byte[] INVALID_JSON_BODY = HttpResponses.utf8("Invalid JSON.\r\n");
+    private static final byte[] NO_DATA_BODY = HttpResponses.utf8("No weather data available.");
+    private static final byte[] READY_BODY = HttpResponses.utf8("ready\r\n");
+    private static final byte[] DRAINING_BODY = HttpResponses.utf8("draining\r\n");
+    private static final byte[] PERSIST_FAILED_BODY = HttpResponses.utf8("Failed to persist update.\r\n");
+    private static final byte[] CAPACITY_BODY = HttpResponses.utf8("Station capacity reached.\r\n");
+    private static final byte[] NO_CHANGE_LOG_BODY = HttpResponses.utf8("No change log configured.\r\n");
+    private static final byte[] CHANGES_GONE_BODY = HttpResponses.utf8("Offset no longer retained.\r\n");
+
+    private final ServerConfig config;
+
+    // Field types and ranges every stored record satisfies
+    private final WeatherSchema schema;
+
+    // Snapshot file the checkpointer writes to and the loader recovers from; null when persistence is off
+    private final SnapshotStore store;
+
+    // Backups receiving every PUT this server applies on behalf of a client
+    final List<Replicator> replicas = new CopyOnWriteArrayList<>();
+
+    // Routes requests to the shard owning each station; null when running unsharded
+    volatile ShardRouter router = null;
+
+    // Addresses of the configured backups and shards, whose replicated and forwarded PUTs are trusted
+    private volatile Set<InetAddress> peerAddresses = Set.of();
+
+    // Set whenever in-memory data changes after the last checkpoint
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+
+    // Bumped on every change to the stored data; sent in the ETag of local GET responses
+    private final AtomicLong version = new AtomicLong();
+    // Random per-instance prefix of the ETag, so a version number from before a restart or from
+    // another server never matches this one's
+    private final String etagPrefix = "\"" + Long.toHexString(ThreadLocalRandom.current().nextLong()) + "-";
+
+    // Compiled GET filters keyed by expression, in least-recently-used order
+    private final Map<String, RecordFilter> filters = Collections.synchronizedMap(
+            new LinkedHashMap<String, RecordFilter>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, RecordFilter> eldest) {
+                    return size() > FILTER_CACHE_SIZE;
+                }
+            });
+
+    /**
+     * Outcome of merging a record into the stored data.
+     */
+    enum StoreResult {
+        // Stored for a station that had no record
+        CREATED,
+        // Stored in place of an older record
+        REPLACED,
+        // Not stored; the station already has a newer record
+        STALE,
+        // Not stored; the station's record has the same Lamport time and source, so it is this write sent again
+        DUPLICATE,
+        // Not stored; a capacity limit is reached and eviction is off
+        REFUSED
+    }
 
     // Thread-safe map storing weather data keyed by content server ID
-    static final Map<String, WeatherRecord> data = new ConcurrentHashMap<>();
+    final Map<String, WeatherRecord> data = new ConcurrentHashMap<>();
+
+    // Station count and memory limits on data, with the eviction queue
+    final StationCapacity capacity;
+
+    // Wall-clock time for record timestamps and expiry
+    private final TimeSource timeSource;
 
     // Lamport clock instance used for synchronization of events
-    private static final LamportClock clock = new LamportClock();
+    private final LamportClock clock = new LamportClock();
+
+    // Applied PUTs, expiries, evictions and hand-offs served at GET /changes; set by start() when configured
+    private ChangeLog changeLog;
+
+    // Counters and gauges served at GET /metrics
+    final Metrics metrics = new Metrics();
+
+    // Token buckets admitting PUTs per station id and per client address
+    volatile RateLimiter stationLimiter;
+    volatile RateLimiter addressLimiter;
+
+    // Deadlines for receiving the request line plus headers, and the PUT body
+    volatile long headerTimeoutMs;
+    volatile long bodyTimeoutMs;
+    // Largest Content-Length a PUT may declare
+    volatile int maxBodyBytes;
+
+    // Cleared when shutdown starts, so GET /ready tells load balancers to stop sending traffic
+    volatile boolean ready = true;
+    // Connections currently being handled, which shutdown waits for
+    final AtomicInteger inFlight = new AtomicInteger();
+    // Keep-alive connections waiting for their next request, which shutdown closes rather than waits for
+    private final Set<Socket> idleConnections = ConcurrentHashMap.newKeySet();
+
+    // Listeners, the threads serving them and background schedulers; set by start(), closed in order by stop()
+    private List<ServerSocket> listeners;
+    private final List<Thread> acceptors = new ArrayList<>();
+    private ExecutorService connectionPool;
+    private ScheduledExecutorService expiryService;
+    private ScheduledExecutorService checkpointService;
+    private boolean stopped = false;
+
+    /**
+     * Creates a server from the given settings. Nothing is loaded or bound until start().
+     */
+    public AggregationServer(ServerConfig config) {
+        this.config = config;
+        this.schema = config.getSchema();
+        this.timeSource = config.getTimeSource();
+        this.store = config.getPersistence() == ServerConfig.Persistence.NONE
+                ? null : new SnapshotStore(config.getDataPath().toString(), timeSource);
+        this.stationLimiter = new RateLimiter(config.getStationRate(), config.getStationBurst());
+        this.addressLimiter = new RateLimiter(config.getAddressRate(), config.getAddressBurst());
+        this.headerTimeoutMs = config.getHeaderTimeoutMs();
+        this.bodyTimeoutMs = config.getBodyTimeoutMs();
+        this.maxBodyBytes = config.getMaxBodyBytes();
+        this.capacity = new StationCapacity(data, config.getMaxStations(), config.getMaxBytes(), config.getEviction());
+
+        metrics.gauge("stations", data::size);
+        metrics.gauge("capacity.bytes", capacity::getBytes);
+        metrics.gauge("connections.active", inFlight::get);
+        metrics.gauge("ratelimit.station.rate_per_sec", () -> (long) stationLimiter.getRatePerSecond());
+        metrics.gauge("ratelimit.station.burst", () -> stationLimiter.getBurst());
+        metrics.gauge("ratelimit.station.buckets", () -> stationLimiter.size());
+        metrics.gauge("ratelimit.address.rate_per_sec", () -> (long) addressLimiter.getRatePerSecond());
+        metrics.gauge("ratelimit.address.burst", () -> addressLimiter.getBurst());
+        metrics.gauge("ratelimit.address.buckets", () -> addressLimiter.size());
+    }
 
     /**
      * Main method to start the Aggregation Server on specified port (default 4567).
-     * Loads persisted data, starts expiry scheduler, and accepts client connections.
+     * Loads persisted data, starts expiry and checkpoint schedulers, and accepts client connections.
      *
-     * @param args Optional first argument is port number.
+     * @param args Optional first argument is port number (0 for any free port), optionally followed by
+     *             "--checkpoint-ms N" to set the background checkpoint interval,
+     *             "--data-dir D" / "--data-file F" to choose the snapshot file,
+     *             "--expiry-ms N" to change how long a station's data lives without updates,
+     *             "--threading thread-per-connection|pool|virtual" with "--pool-size N" to choose connection threads,
+     *             "--persistence checkpoint|sync|none" to choose when updates reach disk,
+     *             "--replicate-to host:port,..." to stream applied PUTs to backup servers (requires --cluster-secret,
+     *             which each backup must be given too),
+     *             "--shards host:port,..." to join a sharded cluster of those nodes,
+     *             "--self host:port" to name this node in the shard list (default localhost:port),
+     *             "--cluster-secret S" to send S with replicated and forwarded PUTs, and trust such PUTs carrying it,
+     *             "--station-rate R" / "--station-burst B" to limit PUTs per station (0 disables), and
+     *             "--address-rate R" / "--address-burst B" to limit PUTs per client address (0 disables),
+     *             "--header-timeout-ms N" / "--body-timeout-ms N" to bound how long a request may take, and
+     *             "--max-body-bytes N" to cap the size of a PUT body,
+     *             "--shutdown-delay-ms N" to report unready for N ms before closing the listener on shutdown, and
+     *             "--drain-ms N" to bound how long shutdown waits for in-flight requests, and
+     *             "--schema F" to validate PUTs against the field types and ranges in a schema file, and
+     *             "--max-stations N" / "--max-bytes N" with "--eviction lru|oldest-lamport|none" to bound stored data, and
+     *             "--acceptors N" / "--backlog N" to accept on N threads with SO_REUSEPORT and set each socket's backlog, and
+     *             "--change-log D" to keep a change log in directory D, with "--change-log-segment-bytes N",
+     *             "--change-log-retention-bytes N" and "--change-log-retention-ms N" to size and age it out.
      * @throws Exception on server error.
      */
     public static void main(String[] args) throws Exception {
-        int port = (args.length > 0) ? Integer.parseInt(args[0]) : 4567;
+        AggregationServer server = new AggregationServer(ServerConfig.fromArgs(args));
+        server.start();
+
+        // On SIGTERM or System.exit, drain and flush before the JVM exits
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "shutdown"));
+        System.out.println("AggregationServer started on port " + server.getPort());
+    }
+
+    /**
+     * Loads persisted data, binds the listening sockets and starts serving in the background.
+     *
+     * @throws IOException if the port cannot be bound.
+     * @throws IllegalStateException if the server was already started.
+     */
+    public synchronized void start() throws IOException {
+        if (listeners != null) throw new IllegalStateException("Server already started");
+        if (store != null) loadFromDisk();
+        if (config.getChangeLogDir() != null) {
+            ChangeLog log = new ChangeLog(config.getChangeLogDir(), config.getChangeLogSegmentBytes(),
+                    config.getChangeLogRetentionBytes(), config.getChangeLogRetentionMs(), timeSource);
+            changeLog = log;
+            metrics.gauge("changes.start_offset", log::getStartOffset);
+            metrics.gauge("changes.end_offset", log::getEndOffset);
+            metrics.gauge("changes.segments", log::getSegmentCount);
+        }
+
+        int acceptorCount = Math.max(1, config.getAcceptors());
+        listeners = openListeners(config.getPort(), acceptorCount, config.getBacklog());
+        int port = listeners.get(0).getLocalPort();
 
-        loadFromDisk();
+        List<String> peers = new ArrayList<>(config.getReplicateTo());
+        peers.addAll(config.getShards());
+        peerAddresses = resolvePeers(peers);
+
+        // Join the shard ring and hand off any loaded records another shard now owns
+        if (!config.getShards().isEmpty()) {
+            String self = config.getSelf() != null ? config.getSelf() : "localhost:" + port;
+            router = new ShardRouter(new HashRing(config.getShards()), self, config.getClusterSecret());
+            ShardRouter shardRouter = router;
+            Thread rebalance = new Thread(() -> shardRouter.rebalance(data, this::removeHandedOff), "shard-rebalance");
+            rebalance.setDaemon(true);
+            rebalance.start();
+        }
+
+        // Stream applied PUTs to each backup, starting with a full resync
+        for (String address : config.getReplicateTo()) {
+            Replicator replicator = new Replicator(address, data::values, config.getClusterSecret());
+            replicas.add(replicator);
+            replicator.start();
+        }
 
         // Scheduled executor allows periodic expiry clean-up
-        ScheduledExecutorService expiryService = Executors.newSingleThreadScheduledExecutor();
-        expiryService.scheduleAtFixedRate(AggregationServer::removeExpired, 2, 2, TimeUnit.SECONDS);
+        expiryService = Executors.newSingleThreadScheduledExecutor(daemonThreads("expiry-" + port));
+        expiryService.scheduleAtFixedRate(() -> {
+            removeExpired();
+            capacity.recount();
+            if (changeLog != null) changeLog.enforceRetention();
+        }, EXPIRY_SWEEP_MS, EXPIRY_SWEEP_MS, TimeUnit.MILLISECONDS);
+        expiryService.scheduleAtFixedRate(() -> {
+            stationLimiter.evictIdle();
+            addressLimiter.evictIdle();
+        }, LIMITER_EVICT_MS, LIMITER_EVICT_MS, TimeUnit.MILLISECONDS);
+
+        // Background checkpointer bounds disk I/O to one snapshot per interval; in SYNC mode it only
+        // picks up removals by expiry, since PUTs are written as they are applied
+        if (store != null) {
+            long checkpointMs = config.getCheckpointMs();
+            checkpointService = Executors.newSingleThreadScheduledExecutor(daemonThreads("checkpoint-" + port));
+            checkpointService.scheduleWithFixedDelay(this::checkpoint, checkpointMs, checkpointMs, TimeUnit.MILLISECONDS);
+        }
+
+        switch (config.getThreading()) {
+            case POOL:
+                connectionPool = Executors.newFixedThreadPool(config.getPoolSize(), daemonThreads("connection-" + port));
+                break;
+            case VIRTUAL:
+                connectionPool = Executors.newVirtualThreadPerTaskExecutor();
+                break;
+            default:
+                connectionPool = null;
+        }
+
+        for (int i = 0; i < acceptorCount; i++) {
+            Acceptor acceptor = new Acceptor(listeners.get(i % listeners.size()), this::dispatch);
+            metrics.gauge("accept." + i + ".connections", acceptor::getAccepted);
+            metrics.gauge("accept." + i + ".errors", acceptor::getErrors);
+            metrics.gauge("accept." + i + ".last_second", acceptor::getLastSecondCount);
+            Thread thread = new Thread(acceptor, "acceptor-" + port + "-" + i);
+            acceptors.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * Opens the listening sockets. Several acceptors each get their own socket bound to the same port
+     * with SO_REUSEPORT, so the kernel spreads incoming connections across them; where the option is
+     * unsupported they share one socket instead. The sockets are backed by channels, so accepted
+     * connections have a SocketChannel that change log reads can be transferred to directly.
+     *
+     * @param port Port to bind; 0 binds an ephemeral port, which every further socket then shares.
+     * @param count Number of acceptors.
+     * @param backlog Length of each socket's queue of connections not yet accepted.
+     * @throws IOException if a socket cannot be bound; any already open are closed.
+     */
+    private static List<ServerSocket> openListeners(int port, int count, int backlog) throws IOException {
+        List<ServerSocket> sockets = new ArrayList<>();
+        try {
+            ServerSocketChannel first = ServerSocketChannel.open();
+            sockets.add(first.socket());
+            boolean reusePort = count > 1 && first.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+            if (count > 1 && !reusePort) System.err.println("SO_REUSEPORT unsupported; " + count + " acceptors share one socket");
+            if (reusePort) first.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            first.bind(new InetSocketAddress(port), backlog);
+
+            for (int i = 1; reusePort && i < count; i++) {
+                ServerSocketChannel channel = ServerSocketChannel.open();
+                sockets.add(channel.socket());
+                channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                channel.bind(new InetSocketAddress(first.socket().getLocalPort()), backlog);
+            }
+            return sockets;
+        } catch (IOException e) {
+            for (ServerSocket socket : sockets) socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the port the server is listening on, which is the bound port when configured with port 0.
+     *
+     * @throws IllegalStateException if the server has not been started.
+     */
+    public synchronized int getPort() {
+        if (listeners == null) throw new IllegalStateException("Server not started");
+        return listeners.get(0).getLocalPort();
+    }
+
+    // Hands an accepted connection to a connection thread
+    private void dispatch(Socket socket) {
+        Runnable task = () -> handleConnection(socket);
+        try {
+            if (connectionPool != null) connectionPool.execute(task);
+            else new Thread(task).start();
+        } catch (RejectedExecutionException e) {
+            try {
+                socket.close(); // Shutting down
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Shuts the server down without losing acknowledged PUTs: reports unready, waits the shutdown delay
+     * so load balancers can react, stops accepting connections, closes keep-alive connections waiting
+     * for their next request, and lets in-flight requests finish within the drain deadline. Background schedulers are then stopped, replicas are given the rest of
+     * the deadline to catch up, and a final snapshot is written and synced to disk.
+     * Does nothing if the server was never started or is already stopped.
+     */
+    public synchronized void stop() {
+        if (listeners == null || stopped) return;
+        stopped = true;
+
+        System.out.println("Shutting down: draining connections");
+        ready = false;
+        try {
+            if (config.getShutdownDelayMs() > 0) Thread.sleep(config.getShutdownDelayMs());
+
+            for (ServerSocket listener : listeners) listener.close();
+            for (Thread acceptor : acceptors) acceptor.join();
+            closeIdleConnections();
+
+            long deadline = System.currentTimeMillis() + config.getDrainMs();
+            if (!awaitIdle(deadline - System.currentTimeMillis())) {
+                System.err.println("Shutdown deadline passed with " + inFlight.get() + " requests in flight");
+            }
 
-        try (ServerSocket serverSocket = new ServerSocket(port)) {
-            System.out.println("AggregationServer started on port " + port);
+            for (ExecutorService service : new ExecutorService[]{connectionPool, expiryService, checkpointService}) {
+                if (service == null) continue;
+                service.shutdown();
+                service.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            }
+
+            for (Replicator replica : replicas) {
+                while (replica.pending() > 0 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+                replica.stop();
+            }
+        } catch (InterruptedException | IOException e) {
+            System.err.println("Shutdown interrupted: " + e.getMessage());
+        }
 
-            while (true) {
-                Socket socket = serverSocket.accept();
-                new Thread(() -> handleConnection(socket)).start();
+        // Always attempt the final flush, even if draining was cut short
+        if (store != null && saveToDisk("shutdown")) dirty.set(false);
+        if (changeLog != null) {
+            try {
+                changeLog.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close change log: " + e.getMessage());
+            }
+        }
+        System.out.println("Shutdown complete");
+    }
+
+    // Closes keep-alive connections between requests, so draining does not wait out their idle timeout.
+    // A request arriving just as its connection is closed is cut off, as with any keep-alive close.
+    private void closeIdleConnections() {
+        for (Socket socket : idleConnections) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
             }
         }
     }
 
     /**
-     * Removes expired weather data entries older than EXPIRY_MS.
-     * Saves the updated data to disk if removals occur.
+     * Waits until no connection is being handled.
+     *
+     * @param timeoutMs Longest time to wait.
+     * @return true if the server became idle in time.
      */
-    static void removeExpired() {
-        long now = System.currentTimeMillis();
-        boolean removed = data.entrySet().removeIf(entry -> now - entry.getValue().timestamp > EXPIRY_MS);
-        if (removed) saveToDisk();
+    boolean awaitIdle(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (inFlight.get() > 0) {
+            if (System.currentTimeMillis() >= deadline) return false;
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    // Names background threads and marks them daemon so an embedded server never keeps the JVM alive
+    private static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Removes weather data entries not updated within the configured expiry time.
+     * Marks the data dirty for the next checkpoint if removals occur, and records each in the change log.
+     */
+    void removeExpired() {
+        ServerEvents.ExpirySweep event = new ServerEvents.ExpirySweep();
+        event.begin();
+        long now = timeSource.currentTimeMillis();
+        long expiryMs = config.getExpiryMs();
+        int[] removed = new int[1];
+        List<WeatherRecord> expired = changeLog == null ? null : new ArrayList<>();
+        data.entrySet().removeIf(entry -> {
+            boolean old = entry.getValue().isExpired(now, expiryMs);
+            if (old) {
+                removed[0]++;
+                capacity.removed(entry.getValue());
+                if (expired != null) expired.add(entry.getValue());
+            }
+            return old;
+        });
+        if (removed[0] > 0) {
+            version.incrementAndGet();
+            dirty.set(true);
+        }
+        if (expired != null) {
+            for (WeatherRecord record : expired) logRemoval("expire", record);
+        }
+        if (event.shouldCommit()) {
+            event.removed = removed[0];
+            event.remaining = data.size();
+            event.commit();
+        }
     }
 
     /**
-     * Handles a client connection: reads the request and delegates to PUT or GET handlers.
-     * Returns 400 Bad Request for unsupported methods.
+     * Handles a client connection: parses the request and delegates to PUT, GET, change feed, metrics or readiness handlers.
+     * Returns 400 Bad Request for unsupported methods or malformed requests, 431 if a request or
+     * header line is too long, and 408 Request Timeout if the request line and headers, or a PUT body,
+     * do not arrive within their deadlines.
+     * Requests carrying "Connection: keep-alive" leave the connection open for the next request, which
+     * must start within the header timeout; an idle connection is then closed without a response,
+     * and is closed at once when shutdown starts draining.
      *
      * @param socket Client socket connection.
      */
-    static void handleConnection(Socket socket) {
-        try (socket;
-             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()))) {
-            String requestLine = in.readLine();
-            if (requestLine == null) return;
-
-            if (requestLine.startsWith("PUT")) handlePut(in, out);
-            else if (requestLine.startsWith("GET")) handleGet(out);
-            else {
-                out.write("HTTP/1.1 400 Bad Request\r\n\r\n");
-                out.flush();
+    void handleConnection(Socket socket) {
+        inFlight.incrementAndGet();
+        try (socket) {
+            DeadlineInputStream deadline = new DeadlineInputStream(socket);
+            deadline.startPhase("header", headerTimeoutMs);
+            HttpRequestParser request = new HttpRequestParser(deadline);
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+
+            try {
+                boolean keepOpen = true;
+                // Set once a request has been served, so the wait for the next one counts as idle
+                boolean idle = false;
+                while (keepOpen) {
+                    ServerEvents.RequestPhase header = ServerEvents.RequestPhase.begin("header", null);
+                    if (idle) idleConnections.add(socket);
+                    try {
+                        // Shutdown may have closed the idle connections just before this one was added
+                        if (idle && !ready) break;
+                        if (!request.readHead()) break;
+                    } finally {
+                        if (idle) idleConnections.remove(socket);
+                    }
+                    idle = true;
+                    String method = request.getMethod();
+                    header.method = method;
+                    header.commit();
+
+                    if (method == HttpRequestParser.PUT) keepOpen = handlePut(request, out, socket, deadline);
+                    else if (method == HttpRequestParser.GET && request.getPath().equals("/metrics")) handleMetrics(out);
+                    else if (method == HttpRequestParser.GET && request.getPath().equals("/ready")) handleReady(out);
+                    else if (method == HttpRequestParser.GET && isChangesPath(request.getPath())) handleChanges(request, out, socket, deadline);
+                    else if (method == HttpRequestParser.GET) handleGet(request, out, deadline);
+                    else writeResponse(out, HttpResponses.BAD_REQUEST, null);
+
+                    // Serve the next request on this connection only if the client asked to, and not while draining
+                    keepOpen = keepOpen && request.isKeepAlive() && ready;
+                    deadline.startPhase("idle", headerTimeoutMs);
+                }
+            } catch (SocketTimeoutException e) {
+                if (deadline.getPhase().equals("idle")) return; // Idle keep-alive connection; close quietly
+                metrics.increment("timeouts." + deadline.getPhase());
+                writeResponse(out, HttpResponses.REQUEST_TIMEOUT, null);
+            } catch (HttpRequestParser.ParseException e) {
+                metrics.increment("requests.malformed");
+                writeResponse(out, e.getStatus() == 431 ? HttpResponses.HEADERS_TOO_LARGE : HttpResponses.BAD_REQUEST, null);
             }
         } catch (Exception e) {
             // Optional logging here
+        } finally {
+            inFlight.decrementAndGet();
         }
     }
 
     /**
-     * Handles HTTP PUT requests: reads headers and JSON body, parses using custom JSON parser,
-     * updates Lamport clock, updates stored data, and responds with appropriate code.
+     * Handles HTTP PUT requests: takes the parsed headers, reads the JSON body, parses it using the
+     * custom JSON parser, updates the Lamport clock, merges the record into stored data, and responds
+     * with the appropriate code.
+     * PUTs for the same id are ordered by the Lamport time the sender sent them at, then by source,
+     * so a write that arrives after a newer one is answered with 409 Conflict instead of overwriting
+     * it; the 409 carries the Source-Id of the newer record. A PUT with the same Lamport time and
+     * source as the stored record is the same write sent again and is acknowledged with 200. A PUT without a Lamport-Clock header is given this server's time on arrival instead.
+     * PUTs marked "Replicated: true" come from a primary: they keep the primary's Lamport time and
+     * source, and are not forwarded to this server's own replicas.
+     * In a sharded cluster, PUTs for ids owned by another shard are proxied to that shard.
+     * The "Replicated" and "Shard-Forwarded" markers are only honoured from a verified peer (see
+     * isPeer); from anyone else they are ignored and the PUT is handled as an ordinary client PUT.
+     * Client PUTs over the per-address limit are refused with 429 before the body is read, and
+     * PUTs over the per-station limit are refused right after parsing, before any state changes.
+     * A Content-Length above the maximum body size is refused with 413 before anything is allocated.
+     * Bodies that are not valid JSON or that fail the WeatherSchema are refused with 400 Bad Request.
+     * With SYNC persistence the snapshot is written before the PUT is acknowledged.
+     * Applied PUTs, and records evicted to make room, are appended to the change log if one is kept.
+     * A PUT for a new station when a capacity limit is reached evicts records by the configured
+     * policy to make room, or is refused with 507 Insufficient Storage if eviction is off; a
+     * replicated PUT is stored over the limit instead, so the backup keeps matching its primary.
      *
-     * @param in BufferedReader for client input.
-     * @param out BufferedWriter for client output.
-     * @throws IOException on IO errors.
+     * @param request Parser positioned at the body, holding the request's headers.
+     * @param out Buffered client output.
+     * @param socket Client socket; its address is the rate-limit key and the default source.
+     * @param deadline Client input, switched to the body deadline once the headers are read.
+     * @return false if the connection must be closed because the body was left unread.
+     * @throws IOException on IO errors, including SocketTimeoutException when a deadline passes.
      */
-    private static void handlePut(BufferedReader in, BufferedWriter out) throws IOException {
-        int lamportReceived = 0;
-        int contentLength = 0;
-        String line;
-
-        // Read headers
-        while ((line = in.readLine()) != null && !line.isEmpty()) {
-            if (line.startsWith("Lamport-Clock:")) {
-                lamportReceived = Integer.parseInt(line.split(":")[1].trim());
-            } else if (line.startsWith("Content-Length:")) {
-                contentLength = Integer.parseInt(line.split(":")[1].trim());
-            }
+    private boolean handlePut(HttpRequestParser request, OutputStream out, Socket socket, DeadlineInputStream deadline) throws IOException {
+        int lamportReceived = request.getLamportClock();
+        long contentLength = request.getContentLength();
+        String source = request.getSourceId() != null ? request.getSourceId() : socket.getRemoteSocketAddress().toString();
+        boolean fromPeer = (request.isReplicated() || request.isShardForwarded()) && isPeer(request, socket);
+        boolean replicated = fromPeer && request.isReplicated();
+        boolean forwarded = fromPeer && request.isShardForwarded();
+
+        metrics.increment("put.requests");
+        if (!fromPeer && (request.isReplicated() || request.isShardForwarded())) metrics.increment("put.peer_unverified");
+
+        if (contentLength > maxBodyBytes) {
+            metrics.increment("put.rejected.too_large");
+            out.write(HttpResponses.PAYLOAD_TOO_LARGE);
+            out.write(HttpResponses.CONNECTION_CLOSE);
+            writeResponseEnd(out, null);
+            return false;
         }
 
-        if (contentLength <= 0) {
-            out.write("HTTP/1.1 400 Bad Request\r\n\r\nMissing Content-Length.\r\n");
-            out.flush();
-            return;
+        deadline.startPhase("body", bodyTimeoutMs);
+
+        // Traffic between cluster nodes was already admitted by the node the client talked to
+        if (!fromPeer && !addressLimiter.tryAcquire(socket.getInetAddress().getHostAddress())) {
+            metrics.increment("ratelimit.rejected.address");
+            request.skipBody(Math.max(0, contentLength)); // Discard the unread body without parsing it
+            writeTooManyRequests(out);
+            return true;
         }
 
-        // Read JSON body characters exactly
-        char[] body = new char[contentLength];
-        int read = 0;
-        while (read < contentLength) {
-            int n = in.read(body, read, contentLength - read);
-            if (n == -1) break;
-            read += n;
+        if (contentLength <= 0) {
+            writeResponse(out, HttpResponses.BAD_REQUEST, MISSING_LENGTH_BODY);
+            return true;
         }
-        String json = new String(body);
+
+        // Read exactly Content-Length bytes and decode them once
+        ServerEvents.RequestPhase phase = ServerEvents.RequestPhase.begin("body", HttpRequestParser.PUT);
+        String json = request.readBody((int) contentLength);
+        phase.commit();
 
         // Parse JSON to map with custom parser
         Map<String, String> obj;
+        phase = ServerEvents.RequestPhase.begin("parse", HttpRequestParser.PUT);
         try {
             obj = SimpleJsonParser.parse(json);
-            if (!obj.containsKey("id") || obj.get("id").isEmpty()) throw new Exception("Missing id");
         } catch (Exception e) {
-            out.write("HTTP/1.1 500 Internal Server Error\r\n\r\nInvalid JSON or missing 'id'.\r\n");
-            out.flush();
-            return;
+            metrics.increment("put.rejected.invalid");
+            writeResponse(out, HttpResponses.BAD_REQUEST, INVALID_JSON_BODY);
+            return true;
+        } finally {
+            phase.commit();
         }
 
-        // Update Lamport clock
-        clock.update(lamportReceived);
+        // Validate every field and parse the numeric ones, once, before anything is stored
+        Map<String, Number> numbers;
+        phase = ServerEvents.RequestPhase.begin("validate", HttpRequestParser.PUT);
+        try {
+            numbers = schema.validate(obj);
+        } catch (WeatherSchema.ValidationException e) {
+            metrics.increment("put.rejected.invalid");
+            writeResponse(out, HttpResponses.BAD_REQUEST, HttpResponses.utf8(e.getMessage() + "\r\n"));
+            return true;
+        } finally {
+            phase.commit();
+        }
 
-        // Store data as WeatherRecord
         String id = obj.get("id");
-        boolean isFirst = !data.containsKey(id);
-        data.put(id, new WeatherRecord(obj, clock.getTime()));
+        if (!fromPeer && !stationLimiter.tryAcquire(id)) {
+            metrics.increment("ratelimit.rejected.station");
+            writeTooManyRequests(out);
+            return true;
+        }
+
+        // Proxy the PUT to the shard owning this id
+        ShardRouter shardRouter = router;
+        if (shardRouter != null && !forwarded && !shardRouter.isLocal(id)) {
+            proxyPut(shardRouter, out, id, json, lamportReceived, source, replicated);
+            return true;
+        }
+
+        // Update the Lamport clock, but order the write by the time it was sent at, so writes that
+        // arrive out of order are still resolved by when they happened. Replicated writes carry the
+        // time the primary stored, which is never 0.
+        phase = ServerEvents.RequestPhase.begin("clock", HttpRequestParser.PUT);
+        int arrival = clock.update(lamportReceived);
+        int lamport = lamportReceived > 0 ? lamportReceived : arrival;
+        phase.commit();
+
+        // Merge atomically per id: the record with the higher Lamport time wins
+        phase = ServerEvents.RequestPhase.begin("store", HttpRequestParser.PUT);
+        WeatherRecord incoming = new WeatherRecord(obj, numbers, lamport, source, timeSource.currentTimeMillis());
+        StoreResult result = store(incoming, replicated);
+        phase.commit();
 
-        // Persist data immediately
-        saveToDisk();
+        if (result == StoreResult.REFUSED) {
+            writeResponse(out, HttpResponses.INSUFFICIENT_STORAGE, CAPACITY_BODY);
+            return true;
+        }
+        if (result == StoreResult.STALE) {
+            System.out.println("Stale PUT ignored for id: " + id + ", Lamport: " + lamport);
+            // Name the source of the newer record, so a writer can tell its own earlier write from another's
+            out.write(HttpResponses.CONFLICT);
+            WeatherRecord newer = data.get(id);
+            if (newer != null) HttpResponses.writeHeader(out, HttpResponses.SOURCE_ID, newer.source);
+            writeResponseEnd(out, null);
+            return true;
+        }
+        if (result == StoreResult.DUPLICATE) {
+            writeResponse(out, HttpResponses.OK, null);
+            return true;
+        }
+
+        if (!replicated) {
+            for (Replicator replica : replicas) replica.publish(incoming);
+        }
+
+        // Leave the disk write to the background checkpointer, unless the update must be durable first
+        if (config.getPersistence() != ServerConfig.Persistence.SYNC) {
+            dirty.set(true);
+        } else if (!saveToDisk("sync")) {
+            dirty.set(true); // Applied in memory; the checkpointer keeps retrying the write
+            writeResponse(out, HttpResponses.INTERNAL_ERROR, PERSIST_FAILED_BODY);
+            return true;
+        }
 
-        System.out.println("PUT received for id: " + id + ", Lamport: " + clock.getTime());
+        System.out.println("PUT received for id: " + id + ", Lamport: " + lamport);
 
         // Respond with 201 if new, otherwise 200 OK
-        out.write(isFirst ? "HTTP/1.1 201 Created\r\n" : "HTTP/1.1 200 OK\r\n");
-        out.write("Lamport-Clock: " + clock.getTime() + "\r\n\r\n");
+        phase = ServerEvents.RequestPhase.begin("response", HttpRequestParser.PUT);
+        writeResponse(out, result == StoreResult.CREATED ? HttpResponses.CREATED : HttpResponses.OK, null);
+        phase.commit();
+        return true;
+    }
+
+    /**
+     * Removes a record handed off to the shard that owns it, unless it was replaced in the meantime.
+     * Capacity accounting, the change log, the data version and the checkpoint flag are updated as
+     * for any other removal.
+     */
+    void removeHandedOff(String id, WeatherRecord record) {
+        if (!data.remove(id, record)) return;
+        capacity.removed(record);
+        version.incrementAndGet();
+        dirty.set(true);
+        logRemoval("handoff", record);
+    }
+
+    /**
+     * Merges a record into the stored data atomically per id; the record with the higher Lamport time
+     * wins. A new station is first given room under the capacity limits, evicting records by policy.
+     * Evictions and the applied record bump the data version and are appended to the change log.
+     * Used by handlePut, and by ExpirySimulation to apply PUTs without sockets.
+     */
+    StoreResult store(WeatherRecord incoming) {
+        return store(incoming, false);
+    }
+
+    /**
+     * Merges a record like store(incoming). With overLimit set, a new station that a full store cannot
+     * make room for is stored anyway instead of refused; replicated writes use this so a backup never
+     * drops what its primary accepted.
+     */
+    StoreResult store(WeatherRecord incoming, boolean overLimit) {
+        String id = incoming.getData().get("id");
+        List<WeatherRecord> victims = new ArrayList<>(0);
+        WeatherRecord[] previous = new WeatherRecord[1];
+        WeatherRecord stored;
+        if (capacity.isLimited() && !data.containsKey(id)) {
+            // New stations are admitted one at a time, so concurrent first PUTs cannot overshoot the limits
+            synchronized (capacity) {
+                if (!data.containsKey(id)) {
+                    int evicted = capacity.makeRoom(incoming, victims::add);
+                    if (evicted < 0 && !overLimit) {
+                        metrics.increment("capacity.rejected");
+                        return StoreResult.REFUSED;
+                    }
+                    if (evicted < 0) metrics.increment("capacity.exceeded");
+                    if (evicted > 0) {
+                        metrics.add("capacity.evicted", evicted);
+                        version.incrementAndGet();
+                    }
+                }
+                stored = merge(id, incoming, previous);
+            }
+        } else {
+            stored = merge(id, incoming, previous);
+        }
+        for (WeatherRecord victim : victims) logRemoval("evict", victim);
+        if (stored != incoming) {
+            return stored.lamport == incoming.lamport && stored.source.equals(incoming.source)
+                    ? StoreResult.DUPLICATE : StoreResult.STALE;
+        }
+
+        if (changeLog != null) {
+            try {
+                changeLog.appendPut(incoming);
+            } catch (IOException e) {
+                metrics.increment("changes.errors");
+                System.err.println("Failed to log PUT for id " + id + ": " + e.getMessage());
+            }
+        }
+        version.incrementAndGet();
+        return previous[0] == null ? StoreResult.CREATED : StoreResult.REPLACED;
+    }
+
+    // Stores incoming unless the station has a newer record, accounting for it in the capacity limits;
+    // returns the record now stored and leaves the one it replaced in previous[0]
+    private WeatherRecord merge(String id, WeatherRecord incoming, WeatherRecord[] previous) {
+        WeatherRecord stored = data.compute(id, (key, existing) -> {
+            previous[0] = existing;
+            return existing == null || incoming.isNewerThan(existing) ? incoming : existing;
+        });
+        if (stored == incoming) capacity.stored(incoming, previous[0]);
+        return stored;
+    }
+
+    /**
+     * Returns true if a request marked as replicated or forwarded may be trusted as coming from
+     * another node of this cluster: it carries the configured cluster secret, or it arrives from the
+     * address of a configured backup or shard. A backup that is not itself in either list, such as
+     * one receiving from a primary, needs the secret.
+     */
+    boolean isPeer(HttpRequestParser request, Socket socket) {
+        String secret = config.getClusterSecret();
+        String presented = request.getClusterSecret();
+        if (secret != null && presented != null && MessageDigest.isEqual(
+                secret.getBytes(StandardCharsets.UTF_8), presented.getBytes(StandardCharsets.UTF_8))) {
+            return true;
+        }
+        return peerAddresses.contains(socket.getInetAddress());
+    }
+
+    // Resolves the host of each host:port; hosts that cannot be resolved are left out and logged
+    private static Set<InetAddress> resolvePeers(List<String> addresses) {
+        Set<InetAddress> resolved = new HashSet<>();
+        for (String address : addresses) {
+            String host = address.trim().split(":")[0];
+            try {
+                resolved.addAll(Arrays.asList(InetAddress.getAllByName(host)));
+            } catch (UnknownHostException e) {
+                System.err.println("Cannot resolve peer " + address + "; its PUTs need the cluster secret");
+            }
+        }
+        return Set.copyOf(resolved);
+    }
+
+    /**
+     * Writes a complete response: status line, Lamport-Clock, Content-Length and an optional body.
+     *
+     * @param status Pre-encoded status line from HttpResponses.
+     * @param body Pre-encoded body, or null for none.
+     */
+    private void writeResponse(OutputStream out, byte[] status, byte[] body) throws IOException {
+        out.write(status);
+        writeResponseEnd(out, body);
+    }
+
+    // Writes the headers every response carries, the blank line and the body, then flushes
+    private void writeResponseEnd(OutputStream out, byte[] body) throws IOException {
+        HttpResponses.writeHeader(out, HttpResponses.LAMPORT_CLOCK, clock.getTime());
+        HttpResponses.writeHeader(out, HttpResponses.CONTENT_LENGTH, body == null ? 0 : body.length);
+        out.write(HttpResponses.CRLF);
+        if (body != null) out.write(body);
         out.flush();
     }
 
+    /**
+     * Responds 429 Too Many Requests, asking the client to wait a second before retrying.
+     */
+    private void writeTooManyRequests(OutputStream out) throws IOException {
+        out.write(HttpResponses.TOO_MANY_REQUESTS);
+        out.write(HttpResponses.RETRY_AFTER_ONE_SECOND);
+        writeResponseEnd(out, null);
+    }
+
+    // Records a removed station in the change log, tagged with a new Lamport time
+    private void logRemoval(String change, WeatherRecord record) {
+        if (changeLog == null) return;
+        try {
+            changeLog.appendRemoval(change, record.getData().get("id"), clock.tick(), timeSource.currentTimeMillis());
+        } catch (IOException e) {
+            metrics.increment("changes.errors");
+            System.err.println("Failed to log " + change + " of id " + record.getData().get("id") + ": " + e.getMessage());
+        }
+    }
+
+    // True for "/changes" with or without a query string
+    private static boolean isChangesPath(String path) {
+        return path.equals("/changes") || path.startsWith("/changes?");
+    }
+
+    /**
+     * Handles GET /changes?offset=N&max=M: sends change log entries from offset N, up to M bytes of
+     * whole entries (at least one), as NDJSON. The Next-Offset header gives the offset to ask for
+     * next; it equals N with an empty body once the client has caught up. The entries are sent with
+     * FileChannel.transferTo, straight from the segment file to the socket.
+     * Responds 404 if no change log is kept, 400 for an offset that is negative, past the end or
+     * inside an entry, and 410 Gone with a First-Offset header if the entries at N were already deleted by retention.
+     */
+    private void handleChanges(HttpRequestParser request, OutputStream out, Socket socket, DeadlineInputStream deadline) throws IOException {
+        deadline.startPhase("response", 0);
+        metrics.increment("changes.requests");
+        if (changeLog == null) {
+            writeResponse(out, HttpResponses.NOT_FOUND, NO_CHANGE_LOG_BODY);
+            return;
+        }
+
+        ChangeLog.Slice slice;
+        try {
+            String offset = request.getQueryParameter("offset");
+            String max = request.getQueryParameter("max");
+            long maxBytes = max == null ? CHANGES_DEFAULT_BYTES : Long.parseLong(max);
+            if (maxBytes <= 0) throw new IllegalArgumentException("max must be positive");
+            long from = offset == null ? 0 : Long.parseLong(offset);
+            if (from < 0) throw new IllegalArgumentException("offset must not be negative");
+            slice = changeLog.read(from, maxBytes);
+        } catch (IllegalArgumentException e) {
+            writeResponse(out, HttpResponses.BAD_REQUEST, HttpResponses.utf8("Invalid change log read: " + e.getMessage() + "\r\n"));
+            return;
+        }
+        if (slice == null) {
+            out.write(HttpResponses.GONE);
+            HttpResponses.writeHeader(out, HttpResponses.FIRST_OFFSET, changeLog.getStartOffset());
+            writeResponseEnd(out, CHANGES_GONE_BODY);
+            return;
+        }
+
+        try (slice) {
+            out.write(HttpResponses.OK);
+            out.write(HttpResponses.CONTENT_TYPE_NDJSON);
+            HttpResponses.writeHeader(out, HttpResponses.NEXT_OFFSET, slice.getNextOffset());
+            HttpResponses.writeHeader(out, HttpResponses.LAMPORT_CLOCK, clock.getTime());
+            HttpResponses.writeHeader(out, HttpResponses.CONTENT_LENGTH, slice.getCount());
+            out.write(HttpResponses.CRLF);
+            out.flush();
+
+            // Sockets accepted from a channel can take the bytes without them passing through the heap
+            SocketChannel channel = socket.getChannel();
+            slice.transferTo(channel != null ? channel : Channels.newChannel(out));
+            out.flush();
+            metrics.add("changes.bytes", slice.getCount());
+        }
+    }
+
+    /**
+     * Handles GET /metrics: responds with every counter and gauge as plain text.
+     */
+    private void handleMetrics(OutputStream out) throws IOException {
+        out.write(HttpResponses.OK);
+        out.write(HttpResponses.CONTENT_TYPE_TEXT);
+        writeResponseEnd(out, HttpResponses.utf8(metrics.render()));
+    }
+
+    /**
+     * Handles GET /ready: 200 while the server accepts traffic, 503 once shutdown has started.
+     */
+    private void handleReady(OutputStream out) throws IOException {
+        if (ready) writeResponse(out, HttpResponses.OK, READY_BODY);
+        else writeResponse(out, HttpResponses.SERVICE_UNAVAILABLE, DRAINING_BODY);
+    }
+
+    /**
+     * Relays a PUT to the shard that owns its id and passes the owner's status back to the client.
+     * Responds 503 Service Unavailable if the owner cannot be reached.
+     */
+    private void proxyPut(ShardRouter shardRouter, OutputStream out, String id, String json,
+                                 int lamportReceived, String source, boolean replicated) throws IOException {
+        String owner = shardRouter.ownerOf(id);
+        List<String> response;
+        try {
+            response = shardRouter.forwardPut(owner, json, lamportReceived, source, replicated);
+        } catch (IOException e) {
+            writeResponse(out, HttpResponses.SERVICE_UNAVAILABLE, HttpResponses.utf8("Shard " + owner + " unavailable.\r\n"));
+            return;
+        }
+
+        for (String line : response) {
+            if (line.startsWith("Lamport-Clock:")) clock.update(Integer.parseInt(line.split(":")[1].trim()));
+        }
+        System.out.println("PUT for id: " + id + " proxied to shard " + owner);
+
+        writeResponse(out, HttpResponses.relayedStatusLine(response.get(0)), null);
+    }
+
     /**
      * Handles HTTP GET requests: sends aggregated data as JSON array or 404 if no data.
+     * The array is streamed with chunked transfer encoding, serializing each record straight into
+     * a fixed-size chunk buffer, so memory per GET does not grow with the number of stations.
+     * In a sharded cluster the records of every shard are gathered in parallel and merged,
+     * unless the request carries "Shard-Local: true" asking for this shard's records only.
+     * Responses from this server's own data carry an ETag made of a per-instance random epoch and the
+     * data version, and a request whose If-None-Match equals the current ETag exactly is answered
+     * 304 Not Modified without a body.
+     * A "filter" query parameter limits the response to matching records (see RecordFilter); shards
+     * apply it before answering, and a filter that matches nothing yields an empty array.
      *
-     * @param out BufferedWriter for client output.
+     * @param request Parser holding the request's headers.
+     * @param out Buffered client output; the chunked body is written through it.
+     * @param deadline Client input; its deadline is lifted once the headers are read.
      * @throws IOException on IO errors.
      */
-    private static void handleGet(BufferedWriter out) throws IOException {
+    private void handleGet(HttpRequestParser request, OutputStream out, DeadlineInputStream deadline) throws IOException {
+        deadline.startPhase("response", 0);
+
+        metrics.increment("get.requests");
         clock.tick();      // Lamport clock tick on event
         removeExpired();   // Remove expired entries
 
-        if (data.isEmpty()) {
-            out.write("HTTP/1.1 404 Not Found\r\n\r\nNo weather data available.");
-            out.flush();
+        RecordFilter filter;
+        try {
+            filter = compileFilter(request.getQueryParameter("filter"));
+        } catch (IllegalArgumentException e) {
+            metrics.increment("get.rejected.filter");
+            writeResponse(out, HttpResponses.BAD_REQUEST, HttpResponses.utf8("Invalid filter: " + e.getMessage() + "\r\n"));
             return;
         }
 
-        // Build JSON array string manually
-        StringBuilder sb = new StringBuilder();
-        sb.append("[");
-        boolean first = true;
+        ShardRouter shardRouter = router;
+        boolean gather = shardRouter != null && !request.isShardLocal();
+
+        // Only this server's own data is versioned, so gathered responses carry no ETag.
+        // The version is read before the data, so the body is never older than its tag.
+        String current = etagPrefix + version.get() + "\"";
+        if (!gather && current.equals(request.getIfNoneMatch())) {
+            metrics.increment("get.not_modified");
+            out.write(HttpResponses.NOT_MODIFIED);
+            HttpResponses.writeETag(out, current);
+            writeResponseEnd(out, null);
+            return;
+        }
+
+        List<ShardRouter.RemoteRecords> remote = gather ? shardRouter.openRemote(clock, filter == null ? null : filter.toString()) : Collections.emptyList();
+        try {
+            writeGetBody(out, current, gather, filter, remote);
+        } finally {
+            for (ShardRouter.RemoteRecords shard : remote) shard.close();
+        }
+    }
+
+    // Writes the GET response: local records, then each remote shard's records as they arrive
+    private void writeGetBody(OutputStream out, String current, boolean gather, RecordFilter filter,
+            List<ShardRouter.RemoteRecords> remote) throws IOException {
+        if (data.isEmpty() && remote.isEmpty()) {
+            out.write(HttpResponses.NOT_FOUND);
+            if (!gather) HttpResponses.writeETag(out, current);
+            writeResponseEnd(out, NO_DATA_BODY);
+            return;
+        }
+
+        out.write(HttpResponses.OK);
+        if (!gather) HttpResponses.writeETag(out, current);
+        HttpResponses.writeHeader(out, HttpResponses.LAMPORT_CLOCK, clock.getTime());
+        out.write(HttpResponses.CONTENT_TYPE_JSON);
+        out.write(HttpResponses.TRANSFER_ENCODING_CHUNKED);
+        out.write(HttpResponses.CRLF);
+
+        // Stream the JSON array as each record's cached bytes; the chunk buffer gathers them into few socket writes
+        ServerEvents.GetResponse event = new ServerEvents.GetResponse();
+        event.begin();
+        ChunkedOutputStream body = new ChunkedOutputStream(out, GET_CHUNK_BYTES);
+        body.write('[');
+        int records = 0;
+        long bytes = 2;
         for (WeatherRecord record : data.values()) {
-            if (!first) sb.append(",");
-            sb.append(SimpleJsonParser.toJson(record.getData()));
-            first = false;
+            if (filter != null && !filter.test(record)) continue;
+            if (records++ > 0) body.write(',');
+            byte[] json = record.getJsonBytes();
+            body.write(json);
+            bytes += json.length;
+        }
+        for (ShardRouter.RemoteRecords shard : remote) {
+            Map<String, String> record;
+            while ((record = shard.next()) != null) {
+                if (records++ > 0) body.write(',');
+                byte[] json = SimpleJsonParser.toJson(record).getBytes(StandardCharsets.UTF_8);
+                body.write(json);
+                bytes += json.length;
+            }
         }
-        sb.append("]");
+        body.write(']');
+        body.close();
+        if (event.shouldCommit()) {
+            event.records = records;
+            event.bytes = bytes + Math.max(0, records - 1);
+            event.filtered = filter != null;
+            event.gathered = gather;
+            event.commit();
+        }
+    }
 
-        out.write("HTTP/1.1 200 OK\r\n");
-        out.write("Lamport-Clock: " + clock.getTime() + "\r\n");
-        out.write("Content-Type: application/json\r\n\r\n");
-        out.write(sb.toString());
-        out.flush();
+    /**
+     * Returns the compiled filter for an expression, compiling it on first use; null for no expression.
+     *
+     * @throws IllegalArgumentException if the expression is malformed.
+     */
+    private RecordFilter compileFilter(String expression) {
+        if (expression == null) return null;
+        RecordFilter filter = filters.get(expression);
+        if (filter == null) {
+            filter = RecordFilter.compile(expression, schema);
+            filters.put(expression, filter);
+            metrics.increment("get.filter.compiled");
+        }
+        return filter;
     }
 
     /**
-     * Saves current data persistently to disk.
-     * Synchronized to protect against concurrent writes.
+     * Writes a snapshot if data changed since the last checkpoint.
+     * Runs on the checkpoint scheduler so request threads never wait on disk I/O.
      */
-    synchronized static void saveToDisk() {
-        try (Writer writer = new FileWriter(DATA_STORE)) {
-            // Write as JSON array of objects
-            StringBuilder sb = new StringBuilder();
-            sb.append("[");
-            boolean first = true;
-            for (WeatherRecord record : data.values()) {
-                if (!first) sb.append(",");
-                sb.append(SimpleJsonParser.toJson(record.getData()));
-                first = false;
-            }
-            sb.append("]");
-            writer.write(sb.toString());
+    void checkpoint() {
+        if (!dirty.getAndSet(false)) return;
+        if (!saveToDisk("checkpoint")) dirty.set(true);
+    }
+
+    /**
+     * Saves current data persistently to disk as a crash-safe snapshot.
+     *
+     * @return true if the snapshot was written.
+     */
+    boolean saveToDisk() {
+        return saveToDisk("manual");
+    }
+
+    // Saves a snapshot, recording why it was written in the Persist event
+    private boolean saveToDisk(String trigger) {
+        ServerEvents.Persist event = new ServerEvents.Persist();
+        event.begin();
+        boolean succeeded = false;
+        try {
+            store.write(data.values(), clock.getTime());
+            succeeded = true;
         } catch (IOException e) {
-            // Optional logging
             System.err.println("Failed to save data: " + e.getMessage());
         }
+        if (event.shouldCommit()) {
+            event.trigger = trigger;
+            event.records = data.size();
+            event.succeeded = succeeded;
+            event.commit();
+        }
+        return succeeded;
     }
 
     /**
-     * Loads persisted data from disk into memory.
-     * Synchronized to prevent conflicts with save.
+     * Loads the newest valid snapshot from disk into memory.
+     * Records keep their persisted Lamport and update times, entries that expired while the
+     * server was down are dropped, and the clock resumes past everything it had seen.
+     * Records are validated against the current schema, which restores their typed values;
+     * records the schema no longer accepts are dropped.
      */
-    synchronized static void loadFromDisk() {
-        File file = new File(DATA_STORE);
-        if (!file.exists()) return;
+    void loadFromDisk() {
+        SnapshotStore.Snapshot snapshot = store.load();
+        long now = timeSource.currentTimeMillis();
+        int highWater = snapshot.getClockTime();
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                sb.append(line.trim());
+        for (WeatherRecord record : snapshot.getRecords()) {
+            String id = record.getData().get("id");
+            if (id == null || record.isExpired(now, config.getExpiryMs())) continue;
+            Map<String, Number> numbers;
+            try {
+                numbers = schema.validate(record.getData());
+            } catch (WeatherSchema.ValidationException e) {
+                System.err.println("Dropping stored record " + id + ": " + e.getMessage());
+                continue;
             }
-            String content = sb.toString();
-            if (content.isEmpty()) return;
-
-            // Expecting a JSON array of objects
-            if (!content.startsWith("[") || !content.endsWith("]")) return;
-
-            // Remove the surrounding brackets
-            content = content.substring(1, content.length() - 1);
-
-            // Split top-level objects by ',', simple split (may not handle nested commas)
-            String[] items = content.split("},\\s*\\{");
-            for (String s : items) {
-                String item = s;
-                if (!item.startsWith("{")) item = "{" + item;
-                if (!item.endsWith("}")) item = item + "}";
-
-                Map<String, String> obj = SimpleJsonParser.parse(item);
-                if (obj.containsKey("id")) {
-                    data.put(obj.get("id"), new WeatherRecord(obj, 0));
-                }
+            WeatherRecord restored = new WeatherRecord(record.getData(), numbers, record.lamport, record.source, record.timestamp);
+            if (capacity.makeRoom(restored) < 0) {
+                System.err.println("Dropping stored record " + id + ": station capacity reached");
+                continue;
             }
-        } catch (IOException | IllegalArgumentException e) {
-            System.err.println("Failed to load data: " + e.getMessage());
+            capacity.stored(restored, data.put(id, restored));
+            highWater = Math.max(highWater, record.lamport);
         }
+        if (highWater > clock.getTime()) clock.update(highWater);
+        version.incrementAndGet();
     }
 }
@@ -0,0 +1,49 @@
+package assignment2;
+
+import java.util.Random;
+
+/**
+ * Exponential backoff with full jitter.
+ *
+ * Each delay is drawn uniformly from [0, min(cap, base * 2^attempt)], so clients that failed
+ * together spread their retries out instead of reconnecting in lock-step.
+ */
+public class Backoff {
+    private final long baseMs;
+    private final long capMs;
+    private final Random random;
+    private int attempt = 0;
+
+    /**
+     * Creates a backoff starting at baseMs and never exceeding capMs.
+     */
+    public Backoff(long baseMs, long capMs) {
+        this(baseMs, capMs, new Random());
+    }
+
+    /**
+     * Creates a backoff with a given random source, for repeatable delays in tests.
+     */
+    public Backoff(long baseMs, long capMs, Random random) {
+        this.baseMs = baseMs;
+        this.capMs = capMs;
+        this.random = random;
+    }
+
+    /**
+     * Returns the next delay in milliseconds and moves to the next attempt.
+     */
+    public long nextDelay() {
+        // Stop doubling once the cap is reached so the shift cannot overflow
+        long ceiling = attempt >= 30 ? capMs : Math.min(capMs, baseMs << attempt);
+        attempt++;
+        return (long) (random.nextDouble() * (ceiling + 1));
+    }
+
+    /**
+     * Starts over from the base delay after a success.
+     */
+    public void reset() {
+        attempt = 0;
+    }
+}
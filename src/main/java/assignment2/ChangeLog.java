@@ -0,0 +1,323 @@
+package assignment2;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Append-only log of every change applied to the stored data, kept as a series of segment files.
+ *
+ * Each applied PUT, expiry, eviction and shard hand-off is appended as one NDJSON line: a "_change" type, the Lamport
+ * time the change was applied at and its update time, followed by the record's fields for a PUT or
+ * just its id for a removal. An entry's offset is the byte position of its line in the whole log, so a
+ * consumer that keeps the offset after the last entry it read can resume from there. Segments are
+ * named after the offset of their first entry; the active one is rolled once it reaches the segment
+ * size, and the oldest closed segments are deleted once the log exceeds its size budget or their last
+ * entry is older than the retention age.
+ *
+ * Entries reach the OS page cache as they are appended but are not synced; a partly written last line
+ * left by a crash is cut off when the log is opened. Changes to different stations that finish
+ * concurrently may be appended slightly out of Lamport order, so consumers order by "_lamport".
+ */
+public class ChangeLog implements Closeable {
+    private static final String SUFFIX = ".log";
+    // Bytes read at a time while searching for the end of a line
+    private static final int SCAN_BYTES = 8192;
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final long retentionBytes;
+    private final long retentionMs;
+    private final TimeSource timeSource;
+
+    // Segment files by the offset of their first entry; the last one is being appended to
+    private final TreeMap<Long, Path> segments = new TreeMap<>();
+    private FileChannel active;
+    // Offset just past the last complete entry
+    private long end;
+
+    /**
+     * Opens the log in the directory, creating it if needed, and resumes after its last complete entry.
+     *
+     * @param segmentBytes Size at which the active segment is closed and a new one started.
+     * @param retentionBytes Size above which the oldest segments are deleted, or 0 for no limit.
+     * @param retentionMs Age after which a closed segment is deleted, or 0 for no limit.
+     * @param timeSource Clock the age of a segment is measured against.
+     * @throws IOException if the directory or a segment cannot be read or created.
+     */
+    public ChangeLog(Path dir, long segmentBytes, long retentionBytes, long retentionMs, TimeSource timeSource) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.retentionBytes = retentionBytes;
+        this.retentionMs = retentionMs;
+        this.timeSource = timeSource;
+
+        Files.createDirectories(dir);
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(file -> file.getFileName().toString().endsWith(SUFFIX)).forEach(file -> {
+                String name = file.getFileName().toString();
+                try {
+                    segments.put(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())), file);
+                } catch (NumberFormatException e) {
+                    System.err.println("Ignoring unknown file in change log: " + file);
+                }
+            });
+        }
+        if (segments.isEmpty()) segments.put(0L, segmentPath(0));
+
+        Map.Entry<Long, Path> last = segments.lastEntry();
+        active = FileChannel.open(last.getValue(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long complete = lineStart(active, active.size(), 0);
+        if (complete < active.size()) {
+            System.err.println("Truncating partly written change log entry in " + last.getValue());
+            active.truncate(complete);
+        }
+        active.position(complete);
+        end = last.getKey() + complete;
+    }
+
+    /**
+     * Appends an applied PUT, tagged with the record's Lamport time and update time.
+     *
+     * @return The offset just past the entry.
+     * @throws IOException if the entry cannot be written.
+     */
+    public long appendPut(WeatherRecord record) throws IOException {
+        String head = "{\"_change\":\"put\",\"_lamport\":\"" + record.lamport + "\",\"_timestamp\":\"" + record.timestamp
+                + "\",\"_source\":\"" + SimpleJsonParser.escape(record.source) + "\"";
+        byte[] json = record.getJsonBytes();
+        ByteBuffer entry = ByteBuffer.allocate(head.length() * 3 + json.length + 1);
+        entry.put(head.getBytes(StandardCharsets.UTF_8));
+        if (json.length > 2) entry.put((byte) ',');
+        entry.put(json, 1, json.length - 1);
+        entry.put((byte) '\n');
+        return append(entry.flip());
+    }
+
+    /**
+     * Appends the removal of a station's record.
+     *
+     * @param change Why the record was removed, for example "expire", "evict" or "handoff".
+     * @param lamport Lamport time of the removal.
+     * @param timestamp Time of the removal in milliseconds since epoch.
+     * @return The offset just past the entry.
+     * @throws IOException if the entry cannot be written.
+     */
+    public long appendRemoval(String change, String id, int lamport, long timestamp) throws IOException {
+        String entry = "{\"_change\":\"" + change + "\",\"_lamport\":\"" + lamport + "\",\"_timestamp\":\"" + timestamp
+                + "\",\"id\":\"" + SimpleJsonParser.escape(id) + "\"}\n";
+        return append(ByteBuffer.wrap(entry.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Returns the offset of the oldest retained entry.
+     */
+    public synchronized long getStartOffset() {
+        return segments.firstKey();
+    }
+
+    /**
+     * Returns the offset just past the newest entry, where the next entry will be written.
+     */
+    public synchronized long getEndOffset() {
+        return end;
+    }
+
+    /**
+     * Returns the number of segment files, including the active one.
+     */
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Returns whole entries starting at an offset, from a single segment, ready to be sent.
+     * The range holds as many entries as fit in maxBytes, but always at least one; at the end of
+     * the log it is empty.
+     *
+     * @param offset Offset of an entry, usually the next offset of a previous read.
+     * @param maxBytes Largest range to return unless the first entry alone is larger.
+     * @return The range, which the caller must close; null if offset precedes the oldest retained entry.
+     * @throws IllegalArgumentException if offset is past the end of the log or not at the start of an entry.
+     * @throws IOException if the segment cannot be read.
+     */
+    public Slice read(long offset, long maxBytes) throws IOException {
+        long base;
+        long limit;
+        FileChannel channel;
+        synchronized (this) {
+            if (offset < segments.firstKey()) return null;
+            if (offset > end) throw new IllegalArgumentException("Offset " + offset + " is past the end of the log at " + end);
+            Map.Entry<Long, Path> segment = segments.floorEntry(offset);
+            Long next = segments.higherKey(segment.getKey());
+            base = segment.getKey();
+            limit = (next != null ? next : end) - base;
+            channel = FileChannel.open(segment.getValue(), StandardOpenOption.READ);
+        }
+
+        try {
+            long position = offset - base;
+            if (position > 0 && !endsLine(channel, position)) {
+                throw new IllegalArgumentException("Offset " + offset + " is not at the start of an entry");
+            }
+            long stop = limit;
+            if (position + maxBytes < limit) {
+                stop = lineStart(channel, position + maxBytes, position);
+                if (stop == position) stop = lineEnd(channel, position + maxBytes, limit);
+            }
+            return new Slice(channel, position, stop - position, base + stop);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Deletes the oldest closed segments while the log exceeds the size budget or their last entry
+     * is older than the retention age. The active segment is never deleted.
+     *
+     * @return The number of segments deleted.
+     */
+    public synchronized int enforceRetention() {
+        int deleted = 0;
+        long now = timeSource.currentTimeMillis();
+        while (segments.size() > 1) {
+            Map.Entry<Long, Path> oldest = segments.firstEntry();
+            boolean tooBig = retentionBytes > 0 && end - oldest.getKey() > retentionBytes;
+            boolean tooOld = false;
+            try {
+                tooOld = retentionMs > 0 && now - Files.getLastModifiedTime(oldest.getValue()).toMillis() > retentionMs;
+            } catch (IOException e) {
+                // Unreadable; size alone decides
+            }
+            if (!tooBig && !tooOld) break;
+            try {
+                Files.deleteIfExists(oldest.getValue());
+            } catch (IOException e) {
+                System.err.println("Failed to delete change log segment " + oldest.getValue() + ": " + e.getMessage());
+                break;
+            }
+            segments.pollFirstEntry();
+            deleted++;
+        }
+        return deleted;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        active.close();
+    }
+
+    // Writes one complete entry to the active segment, rolling it first if it is full
+    private synchronized long append(ByteBuffer entry) throws IOException {
+        if (end > segments.lastKey() && end - segments.lastKey() + entry.remaining() > segmentBytes) roll();
+        while (entry.hasRemaining()) active.write(entry);
+        end = segments.lastKey() + active.position();
+        return end;
+    }
+
+    // Closes the active segment and starts a new one at the end offset
+    private void roll() throws IOException {
+        active.close();
+        Path path = segmentPath(end);
+        active = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segments.put(end, path);
+        enforceRetention();
+    }
+
+    private Path segmentPath(long base) {
+        return dir.resolve(String.format("%020d%s", base, SUFFIX));
+    }
+
+    // True if the byte before position is a line break
+    private static boolean endsLine(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        return channel.read(buffer, position - 1) == 1 && buffer.get(0) == '\n';
+    }
+
+    // Returns the position just past the last line break before position, or from if there is none after it
+    private static long lineStart(FileChannel channel, long position, long from) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BYTES);
+        while (position > from) {
+            long start = Math.max(from, position - SCAN_BYTES);
+            buffer.clear().limit((int) (position - start));
+            readFully(channel, buffer, start);
+            for (int i = buffer.limit() - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') return start + i + 1;
+            }
+            position = start;
+        }
+        return from;
+    }
+
+    // Returns the position just past the first line break at or after position, or limit if there is none
+    private static long lineEnd(FileChannel channel, long position, long limit) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BYTES);
+        while (position < limit) {
+            buffer.clear().limit((int) Math.min(SCAN_BYTES, limit - position));
+            readFully(channel, buffer, position);
+            for (int i = 0; i < buffer.limit(); i++) {
+                if (buffer.get(i) == '\n') return position + i + 1;
+            }
+            position += buffer.limit();
+        }
+        return limit;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) throw new EOFException("Change log segment ended early");
+        }
+    }
+
+    /**
+     * A range of whole entries in one segment, sent to a client without copying through the heap.
+     */
+    public static final class Slice implements Closeable {
+        private final FileChannel channel;
+        private final long position;
+        private final long count;
+        private final long nextOffset;
+
+        private Slice(FileChannel channel, long position, long count, long nextOffset) {
+            this.channel = channel;
+            this.position = position;
+            this.count = count;
+            this.nextOffset = nextOffset;
+        }
+
+        /**
+         * Returns the number of bytes in the range.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the offset of the entry after the range, where the next read should start.
+         */
+        public long getNextOffset() {
+            return nextOffset;
+        }
+
+        /**
+         * Sends the whole range to the target with FileChannel.transferTo, which the OS can carry out
+         * from the page cache straight to a socket.
+         */
+        public void transferTo(WritableByteChannel target) throws IOException {
+            long sent = 0;
+            while (sent < count) sent += channel.transferTo(position + sent, count - sent, target);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
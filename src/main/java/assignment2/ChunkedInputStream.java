@@ -0,0 +1,78 @@
+package assignment2;
+
+import java.io.*;
+
+/**
+ * Reads an HTTP/1.1 body sent with "Transfer-Encoding: chunked", yielding only the payload bytes.
+ * End of stream is reported after the terminating zero-length chunk.
+ */
+public class ChunkedInputStream extends InputStream {
+    private final InputStream in;
+    // Bytes left in the current chunk; -1 before the first chunk header is read
+    private int remaining = -1;
+    private boolean eof = false;
+
+    /**
+     * Creates a decoder reading chunks from the given stream.
+     */
+    public ChunkedInputStream(InputStream in) {
+        this.in = in;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextChunk()) return -1;
+        int b = in.read();
+        if (b == -1) throw new EOFException("Truncated chunk");
+        remaining--;
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (!nextChunk()) return -1;
+        int n = in.read(b, off, Math.min(len, remaining));
+        if (n == -1) throw new EOFException("Truncated chunk");
+        remaining -= n;
+        return n;
+    }
+
+    /**
+     * Reads one CRLF- or LF-terminated ASCII line, without the terminator.
+     * Used for chunk headers and HTTP status and header lines.
+     *
+     * @return The line, or null at end of stream.
+     */
+    public static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') break;
+            if (b != '\r') sb.append((char) b);
+        }
+        return (b == -1 && sb.length() == 0) ? null : sb.toString();
+    }
+
+    // Moves to the next chunk when the current one is used up; returns false at the end of the body
+    private boolean nextChunk() throws IOException {
+        if (eof) return false;
+        if (remaining > 0) return true;
+
+        // Consume the CRLF that ends the previous chunk's data
+        if (remaining == 0) readLine(in);
+
+        String header = readLine(in);
+        if (header == null) throw new EOFException("Missing chunk header");
+        int semicolon = header.indexOf(';');
+        remaining = Integer.parseInt((semicolon >= 0 ? header.substring(0, semicolon) : header).trim(), 16);
+        if (remaining == 0) {
+            // Skip optional trailers up to the blank line
+            String trailer;
+            while ((trailer = readLine(in)) != null && !trailer.isEmpty()) { }
+            eof = true;
+            return false;
+        }
+        return true;
+    }
+}
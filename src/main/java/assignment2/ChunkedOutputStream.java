@@ -0,0 +1,77 @@
+package assignment2;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes an HTTP/1.1 body with "Transfer-Encoding: chunked" framing.
+ *
+ * Bytes are collected in a fixed-size buffer that is emitted as one chunk whenever it fills, so
+ * memory use stays bounded no matter how large the body is. Closing writes the terminating
+ * zero-length chunk and flushes, but leaves the underlying stream open.
+ */
+public class ChunkedOutputStream extends OutputStream {
+    private static final byte[] CRLF = { '\r', '\n' };
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int count = 0;
+    private boolean finished = false;
+
+    /**
+     * Creates a chunked stream over the given output, emitting chunks of at most bufferSize bytes.
+     */
+    public ChunkedOutputStream(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.buffer = new byte[bufferSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == buffer.length) writeChunk();
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == buffer.length) writeChunk();
+            int n = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Emits any buffered bytes as a chunk and flushes the underlying stream.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (count > 0) writeChunk();
+        out.flush();
+    }
+
+    /**
+     * Emits remaining bytes and the terminating chunk. The underlying stream stays open.
+     */
+    @Override
+    public void close() throws IOException {
+        if (finished) return;
+        if (count > 0) writeChunk();
+        out.write(LAST_CHUNK);
+        out.flush();
+        finished = true;
+    }
+
+    // Writes the buffered bytes as one size-prefixed chunk
+    private void writeChunk() throws IOException {
+        out.write(Integer.toHexString(count).getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+        out.write(buffer, 0, count);
+        out.write(CRLF);
+        count = 0;
+    }
+}
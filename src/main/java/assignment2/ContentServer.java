@@ -2,47 +2,59 @@ package assignment2;
 
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.*;
 
 /**
  * ContentServer reads weather data from a text file and sends it as JSON to the AggregationServer via HTTP-like PUT request.
- * It maintains a LamportClock for event ordering and retries on connection failure.
+ * It maintains a LamportClock for event ordering, fails over between a list of servers,
+ * and retries with exponential backoff and full jitter while every server is unavailable.
  */
 public class ContentServer {
     // Lamport clock instance to maintain causal consistency
     private static final LamportClock clock = new LamportClock();
 
+    // First retry waits up to this long; each further retry doubles the ceiling
+    private static final long BASE_BACKOFF_MS = 500;
+    // Default upper bound on a single retry delay
+    private static final long DEFAULT_MAX_BACKOFF_MS = 30000;
+
     /**
-     * Main accepts two args: target host:port and path to data file.
-     * Reads the data file, converts key-value pairs to JSON string,
-     * and sends repeatedly PUT requests with Lamport clock,
-     * retrying connections on failures every 2 seconds.
+     * Main accepts two args: target host:port (or a comma-separated list of them) and path to data file,
+     * optionally followed by "--max-backoff-ms N" to cap the retry delay, "--outbox F" to keep
+     * pending updates and the Lamport clock in a file that survives restarts, and "--source-id S" to
+     * name this content server to the server (by default its host name and the data file's path).
+     * Reads the data file, converts key-value pairs to JSON string, and sends it as a PUT request
+     * with Lamport clock, failing over to the next server in the list on connection failure.
+     * Once every server has failed it waits a jittered, exponentially growing delay before trying again.
+     * The data file is re-read before each retry; if it changed, only the newest content is sent.
+     * A 409 Conflict means the server holds a write with a later Lamport time. If another source wrote
+     * it, the update is dropped. If this source wrote it, it came from an earlier run whose clock was
+     * not kept, so the update is sent once more with the clock moved past the server's.
      *
-     * @param args [0] host:port, [1] data file path
+     * @param args [0] host:port[,host:port...], [1] data file path, then optional flags
      * @throws Exception IO or sleep interruption errors
      */
     public static void main(String[] args) throws Exception {
-        if (args.length != 2) {
-            System.out.println("Usage: java ContentServer <host:port> <datafile>");
+        if (args.length < 2) {
+            System.out.println("Usage: java ContentServer <host:port[,host:port...]> <datafile> [--max-backoff-ms N] [--outbox F] [--source-id S]");
             return;
         }
-        String[] parts = args[0].split(":");
-        String host = parts[0];
-        int port = Integer.parseInt(parts[1]);
+        String[] servers = args[0].split(",");
         String filePath = args[1];
+        long maxBackoffMs = DEFAULT_MAX_BACKOFF_MS;
+        String outboxPath = null;
+        String sourceId = null;
+        for (int i = 2; i < args.length - 1; i++) {
+            if (args[i].equals("--max-backoff-ms")) maxBackoffMs = Long.parseLong(args[++i]);
+            else if (args[i].equals("--outbox")) outboxPath = args[++i];
+            else if (args[i].equals("--source-id")) sourceId = args[++i];
+        }
+        if (sourceId == null) sourceId = defaultSourceId(filePath);
 
         // Parse the text data file into key-value pairs map
-        Map<String, String> map = new LinkedHashMap<>();
-        try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                int idx = line.indexOf(':');
-                if (idx < 0) continue;
-                String key = line.substring(0, idx).trim();
-                String value = line.substring(idx + 1).trim();
-                map.put(key, value);
-            }
-        }
+        Map<String, String> map = readDataFile(filePath);
 
         // Validate presence of mandatory 'id' field
         if (!map.containsKey("id")) {
@@ -50,44 +62,171 @@ public class ContentServer {
             return;
         }
 
-        // Serialize map to JSON string using custom JSON parser
+        // Queue the update behind anything a previous run left undelivered, and carry on from its clock
+        Outbox outbox = new Outbox(outboxPath);
+        clock.update(outbox.getClock());
         String json = SimpleJsonParser.toJson(map);
+        outbox.put(map.get("id"), json);
+        String lastQueued = json;
 
-        // Retry loop to send PUT request until successful
-        while (true) {
-            try (Socket socket = new Socket(host, port);
-                 BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
-                 BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
-
-                clock.tick();  // Increment Lamport clock before sending
-
-                // Compose HTTP PUT request with headers and JSON body
-                out.write("PUT /weather.json HTTP/1.1\r\n");
-                out.write("Host: " + host + "\r\n");
-                out.write("Content-Type: application/json\r\n");
-                out.write("Lamport-Clock: " + clock.getTime() + "\r\n");
-                out.write("Content-Length: " + json.length() + "\r\n");
-                out.write("\r\n");
-                out.write(json);
-                out.flush();
-
-                // Read and display server response status line
-                String response = in.readLine();
-                System.out.println("Sending PUT to " + host + ":" + port + " with Lamport " + clock.getTime());
-                System.out.println("Server response: " + response);
-
-                // Update Lamport clock based on server response headers
-                while ((response = in.readLine()) != null && !response.isEmpty()) {
-                    if (response.startsWith("Lamport-Clock:")) {
-                        int servClock = Integer.parseInt(response.split(":")[1].trim());
-                        clock.update(servClock);
+        // Send until the outbox is empty, moving down the server list on failure
+        Backoff backoff = new Backoff(BASE_BACKOFF_MS, maxBackoffMs);
+        boolean resentAfterConflict = false;
+        int current = 0;
+        Map.Entry<String, String> next;
+        while ((next = outbox.peek()) != null) {
+            String[] parts = servers[current].trim().split(":");
+            String host = parts[0];
+            int port = Integer.parseInt(parts[1]);
+            try {
+                PutResponse response = sendPut(host, port, next.getValue(), sourceId);
+                outbox.setClock(clock.getTime());
+                if (isRetryable(response.status)) {
+                    throw new IOException("Server unavailable: " + response.status);
+                }
+                if (response.status.contains(" 409 ")) {
+                    // The response carried the server's clock, so a second attempt is sent after every write it holds
+                    if (sourceId.equals(response.conflictSource) && !resentAfterConflict) {
+                        resentAfterConflict = true;
+                        continue;
                     }
+                    System.out.println("Server holds a newer update for id " + next.getKey() + " from "
+                            + response.conflictSource + "; dropping this one");
                 }
-                break; // Exit retry loop on success
+                resentAfterConflict = false;
+                outbox.remove(next.getKey(), next.getValue());
+                backoff.reset();
             } catch (IOException e) {
-                System.out.println("Retrying connection in 2s...");
-                Thread.sleep(2000);
+                current = (current + 1) % servers.length;
+                if (current != 0) {
+                    System.out.println("Failed to reach " + host + ":" + port + ", failing over to " + servers[current]);
+                    continue;
+                }
+                long delay = backoff.nextDelay();
+                System.out.println("Retrying connection in " + delay + "ms...");
+                Thread.sleep(delay);
+
+                // Coalesce: if the data file changed while we waited, replace the pending update
+                String latest = readLatestJson(filePath);
+                if (latest != null && !latest.equals(lastQueued)) {
+                    outbox.put(SimpleJsonParser.parse(latest).get("id"), latest);
+                    lastQueued = latest;
+                }
             }
         }
     }
+
+    /**
+     * Returns true if a response means the update was not applied but may be on a retry or on another
+     * server: 408 Request Timeout, 429 Too Many Requests or any 5xx. Other statuses are final.
+     */
+    static boolean isRetryable(String statusLine) {
+        String[] parts = statusLine.split(" ", 3);
+        if (parts.length < 2) return true;
+        String code = parts[1];
+        return code.equals("408") || code.equals("429") || code.startsWith("5");
+    }
+
+    /**
+     * Names a content server by its host and the absolute path of its data file, which stay the same
+     * across its runs, so the server can tell its writes from those of other content servers.
+     */
+    static String defaultSourceId(String filePath) {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "localhost";
+        }
+        return host + ":" + Paths.get(filePath).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Sends one PUT request and updates the Lamport clock from the response.
+     *
+     * @return The server's status line, and for a 409 the source of the newer record.
+     * @throws IOException if the server cannot be reached or closes without responding.
+     */
+    private static PutResponse sendPut(String host, int port, String json, String sourceId) throws IOException {
+        try (Socket socket = new Socket(host, port);
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+
+            clock.tick();  // Increment Lamport clock before sending
+
+            // Compose HTTP PUT request with headers and JSON body
+            out.write("PUT /weather.json HTTP/1.1\r\n");
+            out.write("Host: " + host + "\r\n");
+            out.write("Content-Type: application/json\r\n");
+            out.write("Lamport-Clock: " + clock.getTime() + "\r\n");
+            out.write("Source-Id: " + sourceId + "\r\n");
+            out.write("Content-Length: " + json.getBytes(StandardCharsets.UTF_8).length + "\r\n");
+            out.write("\r\n");
+            out.write(json);
+            out.flush();
+
+            // Read and display server response status line
+            String status = in.readLine();
+            if (status == null) throw new IOException("Connection closed without a response");
+            System.out.println("Sending PUT to " + host + ":" + port + " with Lamport " + clock.getTime());
+            System.out.println("Server response: " + status);
+
+            // Update Lamport clock based on server response headers
+            String response;
+            String conflictSource = null;
+            while ((response = in.readLine()) != null && !response.isEmpty()) {
+                if (response.startsWith("Lamport-Clock:")) {
+                    try {
+                        clock.update(Integer.parseInt(response.substring(14).trim()));
+                    } catch (NumberFormatException e) {
+                        // Not a clock this process can use; keep its own
+                    }
+                } else if (response.startsWith("Source-Id:")) {
+                    conflictSource = response.substring(10).trim();
+                }
+            }
+            return new PutResponse(status, conflictSource);
+        }
+    }
+
+    // Status line of a PUT response, and the Source-Id it named, if any
+    private static final class PutResponse {
+        final String status;
+        final String conflictSource;
+
+        PutResponse(String status, String conflictSource) {
+            this.status = status;
+            this.conflictSource = conflictSource;
+        }
+    }
+
+    /**
+     * Parses the text data file into a key-value map, one "key: value" pair per line.
+     */
+    static Map<String, String> readDataFile(String filePath) throws IOException {
+        Map<String, String> map = new LinkedHashMap<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(filePath, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                int idx = line.indexOf(':');
+                if (idx < 0) continue;
+                String key = line.substring(0, idx).trim();
+                String value = line.substring(idx + 1).trim();
+                map.put(key, value);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Re-reads the data file as JSON, or returns null if it is currently unreadable or has no id.
+     */
+    private static String readLatestJson(String filePath) {
+        try {
+            Map<String, String> map = readDataFile(filePath);
+            return map.containsKey("id") ? SimpleJsonParser.toJson(map) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
 }
@@ -0,0 +1,64 @@
+package assignment2;
+
+import java.io.*;
+import java.net.*;
+
+/**
+ * Socket input stream that enforces an absolute deadline on reading a request phase.
+ *
+ * Before every read the socket timeout is set to the time left until the deadline, so a client
+ * that stalls, or drips bytes slowly enough to reset a plain per-read timeout, is cut off once
+ * the deadline passes. The phase name (for example "header" or "body") is kept so the caller can
+ * tell which deadline expired.
+ */
+public class DeadlineInputStream extends FilterInputStream {
+    private final Socket socket;
+    private long deadline = 0;
+    private String phase = "";
+
+    /**
+     * Wraps the socket's input stream. No deadline applies until one is set.
+     */
+    public DeadlineInputStream(Socket socket) throws IOException {
+        super(socket.getInputStream());
+        this.socket = socket;
+    }
+
+    /**
+     * Starts a new phase that must complete within timeoutMs from now. A timeout of 0 removes the deadline.
+     */
+    public void startPhase(String phase, long timeoutMs) {
+        this.phase = phase;
+        this.deadline = timeoutMs > 0 ? System.currentTimeMillis() + timeoutMs : 0;
+    }
+
+    /**
+     * Returns the name of the current phase.
+     */
+    public String getPhase() {
+        return phase;
+    }
+
+    @Override
+    public int read() throws IOException {
+        armTimeout();
+        return super.read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        armTimeout();
+        return super.read(b, off, len);
+    }
+
+    // Limits the next blocking read to the time left in the current phase
+    private void armTimeout() throws IOException {
+        if (deadline == 0) {
+            socket.setSoTimeout(0);
+            return;
+        }
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) throw new SocketTimeoutException("Deadline passed while reading " + phase);
+        socket.setSoTimeout((int) Math.min(remaining, Integer.MAX_VALUE));
+    }
+}
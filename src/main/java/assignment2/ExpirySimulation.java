@@ -0,0 +1,212 @@
+package assignment2;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deterministic simulation of stations PUTting and expiring, run in virtual time.
+ *
+ * An AggregationServer is created with a ManualTimeSource and driven in-process, without sockets or
+ * persistence. Every station PUTs once at the start; then on each tick a fixed number of stations,
+ * picked by a seeded random generator, PUT again, time moves forward by one tick and removeExpired
+ * sweeps the store. Stations not picked for longer than the expiry time are removed and come back
+ * when next picked, so the store settles into a steady churn. Runs with the same settings make the
+ * same PUTs and expire the same stations; only the timings differ.
+ *
+ * The report gives PUT and expiry throughput, the longest sweep, the store's estimated and measured
+ * size, and collector activity during the run, so changes to expiry can be checked at millions of
+ * stations in seconds rather than hours of real time.
+ */
+public class ExpirySimulation {
+    private final int stations;
+    private final int putsPerTick;
+    private final int ticks;
+    private final long tickMs;
+    private final long expiryMs;
+    private final long seed;
+
+    /**
+     * Usage: ExpirySimulation [--stations N] [--puts-per-tick N] [--ticks N] [--tick-ms N] [--expiry-ms N] [--seed N]
+     * <p>
+     * Defaults simulate a million stations, a tenth of them PUTting per 2-second tick, for one virtual
+     * minute with the server's default 30-second expiry.
+     */
+    public static void main(String[] args) {
+        int stations = 1_000_000;
+        int putsPerTick = -1;
+        int ticks = 30;
+        long tickMs = 2000;
+        long expiryMs = 30000;
+        long seed = 1;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--stations": stations = Integer.parseInt(args[i + 1]); break;
+                case "--puts-per-tick": putsPerTick = Integer.parseInt(args[i + 1]); break;
+                case "--ticks": ticks = Integer.parseInt(args[i + 1]); break;
+                case "--tick-ms": tickMs = Long.parseLong(args[i + 1]); break;
+                case "--expiry-ms": expiryMs = Long.parseLong(args[i + 1]); break;
+                case "--seed": seed = Long.parseLong(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (putsPerTick < 0) putsPerTick = stations / 10;
+
+        System.out.println(new ExpirySimulation(stations, putsPerTick, ticks, tickMs, expiryMs, seed).run().report());
+    }
+
+    /**
+     * Creates a simulation.
+     *
+     * @param stations Number of distinct station ids.
+     * @param putsPerTick PUTs made on each tick, to stations picked at random.
+     * @param ticks Number of ticks after the initial PUT of every station.
+     * @param tickMs Virtual time between ticks, which is also the interval between expiry sweeps.
+     * @param expiryMs How long a station's data lives without updates.
+     * @param seed Seed for picking stations and their values.
+     */
+    public ExpirySimulation(int stations, int putsPerTick, int ticks, long tickMs, long expiryMs, long seed) {
+        this.stations = stations;
+        this.putsPerTick = putsPerTick;
+        this.ticks = ticks;
+        this.tickMs = tickMs;
+        this.expiryMs = expiryMs;
+        this.seed = seed;
+    }
+
+    /**
+     * Runs the simulation to the end and returns its measurements.
+     */
+    public Result run() {
+        Result result = new Result();
+        long baseline = usedHeapAfterGc();
+        long[] gcBefore = gcTotals();
+        long start = System.nanoTime();
+
+        ManualTimeSource time = new ManualTimeSource(0);
+        AggregationServer server = new AggregationServer(new ServerConfig()
+                .setPersistence(ServerConfig.Persistence.NONE).setExpiryMs(expiryMs).setTimeSource(time));
+        WeatherSchema schema = WeatherSchema.defaults();
+        SplittableRandom random = new SplittableRandom(seed);
+        int lamport = 0;
+
+        result.putNanos -= System.nanoTime();
+        for (int i = 0; i < stations; i++) put(server, schema, time, random, i, ++lamport);
+        result.putNanos += System.nanoTime();
+        result.puts = stations;
+
+        for (int tick = 0; tick < ticks; tick++) {
+            result.putNanos -= System.nanoTime();
+            for (int i = 0; i < putsPerTick; i++) put(server, schema, time, random, random.nextInt(stations), ++lamport);
+            result.putNanos += System.nanoTime();
+            result.puts += putsPerTick;
+
+            time.advance(tickMs);
+            int before = server.data.size();
+            long sweep = System.nanoTime();
+            server.removeExpired();
+            sweep = System.nanoTime() - sweep;
+            result.sweepNanos += sweep;
+            result.maxSweepNanos = Math.max(result.maxSweepNanos, sweep);
+            result.removed += before - server.data.size();
+        }
+
+        result.elapsedNanos = System.nanoTime() - start;
+        long[] gcAfter = gcTotals();
+        result.gcCount = gcAfter[0] - gcBefore[0];
+        result.gcMillis = gcAfter[1] - gcBefore[1];
+        result.virtualMs = ticks * tickMs;
+        result.stations = server.data.size();
+        result.estimatedBytes = server.capacity.getBytes();
+        result.heapBytes = usedHeapAfterGc() - baseline;
+        Reference.reachabilityFence(server); // The store must still be live when the heap is measured
+        return result;
+    }
+
+    // PUTs one station's record, stamped with the virtual time
+    private static void put(AggregationServer server, WeatherSchema schema, TimeSource time, SplittableRandom random, int station, int lamport) {
+        Map<String, String> data = new LinkedHashMap<>();
+        data.put("id", "S" + station);
+        data.put("air_temp", String.valueOf(random.nextInt(-200, 450) / 10.0));
+        data.put("wind_spd_kmh", String.valueOf(random.nextInt(0, 120)));
+        server.store(new WeatherRecord(data, schema.validate(data), lamport, "simulation", time.currentTimeMillis()));
+    }
+
+    // Heap in use after asking for a full collection, which is only a request and may not be complete
+    private static long usedHeapAfterGc() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    // Total collections and collection time in milliseconds across all collectors
+    private static long[] gcTotals() {
+        long[] totals = new long[2];
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            totals[0] += Math.max(0, gc.getCollectionCount());
+            totals[1] += Math.max(0, gc.getCollectionTime());
+        }
+        return totals;
+    }
+
+    /**
+     * Measurements of one run. Counts depend only on the settings; times and sizes vary by machine.
+     */
+    public static class Result {
+        long puts;
+        long removed;
+        int stations;
+        long virtualMs;
+        long elapsedNanos;
+        long putNanos;
+        long sweepNanos;
+        long maxSweepNanos;
+        long estimatedBytes;
+        long heapBytes;
+        long gcCount;
+        long gcMillis;
+
+        /**
+         * Returns the number of PUTs applied, including the initial one per station.
+         */
+        public long getPuts() {
+            return puts;
+        }
+
+        /**
+         * Returns the number of records removed by expiry sweeps.
+         */
+        public long getRemoved() {
+            return removed;
+        }
+
+        /**
+         * Returns the number of stations stored at the end.
+         */
+        public int getStations() {
+            return stations;
+        }
+
+        /**
+         * Returns the results as a few lines of text.
+         */
+        public String report() {
+            return String.format(Locale.ROOT,
+                    "Simulated %d s of virtual time in %d ms%n"
+                            + "PUTs:    %d at %.0f/s%n"
+                            + "Expired: %d at %.0f/s of sweep time; longest sweep %.1f ms%n"
+                            + "Store:   %d stations, estimated %d MB, %d MB of heap after GC%n"
+                            + "GC:      %d collections taking %d ms",
+                    virtualMs / 1000, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                    puts, perSecond(puts, putNanos),
+                    removed, perSecond(removed, sweepNanos), maxSweepNanos / 1e6,
+                    stations, estimatedBytes >> 20, Math.max(0, heapBytes) >> 20,
+                    gcCount, gcMillis);
+        }
+
+        private static double perSecond(long count, long nanos) {
+            return nanos == 0 ? 0 : count * 1e9 / nanos;
+        }
+    }
+}
@@ -2,29 +2,52 @@ package assignment2;
 
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 /**
  * GETClient connects to the AggregationServer and sends a GET request for weather data.
- * It maintains a LamportClock and parses the JSON response using a custom JSON parser.
+ * It maintains a LamportClock and parses the JSON response with a streaming parser, printing each
+ * record as soon as it arrives so responses of any size are handled in constant memory.
+ * Given several servers, it fails over to the next one when a server cannot be reached.
  */
 public class GETClient {
     private static final LamportClock clock = new LamportClock();
 
     /**
-     * Main entry point: expects one argument - host:port or full URL.
-     * Sends GET request and prints parsed weather data or error response.
+     * Main entry point: expects one argument - host:port or full URL, or a comma-separated list of them.
+     * Sends GET request to the first reachable server and prints parsed weather data or error response.
      *
-     * @param args [0] the server address in host:port or URL format
-     * @throws Exception on IO or URL errors
+     * @param args [0] the server address(es) in host:port or URL format
+     * @throws Exception on IO or URL errors, or if no server is reachable
      */
     public static void main(String[] args) throws Exception {
         if(args.length != 1){
-            System.out.println("Usage: java GETClient <host:port> or <http://host:port/path>");
+            System.out.println("Usage: java GETClient <host:port> or <http://host:port/path>[,...]");
             return;
         }
 
-        String urlString = args[0];
+        String[] servers = args[0].split(",");
+        for (int i = 0; i < servers.length; i++) {
+            try {
+                fetch(servers[i].trim());
+                return;
+            } catch (ConnectException e) {
+                if (i == servers.length - 1) throw e;
+                System.out.println("Failed to reach " + servers[i].trim() + ", failing over to " + servers[i + 1].trim());
+            }
+        }
+    }
+
+    /**
+     * Sends a GET request to one server and prints the parsed weather data or error response.
+     *
+     * @param server the server address in host:port or URL format
+     * @throws ConnectException if the server cannot be reached
+     * @throws Exception on other IO or URL errors
+     */
+    private static void fetch(String server) throws Exception {
+        String urlString = server;
         if(!urlString.startsWith("http://") && !urlString.startsWith("https://")){
             urlString = "http://" + urlString;
         }
@@ -38,8 +61,8 @@ public class GETClient {
 
         try (
                 Socket socket = new Socket(host, port);
-                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-                BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()))
+                InputStream rawIn = new BufferedInputStream(socket.getInputStream());
+                BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))
         ) {
             // Send GET request with Lamport clock header
             out.write("GET " + path + " HTTP/1.1\r\n");
@@ -48,67 +71,49 @@ public class GETClient {
             out.flush();
 
             // Read status line
-            String status = in.readLine();
+            String status = ChunkedInputStream.readLine(rawIn);
             if (status == null) return;
             System.out.println(status);
 
             // Read headers and update Lamport clock if present
+            boolean chunked = false;
             String line;
-            while ((line = in.readLine()) != null && !line.trim().isEmpty()) {
+            while ((line = ChunkedInputStream.readLine(rawIn)) != null && !line.trim().isEmpty()) {
                 if (line.startsWith("Lamport-Clock:")) {
                     int servClock = Integer.parseInt(line.split(":")[1].trim());
                     clock.update(servClock);
+                } else if (line.equalsIgnoreCase("Transfer-Encoding: chunked")) {
+                    chunked = true;
                 }
             }
 
-            // Read response body
-            StringBuilder sb = new StringBuilder();
-            while ((line = in.readLine()) != null) {
-                sb.append(line);
-            }
+            // Read response body, decoding chunked framing if the server streamed it
+            InputStream bodyIn = chunked ? new ChunkedInputStream(rawIn) : rawIn;
+            BufferedReader in = new BufferedReader(new InputStreamReader(bodyIn, StandardCharsets.UTF_8));
 
-            String body = sb.toString().trim();
-            if (body.isEmpty()) return;
+            // Look at the first non-blank character to tell a JSON array from a plain text message
+            int first;
+            do {
+                in.mark(1);
+                first = in.read();
+            } while (first != -1 && Character.isWhitespace(first));
+            if (first == -1) return;
+            in.reset();
 
-            // Check if body is JSON array
-            if (body.startsWith("[")) {
-                // Parse JSON array using custom parser
-                List<String> jsonObjects = splitTopLevelJsonObjects(body);
-                for (String jsonObject : jsonObjects) {
-                    Map<String, String> obj = SimpleJsonParser.parse(jsonObject);
+            if (first == '[') {
+                // Print each record as soon as the streaming parser completes it
+                new JsonArrayReader(in).forEach(obj -> {
                     obj.forEach((key, value) -> System.out.println(key + ": " + value));
                     System.out.println();
-                }
+                });
             } else {
                 // Print error or plain text response
-                System.out.println(body);
-            }
-        }
-    }
-
-    /**
-     * Helper method to split a JSON array string into individual JSON object strings.
-     * Assumes flat JSON objects without nested arrays.
-     *
-     * @param jsonArrayStr String starting with '[' and ending with ']'
-     * @return List of JSON object strings including braces '{}'
-     */
-    private static List<String> splitTopLevelJsonObjects(String jsonArrayStr) {
-        List<String> objects = new ArrayList<>();
-        int level = 0;
-        int start = 0;
-        for (int i = 0; i < jsonArrayStr.length(); i++) {
-            char c = jsonArrayStr.charAt(i);
-            if (c == '{') {
-                if (level == 0) start = i;
-                level++;
-            } else if (c == '}') {
-                level--;
-                if (level == 0) {
-                    objects.add(jsonArrayStr.substring(start, i + 1));
+                StringBuilder sb = new StringBuilder();
+                while ((line = in.readLine()) != null) {
+                    sb.append(line);
                 }
+                System.out.println(sb.toString().trim());
             }
         }
-        return objects;
     }
 }
@@ -0,0 +1,66 @@
+package assignment2;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Consistent-hash ring mapping station ids to the aggregation server that owns them.
+ *
+ * Each node is placed on the ring at many virtual points so load spreads evenly, and adding or
+ * removing a node only moves the ids between it and its ring neighbours (about 1/N of all ids).
+ */
+public final class HashRing {
+    // Virtual points per node; more points give a more even spread
+    private static final int VIRTUAL_NODES = 128;
+
+    private final TreeMap<Long, String> ring = new TreeMap<>();
+    private final List<String> nodes = new ArrayList<>();
+
+    /**
+     * Builds a ring over the given node addresses (host:port).
+     */
+    public HashRing(Collection<String> nodeAddresses) {
+        for (String node : nodeAddresses) addNode(node.trim());
+    }
+
+    /**
+     * Adds a node to the ring.
+     */
+    public void addNode(String node) {
+        if (nodes.contains(node)) return;
+        nodes.add(node);
+        for (int i = 0; i < VIRTUAL_NODES; i++) {
+            ring.put(hash(node + "#" + i), node);
+        }
+    }
+
+    /**
+     * Returns the node that owns the given station id.
+     */
+    public String ownerOf(String id) {
+        if (ring.isEmpty()) throw new IllegalStateException("Hash ring has no nodes");
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash(id));
+        return (entry != null ? entry : ring.firstEntry()).getValue();
+    }
+
+    /**
+     * Returns all nodes on the ring in the order they were added.
+     */
+    public List<String> getNodes() {
+        return Collections.unmodifiableList(nodes);
+    }
+
+    // First 8 bytes of the MD5 digest, which spreads similar ids evenly around the ring
+    private static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            long h = 0;
+            for (int i = 0; i < 8; i++) h = (h << 8) | (digest[i] & 0xff);
+            return h;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package assignment2;
+
+import java.io.*;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Byte-level parser for HTTP/1.1 requests, reading straight from the socket's InputStream.
+ *
+ * The request line and headers are scanned in a reusable byte buffer without any charset decoding:
+ * header names are matched case-insensitively against pre-encoded names, and numeric values such as
+ * Content-Length are parsed from their digits in place. Only the values the server keeps (the path and
+ * Source-Id) become Strings. The body is read as exactly Content-Length bytes and decoded as UTF-8 once.
+ */
+public class HttpRequestParser {
+    // Default buffer size, which is also the longest request line or header line accepted
+    static final int DEFAULT_BUFFER_BYTES = 8192;
+
+    // Methods the server handles, shared so comparing them never allocates
+    public static final String GET = "GET";
+    public static final String PUT = "PUT";
+    private static final byte[] GET_BYTES = ascii(GET);
+    private static final byte[] PUT_BYTES = ascii(PUT);
+
+    // Header names the server acts on, lower case
+    private static final byte[] CONTENT_LENGTH = ascii("content-length");
+    private static final byte[] LAMPORT_CLOCK = ascii("lamport-clock");
+    private static final byte[] SOURCE_ID = ascii("source-id");
+    private static final byte[] REPLICATED = ascii("replicated");
+    private static final byte[] SHARD_FORWARDED = ascii("shard-forwarded");
+    private static final byte[] SHARD_LOCAL = ascii("shard-local");
+    private static final byte[] CLUSTER_SECRET = ascii("cluster-secret");
+    private static final byte[] CONNECTION = ascii("connection");
+    private static final byte[] IF_NONE_MATCH = ascii("if-none-match");
+    private static final byte[] TRUE = ascii("true");
+    private static final byte[] KEEP_ALIVE = ascii("keep-alive");
+
+    private final InputStream in;
+    private byte[] buffer;
+    // Unread bytes are buffer[pos, limit)
+    private int pos = 0;
+    private int limit = 0;
+
+    // Request line and headers of the request last read by readHead
+    private String method;
+    private String path;
+    private long contentLength;
+    private int lamportClock;
+    private String sourceId;
+    private boolean replicated;
+    private boolean shardForwarded;
+    private boolean shardLocal;
+    private String clusterSecret;
+    private boolean keepAlive;
+    private String ifNoneMatch;
+
+    /**
+     * Thrown when a request cannot be parsed; carries the status the server should answer with.
+     */
+    public static class ParseException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        public ParseException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+
+        /**
+         * Returns the HTTP status code describing the problem (400 or 431).
+         */
+        public int getStatus() {
+            return status;
+        }
+    }
+
+    /**
+     * Creates a parser with the default buffer size.
+     */
+    public HttpRequestParser(InputStream in) {
+        this(in, DEFAULT_BUFFER_BYTES);
+    }
+
+    /**
+     * Creates a parser whose buffer holds bufferSize bytes, the limit on any one request or header line.
+     */
+    public HttpRequestParser(InputStream in, int bufferSize) {
+        this.in = in;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Reads the request line and headers of the next request.
+     *
+     * @return false if the stream ended before a request started.
+     * @throws ParseException if the request is malformed or a line does not fit in the buffer.
+     * @throws IOException on read errors, including SocketTimeoutException from a deadline.
+     */
+    public boolean readHead() throws IOException {
+        method = null;
+        path = null;
+        contentLength = -1;
+        lamportClock = 0;
+        sourceId = null;
+        replicated = false;
+        shardForwarded = false;
+        shardLocal = false;
+        clusterSecret = null;
+        keepAlive = false;
+        ifNoneMatch = null;
+
+        int end = nextLine();
+        if (end < 0) {
+            if (pos == limit) return false;
+            throw new ParseException(400, "Incomplete request line");
+        }
+        parseRequestLine(pos, end);
+        pos = skipLineEnd(end);
+
+        while (true) {
+            end = nextLine();
+            if (end < 0) throw new ParseException(400, "Incomplete headers");
+            if (end == pos) {
+                pos = skipLineEnd(end);
+                return true;
+            }
+            parseHeader(pos, end);
+            pos = skipLineEnd(end);
+        }
+    }
+
+    /**
+     * Reads a body of exactly length bytes and decodes it as UTF-8.
+     *
+     * @throws EOFException if the stream ends first.
+     */
+    public String readBody(int length) throws IOException {
+        if (length > buffer.length) {
+            // Bodies larger than the buffer get their own array rather than growing the buffer for good
+            byte[] body = new byte[length];
+            int read = limit - pos;
+            System.arraycopy(buffer, pos, body, 0, read);
+            pos = limit;
+            while (read < length) {
+                int n = in.read(body, read, length - read);
+                if (n == -1) throw new EOFException("Body ended after " + read + " of " + length + " bytes");
+                read += n;
+            }
+            return new String(body, StandardCharsets.UTF_8);
+        }
+
+        compact();
+        while (limit - pos < length) {
+            int n = in.read(buffer, limit, buffer.length - limit);
+            if (n == -1) throw new EOFException("Body ended after " + (limit - pos) + " of " + length + " bytes");
+            limit += n;
+        }
+        String body = new String(buffer, pos, length, StandardCharsets.UTF_8);
+        pos += length;
+        return body;
+    }
+
+    /**
+     * Discards a body of up to length bytes without decoding it.
+     */
+    public void skipBody(long length) throws IOException {
+        long buffered = Math.min(length, limit - pos);
+        pos += (int) buffered;
+        length -= buffered;
+        while (length > 0) {
+            long n = in.skip(length);
+            if (n <= 0) {
+                if (in.read() == -1) return;
+                n = 1;
+            }
+            length -= n;
+        }
+    }
+
+    /**
+     * Returns the request method; GET and PUT are the shared constants of this class.
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * Returns the request target including any query string, for example "/weather.json".
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the percent-decoded value of a query parameter in the request target, or null if it is
+     * absent. "+" decodes to a space, as in HTML form submissions.
+     *
+     * @throws IllegalArgumentException if the value contains an invalid percent escape.
+     */
+    public String getQueryParameter(String name) {
+        int query = path.indexOf('?');
+        if (query < 0) return null;
+        for (String pair : path.substring(query + 1).split("&")) {
+            int equals = pair.indexOf('=');
+            String key = equals < 0 ? pair : pair.substring(0, equals);
+            if (key.equals(name)) return equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the Content-Length in bytes, or -1 if the header was absent.
+     */
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * Returns the Lamport-Clock header, or 0 if it was absent. Times above LamportClock.MAX_RECEIVED
+     * are refused with 400 while parsing.
+     */
+    public int getLamportClock() {
+        return lamportClock;
+    }
+
+    /**
+     * Returns the Source-Id header, or null if it was absent.
+     */
+    public String getSourceId() {
+        return sourceId;
+    }
+
+    /**
+     * Returns true if the request carried "Replicated: true".
+     */
+    public boolean isReplicated() {
+        return replicated;
+    }
+
+    /**
+     * Returns true if the request carried "Shard-Forwarded: true".
+     */
+    public boolean isShardForwarded() {
+        return shardForwarded;
+    }
+
+    /**
+     * Returns true if the request carried "Shard-Local: true".
+     */
+    public boolean isShardLocal() {
+        return shardLocal;
+    }
+
+    /**
+     * Returns the Cluster-Secret header, or null if it was absent.
+     */
+    public String getClusterSecret() {
+        return clusterSecret;
+    }
+
+    /**
+     * Returns true if the request carried "Connection: keep-alive", asking to reuse the connection.
+     */
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Returns the If-None-Match header as sent, quotes included, or null if it was absent.
+     */
+    public String getIfNoneMatch() {
+        return ifNoneMatch;
+    }
+
+    // Parses "METHOD SP target SP version"
+    private void parseRequestLine(int start, int end) throws ParseException {
+        int firstSpace = indexOf(start, end, (byte) ' ');
+        if (firstSpace < 0) throw new ParseException(400, "Malformed request line");
+        int secondSpace = indexOf(firstSpace + 1, end, (byte) ' ');
+        if (secondSpace < 0) secondSpace = end;
+
+        if (regionEquals(start, firstSpace, GET_BYTES)) method = GET;
+        else if (regionEquals(start, firstSpace, PUT_BYTES)) method = PUT;
+        else method = new String(buffer, start, firstSpace - start, StandardCharsets.US_ASCII);
+        path = new String(buffer, firstSpace + 1, secondSpace - firstSpace - 1, StandardCharsets.UTF_8);
+    }
+
+    // Parses one "Name: value" line, keeping only the headers the server acts on
+    private void parseHeader(int start, int end) throws ParseException {
+        int colon = indexOf(start, end, (byte) ':');
+        if (colon < 0) throw new ParseException(400, "Malformed header line");
+
+        int valueStart = colon + 1;
+        int valueEnd = end;
+        while (valueStart < valueEnd && isSpace(buffer[valueStart])) valueStart++;
+        while (valueEnd > valueStart && isSpace(buffer[valueEnd - 1])) valueEnd--;
+
+        if (nameEquals(start, colon, CONTENT_LENGTH)) {
+            contentLength = parseDigits(valueStart, valueEnd, Long.MAX_VALUE, "Content-Length");
+        } else if (nameEquals(start, colon, LAMPORT_CLOCK)) {
+            lamportClock = (int) parseDigits(valueStart, valueEnd, LamportClock.MAX_RECEIVED, "Lamport-Clock");
+        } else if (nameEquals(start, colon, SOURCE_ID)) {
+            sourceId = new String(buffer, valueStart, valueEnd - valueStart, StandardCharsets.UTF_8);
+        } else if (nameEquals(start, colon, REPLICATED)) {
+            replicated = nameEquals(valueStart, valueEnd, TRUE);
+        } else if (nameEquals(start, colon, SHARD_FORWARDED)) {
+            shardForwarded = nameEquals(valueStart, valueEnd, TRUE);
+        } else if (nameEquals(start, colon, SHARD_LOCAL)) {
+            shardLocal = nameEquals(valueStart, valueEnd, TRUE);
+        } else if (nameEquals(start, colon, CLUSTER_SECRET)) {
+            clusterSecret = new String(buffer, valueStart, valueEnd - valueStart, StandardCharsets.UTF_8);
+        } else if (nameEquals(start, colon, CONNECTION)) {
+            keepAlive = nameEquals(valueStart, valueEnd, KEEP_ALIVE);
+        } else if (nameEquals(start, colon, IF_NONE_MATCH)) {
+            ifNoneMatch = new String(buffer, valueStart, valueEnd - valueStart, StandardCharsets.US_ASCII);
+        }
+    }
+
+    // Parses a non-negative decimal number no larger than max
+    private long parseDigits(int start, int end, long max, String header) throws ParseException {
+        if (start == end) throw new ParseException(400, "Empty " + header);
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9 || value > (max - digit) / 10) {
+                throw new ParseException(400, "Invalid " + header);
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    // Returns the index of the next '\n' at or after pos, reading more input as needed; -1 at end of stream
+    private int nextLine() throws IOException {
+        int scanned = pos;
+        while (true) {
+            int lf = indexOf(scanned, limit, (byte) '\n');
+            if (lf >= 0) return lf > pos && buffer[lf - 1] == '\r' ? lf - 1 : lf;
+
+            scanned = limit;
+            if (pos > 0) {
+                scanned -= pos;
+                compact();
+            }
+            if (limit == buffer.length) throw new ParseException(431, "Request line or header exceeds " + buffer.length + " bytes");
+            int n = in.read(buffer, limit, buffer.length - limit);
+            if (n == -1) return -1;
+            limit += n;
+        }
+    }
+
+    // Steps past the line terminator starting at end, which is "\r\n" or "\n"
+    private int skipLineEnd(int end) {
+        return buffer[end] == '\r' ? end + 2 : end + 1;
+    }
+
+    // Moves unread bytes to the start of the buffer
+    private void compact() {
+        if (pos == 0) return;
+        System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+        limit -= pos;
+        pos = 0;
+    }
+
+    private int indexOf(int from, int to, byte b) {
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == b) return i;
+        }
+        return -1;
+    }
+
+    private boolean regionEquals(int start, int end, byte[] expected) {
+        if (end - start != expected.length) return false;
+        for (int i = 0; i < expected.length; i++) {
+            if (buffer[start + i] != expected[i]) return false;
+        }
+        return true;
+    }
+
+    // Compares against a lower-case name, ignoring the case of ASCII letters in the buffer
+    private boolean nameEquals(int start, int end, byte[] lowerCase) {
+        if (end - start != lowerCase.length) return false;
+        for (int i = 0; i < lowerCase.length; i++) {
+            byte b = buffer[start + i];
+            if (b >= 'A' && b <= 'Z') b += 'a' - 'A';
+            if (b != lowerCase[i]) return false;
+        }
+        return true;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,118 @@
+package assignment2;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Pre-encoded status lines and headers for writing HTTP/1.1 responses as bytes.
+ *
+ * Every fixed piece of a response is encoded once, so writing a response copies bytes and formats
+ * numbers as ASCII digits, with no charset encoding per request.
+ */
+public final class HttpResponses {
+    public static final byte[] OK = statusLine("200 OK");
+    public static final byte[] CREATED = statusLine("201 Created");
+    public static final byte[] BAD_REQUEST = statusLine("400 Bad Request");
+    public static final byte[] NOT_FOUND = statusLine("404 Not Found");
+    public static final byte[] REQUEST_TIMEOUT = statusLine("408 Request Timeout");
+    public static final byte[] NOT_MODIFIED = statusLine("304 Not Modified");
+    public static final byte[] CONFLICT = statusLine("409 Conflict");
+    public static final byte[] GONE = statusLine("410 Gone");
+    public static final byte[] PAYLOAD_TOO_LARGE = statusLine("413 Payload Too Large");
+    public static final byte[] TOO_MANY_REQUESTS = statusLine("429 Too Many Requests");
+    public static final byte[] HEADERS_TOO_LARGE = statusLine("431 Request Header Fields Too Large");
+    public static final byte[] INTERNAL_ERROR = statusLine("500 Internal Server Error");
+    public static final byte[] SERVICE_UNAVAILABLE = statusLine("503 Service Unavailable");
+    public static final byte[] INSUFFICIENT_STORAGE = statusLine("507 Insufficient Storage");
+
+    // Header names including ": ", followed by a number
+    public static final byte[] LAMPORT_CLOCK = ascii("Lamport-Clock: ");
+    public static final byte[] CONTENT_LENGTH = ascii("Content-Length: ");
+    public static final byte[] NEXT_OFFSET = ascii("Next-Offset: ");
+    public static final byte[] FIRST_OFFSET = ascii("First-Offset: ");
+
+    // Header names including ": ", followed by text
+    public static final byte[] SOURCE_ID = ascii("Source-Id: ");
+
+    // Complete header lines
+    public static final byte[] CONTENT_TYPE_JSON = ascii("Content-Type: application/json\r\n");
+    public static final byte[] CONTENT_TYPE_NDJSON = ascii("Content-Type: application/x-ndjson\r\n");
+    public static final byte[] CONTENT_TYPE_TEXT = ascii("Content-Type: text/plain\r\n");
+    public static final byte[] TRANSFER_ENCODING_CHUNKED = ascii("Transfer-Encoding: chunked\r\n");
+    public static final byte[] CONNECTION_CLOSE = ascii("Connection: close\r\n");
+    public static final byte[] CONNECTION_KEEP_ALIVE = ascii("Connection: keep-alive\r\n");
+    public static final byte[] RETRY_AFTER_ONE_SECOND = ascii("Retry-After: 1\r\n");
+    public static final byte[] CRLF = ascii("\r\n");
+
+    // ETag header name
+    private static final byte[] ETAG = ascii("ETag: ");
+
+    private HttpResponses() {
+    }
+
+    /**
+     * Writes a header whose value is a number, such as "Content-Length: 42\r\n".
+     *
+     * @param name Pre-encoded header name ending in ": ".
+     */
+    public static void writeHeader(OutputStream out, byte[] name, long value) throws IOException {
+        out.write(name);
+        writeDigits(out, value);
+        out.write(CRLF);
+    }
+
+    /**
+     * Writes a header whose value is text, such as "Source-Id: /127.0.0.1:50412\r\n", encoded as UTF-8.
+     *
+     * @param name Pre-encoded header name ending in ": ".
+     */
+    public static void writeHeader(OutputStream out, byte[] name, String value) throws IOException {
+        out.write(name);
+        out.write(value.getBytes(StandardCharsets.UTF_8));
+        out.write(CRLF);
+    }
+
+    /**
+     * Writes an ETag header carrying an entity tag, quotes included, such as "ETag: \"1f3a-42\"\r\n".
+     */
+    public static void writeETag(OutputStream out, String tag) throws IOException {
+        out.write(ETAG);
+        out.write(tag.getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+    }
+
+    /**
+     * Writes a non-negative number as ASCII digits.
+     */
+    public static void writeDigits(OutputStream out, long value) throws IOException {
+        byte[] digits = new byte[20];
+        int i = digits.length;
+        do {
+            digits[--i] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        out.write(digits, i, digits.length - i);
+    }
+
+    /**
+     * Encodes a status line received as text, for example from another shard, so it can be relayed.
+     */
+    public static byte[] relayedStatusLine(String statusLine) {
+        return ascii(statusLine + "\r\n");
+    }
+
+    /**
+     * Encodes text once, for bodies that never change.
+     */
+    public static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] statusLine(String status) {
+        return ascii("HTTP/1.1 " + status + "\r\n");
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
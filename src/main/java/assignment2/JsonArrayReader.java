@@ -0,0 +1,161 @@
+package assignment2;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Streaming pull parser for a JSON array of flat objects, as served by GET /weather.json.
+ *
+ * Objects are read one at a time straight from the underlying Reader, so a response of any size
+ * is processed in constant memory and the first record is available as soon as it has arrived.
+ * Like SimpleJsonParser, values are returned as strings with their surrounding quotes removed.
+ */
+public class JsonArrayReader {
+    private final Reader in;
+    // Reused for every key and value to avoid per-token builders
+    private final StringBuilder token = new StringBuilder();
+    // One character of lookahead; -2 means nothing is buffered
+    private int peeked = -2;
+    private boolean started = false;
+    private boolean finished = false;
+
+    /**
+     * Creates a parser over the given reader, which should be buffered.
+     */
+    public JsonArrayReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads the next object of the array.
+     *
+     * @return The object's fields in order, or null once the closing bracket has been read.
+     * @throws IOException on read errors.
+     * @throws IllegalArgumentException if the input is not a JSON array of flat objects.
+     */
+    public Map<String, String> next() throws IOException {
+        if (finished) return null;
+        if (!started) {
+            expect('[');
+            started = true;
+            if (peekNonSpace() == ']') {
+                read();
+                finished = true;
+                return null;
+            }
+        } else {
+            int c = readNonSpace();
+            if (c == ']') {
+                finished = true;
+                return null;
+            }
+            if (c != ',') throw new IllegalArgumentException("Expected ',' or ']' but found " + describe(c));
+        }
+        return readObject();
+    }
+
+    /**
+     * Passes every remaining object to the callback as soon as it is complete.
+     *
+     * @return The number of objects read.
+     */
+    public int forEach(Consumer<Map<String, String>> callback) throws IOException {
+        int count = 0;
+        Map<String, String> obj;
+        while ((obj = next()) != null) {
+            callback.accept(obj);
+            count++;
+        }
+        return count;
+    }
+
+    // Reads one {"key":value,...} object
+    private Map<String, String> readObject() throws IOException {
+        expect('{');
+        Map<String, String> map = new LinkedHashMap<>();
+        if (peekNonSpace() == '}') {
+            read();
+            return map;
+        }
+        while (true) {
+            expect('"');
+            String key = readString();
+            expect(':');
+            String value = peekNonSpace() == '"' ? readQuotedValue() : readBareValue();
+            map.put(key, value);
+
+            int c = readNonSpace();
+            if (c == '}') return map;
+            if (c != ',') throw new IllegalArgumentException("Expected ',' or '}' but found " + describe(c));
+        }
+    }
+
+    private String readQuotedValue() throws IOException {
+        read();
+        return readString();
+    }
+
+    // Reads up to the closing quote; escape sequences are kept as written, matching SimpleJsonParser
+    private String readString() throws IOException {
+        token.setLength(0);
+        while (true) {
+            int c = read();
+            if (c == -1) throw new IllegalArgumentException("Unterminated string");
+            if (c == '"') return token.toString();
+            token.append((char) c);
+            if (c == '\\') {
+                int escaped = read();
+                if (escaped == -1) throw new IllegalArgumentException("Unterminated string");
+                token.append((char) escaped);
+            }
+        }
+    }
+
+    // Reads an unquoted number or literal up to the next ',' or '}'
+    private String readBareValue() throws IOException {
+        token.setLength(0);
+        int c;
+        while ((c = peek()) != -1 && c != ',' && c != '}') {
+            token.append((char) read());
+        }
+        return token.toString().trim();
+    }
+
+    private void expect(char expected) throws IOException {
+        int c = readNonSpace();
+        if (c != expected) throw new IllegalArgumentException("Expected '" + expected + "' but found " + describe(c));
+    }
+
+    private int readNonSpace() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c != -1 && Character.isWhitespace(c));
+        return c;
+    }
+
+    private int peekNonSpace() throws IOException {
+        int c;
+        while ((c = peek()) != -1 && Character.isWhitespace(c)) read();
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (peeked == -2) peeked = in.read();
+        return peeked;
+    }
+
+    private int read() throws IOException {
+        if (peeked != -2) {
+            int c = peeked;
+            peeked = -2;
+            return c;
+        }
+        return in.read();
+    }
+
+    private static String describe(int c) {
+        return c == -1 ? "end of input" : "'" + (char) c + "'";
+    }
+}
@@ -1,12 +1,21 @@
 package assignment2;
 public class LamportClock {
+    // Largest time accepted from another process. Half the int range leaves room for the clock to
+    // keep ticking past any accepted time for as long as a process runs, so it never overflows.
+    public static final int MAX_RECEIVED = Integer.MAX_VALUE / 2;
+
     private int time = 0;
 
     public synchronized int getTime() { return time; }
 
-    public synchronized void tick() { time++; }
+    // Both stop at Integer.MAX_VALUE rather than wrap to a negative time
+    public synchronized int tick() {
+        if (time < Integer.MAX_VALUE) time++;
+        return time;
+    }
 
-    public synchronized void update(int received) {
-        time = Math.max(time, received) + 1;
+    public synchronized int update(int received) {
+        time = Math.max(time, received);
+        return tick();
     }
 }
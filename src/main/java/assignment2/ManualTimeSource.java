@@ -0,0 +1,31 @@
+package assignment2;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TimeSource that only moves when told to, for deterministic tests and simulations in virtual time.
+ */
+public class ManualTimeSource implements TimeSource {
+    private final AtomicLong now;
+
+    /**
+     * Creates a source reading the given time until it is advanced.
+     */
+    public ManualTimeSource(long startMillis) {
+        this.now = new AtomicLong(startMillis);
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return now.get();
+    }
+
+    /**
+     * Moves time forward by the given number of milliseconds.
+     *
+     * @return The new time.
+     */
+    public long advance(long millis) {
+        return now.addAndGet(millis);
+    }
+}
@@ -0,0 +1,61 @@
+package assignment2;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Named counters and gauges exposed by the AggregationServer at GET /metrics.
+ *
+ * Counters are LongAdders so hot request paths can increment them without contention;
+ * gauges are read on demand when the metrics are rendered.
+ */
+public class Metrics {
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * Adds one to the named counter, creating it on first use.
+     */
+    public void increment(String name) {
+        add(name, 1);
+    }
+
+    /**
+     * Adds the given amount to the named counter, creating it on first use.
+     */
+    public void add(String name, long amount) {
+        counters.computeIfAbsent(name, k -> new LongAdder()).add(amount);
+    }
+
+    /**
+     * Registers a gauge whose value is read each time metrics are rendered.
+     */
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Returns the current value of a counter or gauge, or 0 if it does not exist.
+     */
+    public long get(String name) {
+        LongAdder counter = counters.get(name);
+        if (counter != null) return counter.sum();
+        LongSupplier gauge = gauges.get(name);
+        return gauge != null ? gauge.getAsLong() : 0;
+    }
+
+    /**
+     * Renders every metric as one "name value" line, sorted by name.
+     */
+    public String render() {
+        Map<String, Long> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.sum()));
+        gauges.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+
+        StringBuilder sb = new StringBuilder();
+        values.forEach((name, value) -> sb.append(name).append(' ').append(value).append('\n'));
+        return sb.toString();
+    }
+}
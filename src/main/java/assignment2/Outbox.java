@@ -0,0 +1,110 @@
+package assignment2;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Pending updates of a ContentServer, at most one per station id.
+ *
+ * Queuing an update for an id that already has one pending replaces it, so only the newest
+ * update is ever sent. When backed by a file, every change is written through (temp file forced to
+ * disk, then atomically renamed; one JSON object per line) so a restarted content server resumes
+ * where it stopped, even after a power failure. The file also keeps the content server's Lamport
+ * time on a "#clock N" line, so a restarted content server sends later times than its earlier run.
+ */
+public class Outbox {
+    private static final String CLOCK_PREFIX = "#clock ";
+
+    private final Path file;
+    private final Map<String, String> pending = new LinkedHashMap<>();
+    // Lamport time of the content server, written with the pending updates
+    private int clock = 0;
+
+    /**
+     * Creates an outbox, loading any updates left in the file by a previous run.
+     *
+     * @param fileName Backing file, or null to keep the outbox in memory only.
+     * @throws IOException if an existing file cannot be read.
+     */
+    public Outbox(String fileName) throws IOException {
+        this.file = fileName == null ? null : Paths.get(fileName);
+        if (file != null && Files.exists(file)) {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                if (line.isBlank()) continue;
+                if (line.startsWith(CLOCK_PREFIX)) {
+                    clock = Integer.parseInt(line.substring(CLOCK_PREFIX.length()).trim());
+                    continue;
+                }
+                Map<String, String> obj = SimpleJsonParser.parse(line);
+                if (obj.containsKey("id")) pending.put(obj.get("id"), line);
+            }
+        }
+    }
+
+    /**
+     * Queues an update, replacing any update still pending for the same id.
+     */
+    public synchronized void put(String id, String json) throws IOException {
+        pending.put(id, json);
+        save();
+    }
+
+    /**
+     * Removes the update for id once it has been delivered, unless a newer one replaced it meanwhile.
+     */
+    public synchronized void remove(String id, String json) throws IOException {
+        if (pending.remove(id, json)) save();
+    }
+
+    /**
+     * Returns the oldest pending update as an (id, json) entry, or null if nothing is pending.
+     */
+    public synchronized Map.Entry<String, String> peek() {
+        for (Map.Entry<String, String> entry : pending.entrySet()) {
+            return Map.entry(entry.getKey(), entry.getValue());
+        }
+        return null;
+    }
+
+    /**
+     * Returns the Lamport time last set, or saved by a previous run; 0 if there is none.
+     */
+    public synchronized int getClock() {
+        return clock;
+    }
+
+    /**
+     * Sets the Lamport time to keep. It is written to the file with the next change to the pending
+     * updates, which follows every response the content server receives.
+     */
+    public synchronized void setClock(int clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the number of pending updates.
+     */
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    // Writes the pending updates through to the backing file, if any
+    private void save() throws IOException {
+        if (file == null) return;
+        Path temp = Paths.get(file + ".tmp");
+        StringBuilder lines = new StringBuilder();
+        for (String json : pending.values()) lines.append(json).append('\n');
+        lines.append(CLOCK_PREFIX).append(clock).append('\n');
+        ByteBuffer bytes = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (bytes.hasRemaining()) channel.write(bytes);
+            channel.force(true); // The rename must never expose a file whose contents are not on disk
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
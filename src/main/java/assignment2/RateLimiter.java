@@ -0,0 +1,81 @@
+package assignment2;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-key token-bucket rate limiter, used to cap PUTs per station and per remote address.
+ *
+ * Each bucket is a single AtomicLong holding its "theoretical arrival time" (the GCRA form of a
+ * token bucket): a request is admitted if that time is no more than one burst ahead of now, and
+ * admitting it pushes the time forward by one token's worth. Updates are a CAS loop, so buckets
+ * need no locks, and a bucket whose time has fallen behind now is full and can be dropped.
+ */
+public class RateLimiter {
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final double ratePerSecond;
+    private final int burst;
+    // Nanoseconds one token takes to refill
+    private final long intervalNanos;
+    // How far ahead of now a bucket's arrival time may run before requests are refused
+    private final long toleranceNanos;
+
+    /**
+     * Creates a limiter allowing ratePerSecond requests per key on average, with bursts of up to burst.
+     * A rate of 0 or less disables limiting.
+     */
+    public RateLimiter(double ratePerSecond, int burst) {
+        this.ratePerSecond = ratePerSecond;
+        this.burst = Math.max(1, burst);
+        this.intervalNanos = ratePerSecond > 0 ? (long) (1_000_000_000L / ratePerSecond) : 0;
+        this.toleranceNanos = intervalNanos * (this.burst - 1);
+    }
+
+    /**
+     * Takes a token for the key if one is available.
+     *
+     * @return true if the request is admitted, false if the key is over its limit.
+     */
+    public boolean tryAcquire(String key) {
+        if (intervalNanos <= 0) return true;
+
+        long now = System.nanoTime();
+        AtomicLong bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        while (true) {
+            long arrival = bucket.get();
+            if (arrival - now > toleranceNanos) return false;
+            long next = Math.max(arrival, now) + intervalNanos;
+            if (bucket.compareAndSet(arrival, next)) return true;
+        }
+    }
+
+    /**
+     * Drops buckets that have refilled completely, bounding memory when many keys come and go.
+     */
+    public void evictIdle() {
+        long now = System.nanoTime();
+        buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+    }
+
+    /**
+     * Returns the configured average rate per key, in requests per second.
+     */
+    public double getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    /**
+     * Returns the configured burst size per key.
+     */
+    public int getBurst() {
+        return burst;
+    }
+
+    /**
+     * Returns the number of keys currently tracked.
+     */
+    public int size() {
+        return buckets.size();
+    }
+}
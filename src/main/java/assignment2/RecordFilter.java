@@ -0,0 +1,208 @@
+package assignment2;
+
+import java.util.function.Predicate;
+
+/**
+ * A filter expression over weather records, compiled once into a tree of predicates.
+ *
+ * An expression compares fields with literals and combines the comparisons with AND, OR and
+ * parentheses, AND binding tighter than OR:
+ * <pre>
+ * air_temp>30 AND state=SA
+ * (state=SA OR state="New South Wales") AND rel_hum<=60
+ * </pre>
+ * The operators are =, !=, <, <=, > and >=; && and || may be written for AND and OR. Fields the schema
+ * types as numbers are compared numerically against each record's parsed values, and all other fields
+ * are compared as strings. A literal containing spaces, parentheses, '&' or '|' must be double-quoted.
+ * A record without the field never matches a comparison on it, not even !=.
+ */
+public class RecordFilter implements Predicate<WeatherRecord> {
+    // Deepest parenthesis nesting accepted, so a hostile expression cannot exhaust the stack
+    private static final int MAX_DEPTH = 32;
+
+    // Comparison operators, each deciding a match from the sign of compare(value, literal)
+    private enum Operator {
+        EQ, NE, LT, LE, GT, GE;
+
+        boolean matches(int comparison) {
+            switch (this) {
+                case EQ: return comparison == 0;
+                case NE: return comparison != 0;
+                case LT: return comparison < 0;
+                case LE: return comparison <= 0;
+                case GT: return comparison > 0;
+                default: return comparison >= 0;
+            }
+        }
+    }
+
+    private final String expression;
+    private final Predicate<WeatherRecord> root;
+
+    private RecordFilter(String expression, Predicate<WeatherRecord> root) {
+        this.expression = expression;
+        this.root = root;
+    }
+
+    /**
+     * Compiles an expression, typing its comparisons by the schema.
+     *
+     * @throws IllegalArgumentException if the expression is malformed or compares a numeric field
+     *         with something that is not a number; the message gives the position.
+     */
+    public static RecordFilter compile(String expression, WeatherSchema schema) throws IllegalArgumentException {
+        Parser parser = new Parser(expression, schema);
+        Predicate<WeatherRecord> root = parser.parseOr(0);
+        parser.skipSpaces();
+        if (parser.pos < expression.length()) throw parser.error("Unexpected '" + expression.charAt(parser.pos) + "'");
+        return new RecordFilter(expression, root);
+    }
+
+    /**
+     * Returns true if the record matches the expression.
+     */
+    @Override
+    public boolean test(WeatherRecord record) {
+        return root.test(record);
+    }
+
+    /**
+     * Returns the expression this filter was compiled from.
+     */
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    // Recursive-descent parser producing the predicate tree
+    private static class Parser {
+        final String text;
+        final WeatherSchema schema;
+        int pos = 0;
+
+        Parser(String text, WeatherSchema schema) {
+            this.text = text;
+            this.schema = schema;
+        }
+
+        // or := and (("OR" | "||") and)*
+        Predicate<WeatherRecord> parseOr(int depth) {
+            Predicate<WeatherRecord> left = parseAnd(depth);
+            while (keyword("OR") || symbol("||")) {
+                left = left.or(parseAnd(depth));
+            }
+            return left;
+        }
+
+        // and := primary (("AND" | "&&") primary)*
+        Predicate<WeatherRecord> parseAnd(int depth) {
+            Predicate<WeatherRecord> left = parsePrimary(depth);
+            while (keyword("AND") || symbol("&&")) {
+                left = left.and(parsePrimary(depth));
+            }
+            return left;
+        }
+
+        // primary := "(" or ")" | field operator literal
+        Predicate<WeatherRecord> parsePrimary(int depth) {
+            if (symbol("(")) {
+                if (depth == MAX_DEPTH) throw error("Parentheses nested deeper than " + MAX_DEPTH);
+                Predicate<WeatherRecord> inner = parseOr(depth + 1);
+                if (!symbol(")")) throw error("Expected ')'");
+                return inner;
+            }
+
+            String field = parseField();
+            Operator operator = parseOperator();
+            String literal = parseLiteral();
+            return comparison(field, operator, literal);
+        }
+
+        Predicate<WeatherRecord> comparison(String field, Operator operator, String literal) {
+            WeatherSchema.Type type = schema.typeOf(field);
+            if (type == WeatherSchema.Type.NUMBER || type == WeatherSchema.Type.INTEGER) {
+                double target;
+                try {
+                    target = Double.parseDouble(literal);
+                } catch (NumberFormatException e) {
+                    target = Double.NaN;
+                }
+                if (Double.isNaN(target)) throw error("Field '" + field + "' is numeric but '" + literal + "' is not a number");
+                double value = target;
+                return record -> {
+                    Number number = record.getNumber(field);
+                    return number != null && operator.matches(Double.compare(number.doubleValue(), value));
+                };
+            }
+            return record -> {
+                String value = record.getData().get(field);
+                return value != null && operator.matches(value.compareTo(literal));
+            };
+        }
+
+        String parseField() {
+            skipSpaces();
+            int start = pos;
+            while (pos < text.length() && isNameChar(text.charAt(pos))) pos++;
+            if (pos == start) throw error("Expected a field name");
+            return text.substring(start, pos);
+        }
+
+        Operator parseOperator() {
+            if (symbol("<=")) return Operator.LE;
+            if (symbol(">=")) return Operator.GE;
+            if (symbol("!=")) return Operator.NE;
+            if (symbol("==") || symbol("=")) return Operator.EQ;
+            if (symbol("<")) return Operator.LT;
+            if (symbol(">")) return Operator.GT;
+            throw error("Expected one of = != < <= > >=");
+        }
+
+        String parseLiteral() {
+            skipSpaces();
+            int start = pos;
+            if (pos < text.length() && text.charAt(pos) == '"') {
+                int end = text.indexOf('"', pos + 1);
+                if (end < 0) throw error("Unterminated string");
+                pos = end + 1;
+                return text.substring(start + 1, end);
+            }
+            while (pos < text.length() && !isLiteralEnd(text.charAt(pos))) pos++;
+            if (pos == start) throw error("Expected a value");
+            return text.substring(start, pos);
+        }
+
+        // Consumes a case-insensitive word such as AND if it stands alone
+        boolean keyword(String word) {
+            skipSpaces();
+            int end = pos + word.length();
+            if (!text.regionMatches(true, pos, word, 0, word.length())) return false;
+            if (end < text.length() && isNameChar(text.charAt(end))) return false;
+            pos = end;
+            return true;
+        }
+
+        boolean symbol(String s) {
+            skipSpaces();
+            if (!text.startsWith(s, pos)) return false;
+            pos += s.length();
+            return true;
+        }
+
+        void skipSpaces() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) pos++;
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + pos);
+        }
+
+        static boolean isNameChar(char c) {
+            return Character.isLetterOrDigit(c) || c == '_';
+        }
+
+        static boolean isLiteralEnd(char c) {
+            return Character.isWhitespace(c) || c == '(' || c == ')' || c == '&' || c == '|';
+        }
+    }
+}
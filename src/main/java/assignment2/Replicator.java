@@ -0,0 +1,258 @@
+package assignment2;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Replicator streams applied PUTs from this AggregationServer to one backup server.
+ *
+ * Records are sent by a single background thread as PUT requests over one kept-alive connection,
+ * marked with a "Replicated: true" header, carrying the record's own Lamport time and source so
+ * the backup stores exactly what the primary stored, and the cluster secret if one is configured so
+ * the backup accepts them from this address. Only the latest pending record of each station is kept,
+ * so the queue never holds more than one record per station. If the backup is unreachable the queue
+ * is dropped and a full resync is owed instead: once the backup is reachable again the current state
+ * is sent once, so nothing applied in the meantime is missed and nothing piles up while it is down.
+ * The backup's Lamport merge makes re-sent records harmless. A backup that answers 408, 429 or 5xx
+ * is reachable but busy: the same record is sent again after its Retry-After, or a growing backoff,
+ * without a resync. Any other 4xx refuses that record for good, and it is skipped.
+ *
+ * Queued records are sent in the order their stations were last updated, not in Lamport order; only
+ * a resync is sorted by Lamport time. Expiries are not sent: the backup stamps each record's update
+ * time when it arrives and expires it on its own from then, so it may keep a record a little longer
+ * than the primary did.
+ */
+public class Replicator {
+    // Delay before retrying an unreachable backup in milliseconds
+    private static final long RETRY_MS = 1000;
+    // Longest wait to connect to the backup or for one response, in milliseconds
+    private static final int TIMEOUT_MS = 10000;
+    // First and longest wait before re-sending a record the backup was too busy to take, in milliseconds
+    private static final long BUSY_BASE_MS = 100;
+    private static final long BUSY_MAX_MS = 30000;
+
+    private final String host;
+    private final int port;
+    private final Supplier<Collection<WeatherRecord>> snapshot;
+    private final String clusterSecret;
+
+    // Latest pending record per station id, oldest first; also guards resyncOwed
+    private final LinkedHashMap<String, WeatherRecord> pending = new LinkedHashMap<>();
+    // Set until the current state has been sent since the backup was last unreachable
+    private boolean resyncOwed = true;
+
+    // Connection to the backup, reused for every PUT until it fails; used only by the sender thread
+    private Socket socket;
+    private OutputStream out;
+    private InputStream in;
+    // Retry-After of the last response in milliseconds, or -1 if it had none; used only by the sender thread
+    private long retryAfterMs = -1;
+    private final Backoff busy = new Backoff(BUSY_BASE_MS, BUSY_MAX_MS);
+
+    private volatile boolean running = false;
+    private Thread sender;
+
+    /**
+     * Creates a replicator for the backup at host:port.
+     *
+     * @param address Backup address as host:port.
+     * @param snapshot Supplies the current records, re-sent whenever the backup (re)connects.
+     * @param clusterSecret Cluster-Secret header value to send, or null to send none.
+     */
+    public Replicator(String address, Supplier<Collection<WeatherRecord>> snapshot, String clusterSecret) {
+        String[] parts = address.trim().split(":");
+        this.host = parts[0];
+        this.port = Integer.parseInt(parts[1]);
+        this.snapshot = snapshot;
+        this.clusterSecret = clusterSecret;
+    }
+
+    /**
+     * Starts the background sender thread. The backup is brought up to date with the current state first.
+     */
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        sender = new Thread(this::run, "replicator-" + host + ":" + port);
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /**
+     * Stops the sender thread; records still queued are dropped.
+     */
+    public synchronized void stop() {
+        running = false;
+        if (sender != null) sender.interrupt();
+    }
+
+    /**
+     * Queues an applied record for replication, replacing any older record of the same station that
+     * has not been sent yet. Nothing is queued while a resync is owed, since the resync sends it.
+     */
+    public void publish(WeatherRecord record) {
+        String id = record.getData().get("id");
+        synchronized (pending) {
+            if (resyncOwed) return;
+            WeatherRecord queued = pending.remove(id);
+            pending.put(id, queued != null && queued.isNewerThan(record) ? queued : record);
+            pending.notifyAll();
+        }
+    }
+
+    /**
+     * Returns the number of records waiting to be sent.
+     */
+    public int pending() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    // Sender loop: send the owed resync once connected, then drain the queue
+    private void run() {
+        try {
+            while (running) {
+                try {
+                    if (takeResync()) {
+                        List<WeatherRecord> records = new ArrayList<>(snapshot.get());
+                        records.sort(Comparator.<WeatherRecord>comparingInt(r -> r.lamport).thenComparing(r -> r.source));
+                        for (WeatherRecord record : records) send(record);
+                    }
+                    send(take());
+                } catch (IOException e) {
+                    closeConnection();
+                    synchronized (pending) {
+                        resyncOwed = true;
+                        pending.clear();
+                    }
+                    Thread.sleep(RETRY_MS);
+                }
+            }
+        } catch (InterruptedException e) {
+            // Stopped
+        } finally {
+            closeConnection();
+        }
+    }
+
+    // Clears the resync flag, returning whether it was set; records published from now on are queued
+    private boolean takeResync() {
+        synchronized (pending) {
+            boolean owed = resyncOwed;
+            resyncOwed = false;
+            return owed;
+        }
+    }
+
+    // Removes and returns the oldest pending record, waiting for one if there is none
+    private WeatherRecord take() throws InterruptedException {
+        synchronized (pending) {
+            while (pending.isEmpty()) pending.wait();
+            Iterator<WeatherRecord> oldest = pending.values().iterator();
+            WeatherRecord record = oldest.next();
+            oldest.remove();
+            return record;
+        }
+    }
+
+    // Sends one record until the backup takes it or refuses it for good, waiting while it is busy
+    private void send(WeatherRecord record) throws IOException, InterruptedException {
+        while (true) {
+            int status = sendOnce(record);
+            // Any 2xx or 409 means the backup has it or something newer
+            if (status / 100 == 2 || status == 409) {
+                busy.reset();
+                return;
+            }
+            if (status == 408 || status == 429 || status / 100 == 5) {
+                Thread.sleep(retryAfterMs >= 0 ? retryAfterMs : busy.nextDelay());
+                continue;
+            }
+            System.err.println("Backup " + host + ":" + port + " refused replicated PUT for id "
+                    + record.getData().get("id") + " with " + status + "; skipping it");
+            return;
+        }
+    }
+
+    // Sends one record and returns the status code; a failure on a reused connection is retried once
+    // on a new one, since the backup may have closed it while idle
+    private int sendOnce(WeatherRecord record) throws IOException {
+        boolean reused = socket != null;
+        try {
+            return exchange(record);
+        } catch (IOException e) {
+            closeConnection();
+            if (!reused) throw e;
+            return exchange(record);
+        }
+    }
+
+    // Sends one record as a replicated PUT and returns the response's status code
+    private int exchange(WeatherRecord record) throws IOException {
+        if (socket == null) {
+            socket = new Socket();
+            socket.connect(new InetSocketAddress(host, port), TIMEOUT_MS);
+            socket.setSoTimeout(TIMEOUT_MS);
+            out = new BufferedOutputStream(socket.getOutputStream());
+            in = new BufferedInputStream(socket.getInputStream());
+        }
+
+        byte[] json = SimpleJsonParser.toJson(record.getData()).getBytes(StandardCharsets.UTF_8);
+        StringBuilder head = new StringBuilder()
+                .append("PUT /weather.json HTTP/1.1\r\n")
+                .append("Host: ").append(host).append("\r\n")
+                .append("Content-Type: application/json\r\n")
+                .append("Lamport-Clock: ").append(record.lamport).append("\r\n")
+                .append("Source-Id: ").append(record.source).append("\r\n")
+                .append("Replicated: true\r\n")
+                .append("Connection: keep-alive\r\n");
+        if (clusterSecret != null) head.append("Cluster-Secret: ").append(clusterSecret).append("\r\n");
+        head.append("Content-Length: ").append(json.length).append("\r\n\r\n");
+        out.write(head.toString().getBytes(StandardCharsets.UTF_8));
+        out.write(json);
+        out.flush();
+
+        String status = ChunkedInputStream.readLine(in);
+        long contentLength = 0;
+        retryAfterMs = -1;
+        String line;
+        while ((line = ChunkedInputStream.readLine(in)) != null && !line.isEmpty()) {
+            if (line.regionMatches(true, 0, "Content-Length:", 0, 15)) contentLength = Long.parseLong(line.substring(15).trim());
+            if (line.regionMatches(true, 0, "Retry-After:", 0, 12)) retryAfterMs = parseRetryAfter(line.substring(12).trim());
+        }
+        if (line == null) throw new EOFException("Backup closed the connection");
+        in.skipNBytes(contentLength);
+
+        String[] parts = status.split(" ", 3);
+        try {
+            return Integer.parseInt(parts[1]);
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            throw new IOException("Malformed status line from backup: " + status);
+        }
+    }
+
+    // Converts a Retry-After in seconds to milliseconds, capped at the longest backoff; -1 if it is a date or malformed
+    private static long parseRetryAfter(String value) {
+        try {
+            return Math.min(BUSY_MAX_MS, Math.max(0, Long.parseLong(value)) * 1000);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void closeConnection() {
+        if (socket == null) return;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Already unusable
+        }
+        socket = null;
+        out = null;
+        in = null;
+    }
+}
@@ -0,0 +1,490 @@
+package assignment2;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Settings for one AggregationServer instance.
+ *
+ * Defaults match the standalone server. Setters return the config so it can be built in a single
+ * expression, and fromArgs reads the same settings from the server's command-line flags.
+ */
+public class ServerConfig {
+    /**
+     * How accepted connections are assigned to threads.
+     */
+    public enum Threading {
+        // A new platform thread per connection
+        THREAD_PER_CONNECTION,
+        // A fixed pool of platform threads; further connections queue
+        POOL,
+        // A new virtual thread per connection
+        VIRTUAL
+    }
+
+    /**
+     * How applied PUTs reach disk.
+     */
+    public enum Persistence {
+        // A background checkpointer writes at most one snapshot per interval
+        CHECKPOINT,
+        // Every applied PUT is written to disk before it is acknowledged
+        SYNC,
+        // Nothing is loaded or saved
+        NONE
+    }
+
+    /**
+     * Which records make room when a capacity limit is reached.
+     */
+    public enum Eviction {
+        // The station whose last PUT is oldest
+        LRU,
+        // The record with the lowest Lamport time
+        OLDEST_LAMPORT,
+        // Nothing is evicted; new stations are refused with 507
+        NONE
+    }
+
+    private int port = 4567;
+    private Path dataDir = Paths.get("");
+    private String dataFile = "server_data.json";
+    private long expiryMs = 30000;
+    private Threading threading = Threading.THREAD_PER_CONNECTION;
+    private int poolSize = 64;
+    private Persistence persistence = Persistence.CHECKPOINT;
+    private long checkpointMs = 1000;
+    private List<String> replicateTo = new ArrayList<>();
+    private List<String> shards = new ArrayList<>();
+    private String self = null;
+    private String clusterSecret = null;
+    private double stationRate = 5;
+    private int stationBurst = 10;
+    private double addressRate = 50;
+    private int addressBurst = 100;
+    private long headerTimeoutMs = 5000;
+    private long bodyTimeoutMs = 10000;
+    private int maxBodyBytes = 65536;
+    private long shutdownDelayMs = 0;
+    private long drainMs = 10000;
+    private WeatherSchema schema = WeatherSchema.defaults();
+    private int maxStations = 0;
+    private long maxBytes = 0;
+    private Eviction eviction = Eviction.LRU;
+    private int acceptors = 1;
+    private int backlog = 50;
+    private Path changeLogDir = null;
+    private long changeLogSegmentBytes = 64L << 20;
+    private long changeLogRetentionBytes = 1L << 30;
+    private long changeLogRetentionMs = 7L * 24 * 60 * 60 * 1000;
+    private TimeSource timeSource = TimeSource.SYSTEM;
+
+    /**
+     * Builds a config from command-line arguments: the first bare number is the port, followed by
+     * any of the flags listed in AggregationServer.main.
+     *
+     * @throws IllegalArgumentException on an unknown mode name, a malformed schema file, or
+     *         --replicate-to without --cluster-secret.
+     * @throws UncheckedIOException if the schema file cannot be read.
+     */
+    public static ServerConfig fromArgs(String[] args) {
+        ServerConfig config = new ServerConfig();
+        for (int i = 0; i < args.length; i++) {
+            boolean hasValue = i + 1 < args.length;
+            if (args[i].equals("--checkpoint-ms") && hasValue) config.checkpointMs = Long.parseLong(args[++i]);
+            else if (args[i].equals("--data-dir") && hasValue) config.dataDir = Paths.get(args[++i]);
+            else if (args[i].equals("--data-file") && hasValue) config.dataFile = args[++i];
+            else if (args[i].equals("--expiry-ms") && hasValue) config.expiryMs = Long.parseLong(args[++i]);
+            else if (args[i].equals("--threading") && hasValue) config.threading = Threading.valueOf(modeName(args[++i]));
+            else if (args[i].equals("--pool-size") && hasValue) config.poolSize = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--persistence") && hasValue) config.persistence = Persistence.valueOf(modeName(args[++i]));
+            else if (args[i].equals("--replicate-to") && hasValue) config.replicateTo = Arrays.asList(args[++i].split(","));
+            else if (args[i].equals("--shards") && hasValue) config.shards = Arrays.asList(args[++i].split(","));
+            else if (args[i].equals("--self") && hasValue) config.self = args[++i];
+            else if (args[i].equals("--cluster-secret") && hasValue) config.clusterSecret = args[++i];
+            else if (args[i].equals("--station-rate") && hasValue) config.stationRate = Double.parseDouble(args[++i]);
+            else if (args[i].equals("--station-burst") && hasValue) config.stationBurst = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--address-rate") && hasValue) config.addressRate = Double.parseDouble(args[++i]);
+            else if (args[i].equals("--address-burst") && hasValue) config.addressBurst = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--header-timeout-ms") && hasValue) config.headerTimeoutMs = Long.parseLong(args[++i]);
+            else if (args[i].equals("--body-timeout-ms") && hasValue) config.bodyTimeoutMs = Long.parseLong(args[++i]);
+            else if (args[i].equals("--max-body-bytes") && hasValue) config.maxBodyBytes = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--shutdown-delay-ms") && hasValue) config.shutdownDelayMs = Long.parseLong(args[++i]);
+            else if (args[i].equals("--drain-ms") && hasValue) config.drainMs = Long.parseLong(args[++i]);
+            else if (args[i].equals("--schema") && hasValue) config.schema = loadSchema(args[++i]);
+            else if (args[i].equals("--max-stations") && hasValue) config.maxStations = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--max-bytes") && hasValue) config.maxBytes = Long.parseLong(args[++i]);
+            else if (args[i].equals("--eviction") && hasValue) config.eviction = Eviction.valueOf(modeName(args[++i]));
+            else if (args[i].equals("--acceptors") && hasValue) config.acceptors = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--backlog") && hasValue) config.backlog = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--change-log") && hasValue) config.changeLogDir = Paths.get(args[++i]);
+            else if (args[i].equals("--change-log-segment-bytes") && hasValue) config.changeLogSegmentBytes = Long.parseLong(args[++i]);
+            else if (args[i].equals("--change-log-retention-bytes") && hasValue) config.changeLogRetentionBytes = Long.parseLong(args[++i]);
+            else if (args[i].equals("--change-log-retention-ms") && hasValue) config.changeLogRetentionMs = Long.parseLong(args[++i]);
+            else config.port = Integer.parseInt(args[i]);
+        }
+        // A backup only honours replicated PUTs from a primary it can verify, and it cannot know the
+        // primary's address; without the secret they are rate-limited as client PUTs
+        if (!config.replicateTo.isEmpty() && config.clusterSecret == null) {
+            throw new IllegalArgumentException("--replicate-to needs --cluster-secret, given to the backups as well");
+        }
+        return config;
+    }
+
+    // Reads a schema file given on the command line
+    private static WeatherSchema loadSchema(String file) {
+        try {
+            return WeatherSchema.load(Paths.get(file));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read schema " + file, e);
+        }
+    }
+
+    // Accepts "thread-per-connection" as well as "THREAD_PER_CONNECTION"
+    private static String modeName(String arg) {
+        return arg.trim().toUpperCase(Locale.ROOT).replace('-', '_');
+    }
+
+    /**
+     * Returns the snapshot file: the data file resolved against the data directory.
+     */
+    public Path getDataPath() {
+        return dataDir.resolve(dataFile);
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Sets the port to listen on; 0 binds an ephemeral port, reported by AggregationServer.getPort().
+     */
+    public ServerConfig setPort(int port) {
+        this.port = port;
+        return this;
+    }
+
+    public Path getDataDir() {
+        return dataDir;
+    }
+
+    public ServerConfig setDataDir(Path dataDir) {
+        this.dataDir = dataDir;
+        return this;
+    }
+
+    public String getDataFile() {
+        return dataFile;
+    }
+
+    public ServerConfig setDataFile(String dataFile) {
+        this.dataFile = dataFile;
+        return this;
+    }
+
+    public long getExpiryMs() {
+        return expiryMs;
+    }
+
+    public ServerConfig setExpiryMs(long expiryMs) {
+        this.expiryMs = expiryMs;
+        return this;
+    }
+
+    public Threading getThreading() {
+        return threading;
+    }
+
+    public ServerConfig setThreading(Threading threading) {
+        this.threading = threading;
+        return this;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * Sets the number of threads used in POOL mode.
+     */
+    public ServerConfig setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+        return this;
+    }
+
+    public Persistence getPersistence() {
+        return persistence;
+    }
+
+    public ServerConfig setPersistence(Persistence persistence) {
+        this.persistence = persistence;
+        return this;
+    }
+
+    public long getCheckpointMs() {
+        return checkpointMs;
+    }
+
+    public ServerConfig setCheckpointMs(long checkpointMs) {
+        this.checkpointMs = checkpointMs;
+        return this;
+    }
+
+    public List<String> getReplicateTo() {
+        return replicateTo;
+    }
+
+    public ServerConfig setReplicateTo(List<String> replicateTo) {
+        this.replicateTo = replicateTo;
+        return this;
+    }
+
+    public List<String> getShards() {
+        return shards;
+    }
+
+    public ServerConfig setShards(List<String> shards) {
+        this.shards = shards;
+        return this;
+    }
+
+    /**
+     * Returns this node's address in the shard list, or null to use localhost and the bound port.
+     */
+    public String getSelf() {
+        return self;
+    }
+
+    public ServerConfig setSelf(String self) {
+        this.self = self;
+        return this;
+    }
+
+    /**
+     * Returns the secret sent with replicated and shard-forwarded PUTs, and required of such PUTs from
+     * addresses outside the replicate-to and shard lists; null if none is configured.
+     */
+    public String getClusterSecret() {
+        return clusterSecret;
+    }
+
+    public ServerConfig setClusterSecret(String clusterSecret) {
+        this.clusterSecret = clusterSecret;
+        return this;
+    }
+
+    public double getStationRate() {
+        return stationRate;
+    }
+
+    public int getStationBurst() {
+        return stationBurst;
+    }
+
+    /**
+     * Sets the per-station PUT limit; a rate of 0 disables it.
+     */
+    public ServerConfig setStationLimit(double ratePerSecond, int burst) {
+        this.stationRate = ratePerSecond;
+        this.stationBurst = burst;
+        return this;
+    }
+
+    public double getAddressRate() {
+        return addressRate;
+    }
+
+    public int getAddressBurst() {
+        return addressBurst;
+    }
+
+    /**
+     * Sets the per-client-address PUT limit; a rate of 0 disables it.
+     */
+    public ServerConfig setAddressLimit(double ratePerSecond, int burst) {
+        this.addressRate = ratePerSecond;
+        this.addressBurst = burst;
+        return this;
+    }
+
+    public long getHeaderTimeoutMs() {
+        return headerTimeoutMs;
+    }
+
+    public ServerConfig setHeaderTimeoutMs(long headerTimeoutMs) {
+        this.headerTimeoutMs = headerTimeoutMs;
+        return this;
+    }
+
+    public long getBodyTimeoutMs() {
+        return bodyTimeoutMs;
+    }
+
+    public ServerConfig setBodyTimeoutMs(long bodyTimeoutMs) {
+        this.bodyTimeoutMs = bodyTimeoutMs;
+        return this;
+    }
+
+    public int getMaxBodyBytes() {
+        return maxBodyBytes;
+    }
+
+    public ServerConfig setMaxBodyBytes(int maxBodyBytes) {
+        this.maxBodyBytes = maxBodyBytes;
+        return this;
+    }
+
+    public long getShutdownDelayMs() {
+        return shutdownDelayMs;
+    }
+
+    public ServerConfig setShutdownDelayMs(long shutdownDelayMs) {
+        this.shutdownDelayMs = shutdownDelayMs;
+        return this;
+    }
+
+    public long getDrainMs() {
+        return drainMs;
+    }
+
+    public ServerConfig setDrainMs(long drainMs) {
+        this.drainMs = drainMs;
+        return this;
+    }
+
+    public WeatherSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Sets the schema PUTs are validated against; defaults to WeatherSchema.defaults().
+     */
+    public ServerConfig setSchema(WeatherSchema schema) {
+        this.schema = schema;
+        return this;
+    }
+
+    public int getMaxStations() {
+        return maxStations;
+    }
+
+    /**
+     * Sets the largest number of stations stored at once; 0 means no limit.
+     */
+    public ServerConfig setMaxStations(int maxStations) {
+        this.maxStations = maxStations;
+        return this;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Sets the budget for the estimated heap size of all stored records; 0 means no limit.
+     */
+    public ServerConfig setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        return this;
+    }
+
+    public Eviction getEviction() {
+        return eviction;
+    }
+
+    /**
+     * Sets what happens to a new station when a capacity limit is reached; defaults to LRU.
+     */
+    public ServerConfig setEviction(Eviction eviction) {
+        this.eviction = eviction;
+        return this;
+    }
+
+    public int getAcceptors() {
+        return acceptors;
+    }
+
+    /**
+     * Sets the number of acceptor threads; above 1 each gets its own socket bound with SO_REUSEPORT.
+     */
+    public ServerConfig setAcceptors(int acceptors) {
+        this.acceptors = acceptors;
+        return this;
+    }
+
+    public int getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * Sets how many connections each listening socket queues before they are accepted.
+     */
+    public ServerConfig setBacklog(int backlog) {
+        this.backlog = backlog;
+        return this;
+    }
+
+    public Path getChangeLogDir() {
+        return changeLogDir;
+    }
+
+    /**
+     * Sets the directory of the change log served at GET /changes; null, the default, keeps no log.
+     */
+    public ServerConfig setChangeLogDir(Path changeLogDir) {
+        this.changeLogDir = changeLogDir;
+        return this;
+    }
+
+    public long getChangeLogSegmentBytes() {
+        return changeLogSegmentBytes;
+    }
+
+    /**
+     * Sets the size at which a change log segment is closed and the next one started; defaults to 64 MiB.
+     */
+    public ServerConfig setChangeLogSegmentBytes(long changeLogSegmentBytes) {
+        this.changeLogSegmentBytes = changeLogSegmentBytes;
+        return this;
+    }
+
+    public long getChangeLogRetentionBytes() {
+        return changeLogRetentionBytes;
+    }
+
+    /**
+     * Sets the change log size above which its oldest segments are deleted; defaults to 1 GiB, 0 means no limit.
+     */
+    public ServerConfig setChangeLogRetentionBytes(long changeLogRetentionBytes) {
+        this.changeLogRetentionBytes = changeLogRetentionBytes;
+        return this;
+    }
+
+    public long getChangeLogRetentionMs() {
+        return changeLogRetentionMs;
+    }
+
+    /**
+     * Sets how long a closed change log segment is kept after its last entry; defaults to 7 days, 0 means no limit.
+     */
+    public ServerConfig setChangeLogRetentionMs(long changeLogRetentionMs) {
+        this.changeLogRetentionMs = changeLogRetentionMs;
+        return this;
+    }
+
+    public TimeSource getTimeSource() {
+        return timeSource;
+    }
+
+    /**
+     * Sets where the server reads wall-clock time for record timestamps and expiry; defaults to the
+     * system clock. Not settable from the command line.
+     */
+    public ServerConfig setTimeSource(TimeSource timeSource) {
+        this.timeSource = timeSource;
+        return this;
+    }
+}
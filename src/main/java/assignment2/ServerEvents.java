@@ -0,0 +1,112 @@
+package assignment2;
+
+import jdk.jfr.*;
+
+/**
+ * JDK Flight Recorder events showing where the AggregationServer spends its time.
+ *
+ * Every event is disabled by default; until a recording enables them, beginning and committing one
+ * only checks a flag. They can be switched on in a running server without a restart, for example
+ * with the settings file in src/main/resources:
+ * <pre>
+ * jcmd &lt;pid&gt; JFR.start name=server settings=server-events.jfc filename=server.jfr
+ * </pre>
+ * Time spent waiting for the snapshot store's lock appears as the JDK's own jdk.JavaMonitorEnter
+ * events on the same thread, inside a Persist event.
+ */
+public final class ServerEvents {
+    private static final String CATEGORY = "Aggregation Server";
+
+    private ServerEvents() {
+    }
+
+    /**
+     * One step of handling a request: header, body, parse, validate, clock, store or response.
+     */
+    @Name("assignment2.RequestPhase")
+    @Label("Request Phase")
+    @Category(CATEGORY)
+    @Description("A step of handling one HTTP request")
+    @Enabled(false)
+    @StackTrace(false)
+    public static class RequestPhase extends Event {
+        @Label("Phase")
+        public String phase;
+
+        @Label("Method")
+        public String method;
+
+        /**
+         * Begins timing a phase; commit() ends it.
+         */
+        public static RequestPhase begin(String phase, String method) {
+            RequestPhase event = new RequestPhase();
+            event.phase = phase;
+            event.method = method;
+            event.begin();
+            return event;
+        }
+    }
+
+    /**
+     * A snapshot written to disk, including any wait for the store's lock.
+     */
+    @Name("assignment2.Persist")
+    @Label("Persist Snapshot")
+    @Category(CATEGORY)
+    @Description("A snapshot of all records written to disk")
+    @Enabled(false)
+    @StackTrace(false)
+    public static class Persist extends Event {
+        @Label("Trigger")
+        @Description("checkpoint, sync or shutdown")
+        public String trigger;
+
+        @Label("Records")
+        public int records;
+
+        @Label("Succeeded")
+        public boolean succeeded;
+    }
+
+    /**
+     * A sweep removing records not updated within the expiry time.
+     */
+    @Name("assignment2.ExpirySweep")
+    @Label("Expiry Sweep")
+    @Category(CATEGORY)
+    @Description("A pass removing expired records")
+    @Enabled(false)
+    @StackTrace(false)
+    public static class ExpirySweep extends Event {
+        @Label("Removed")
+        public int removed;
+
+        @Label("Remaining")
+        public int remaining;
+    }
+
+    /**
+     * The body of a GET response, from the first byte serialized to the last written.
+     */
+    @Name("assignment2.GetResponse")
+    @Label("GET Response")
+    @Category(CATEGORY)
+    @Description("Serialization and writing of a GET response body")
+    @Enabled(false)
+    @StackTrace(false)
+    public static class GetResponse extends Event {
+        @Label("Records")
+        public int records;
+
+        @Label("Body Size")
+        @DataAmount
+        public long bytes;
+
+        @Label("Filtered")
+        public boolean filtered;
+
+        @Label("Gathered From Shards")
+        public boolean gathered;
+    }
+}
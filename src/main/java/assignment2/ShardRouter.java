@@ -0,0 +1,299 @@
+package assignment2;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BiConsumer;
+
+/**
+ * ShardRouter partitions station ids across several AggregationServers with a consistent-hash ring.
+ *
+ * Any node accepts any request: PUTs for ids owned by another node are proxied to the owner, and a
+ * full GET fans out to every other shard in parallel, asking each for its local records only, and
+ * streams their records into its own response one at a time. Requests passed between shards are
+ * marked with "Shard-Forwarded: true" or "Shard-Local: true" so they are never routed a second time,
+ * and carry the cluster secret if one is configured so the receiving shard trusts them.
+ *
+ * The ring is fixed when the router is created; changing the shard list means restarting the nodes
+ * with the new list, after which each hands off the records it no longer owns.
+ *
+ * Every connection to another shard has a connect and a read timeout, so a shard that hangs costs a
+ * bounded wait and never holds a thread for good.
+ */
+public class ShardRouter {
+    // Upper bound on waiting for the shards to start answering a scatter-gather GET
+    private static final long GATHER_TIMEOUT_MS = 2000;
+    // Longest wait to connect to another shard, in milliseconds
+    private static final int CONNECT_TIMEOUT_MS = 2000;
+    // Longest wait for any one read from another shard, in milliseconds
+    private static final int READ_TIMEOUT_MS = 10000;
+    // Delay before retrying handoff of records whose owner was unreachable
+    private static final long REBALANCE_RETRY_MS = 2000;
+    // Handoff rounds tried before the remaining records are left on this node
+    private static final int REBALANCE_ATTEMPTS = 10;
+
+    private final HashRing ring;
+    private final String self;
+    private final String clusterSecret;
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "shard-router");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Creates a router for this node.
+     *
+     * @param ring Ring containing every shard, including this one.
+     * @param self This node's address as it appears in the ring.
+     * @param clusterSecret Cluster-Secret header value to send with forwarded PUTs, or null to send none.
+     */
+    public ShardRouter(HashRing ring, String self, String clusterSecret) {
+        this.ring = ring;
+        this.self = self;
+        this.clusterSecret = clusterSecret;
+    }
+
+    /**
+     * Returns true if this node owns the given station id.
+     */
+    public boolean isLocal(String id) {
+        return ring.ownerOf(id).equals(self);
+    }
+
+    /**
+     * Returns the address of the node owning the given station id.
+     */
+    public String ownerOf(String id) {
+        return ring.ownerOf(id);
+    }
+
+    /**
+     * Forwards a PUT to another shard and returns its status line and headers.
+     *
+     * @param owner Address of the owning shard.
+     * @param json Request body.
+     * @param lamport Lamport-Clock header value to send.
+     * @param source Source-Id header value to send.
+     * @param replicated Whether the PUT carries a fixed Lamport time (replicated or handed-off data).
+     * @return Response lines up to, not including, the blank line.
+     * @throws IOException if the owner cannot be reached.
+     */
+    public List<String> forwardPut(String owner, String json, int lamport, String source, boolean replicated) throws IOException {
+        String[] parts = owner.split(":");
+        try (Socket socket = connect(new Socket(), parts);
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            out.write("PUT /weather.json HTTP/1.1\r\n");
+            out.write("Host: " + parts[0] + "\r\n");
+            out.write("Content-Type: application/json\r\n");
+            out.write("Lamport-Clock: " + lamport + "\r\n");
+            out.write("Source-Id: " + source + "\r\n");
+            if (replicated) out.write("Replicated: true\r\n");
+            out.write("Shard-Forwarded: true\r\n");
+            if (clusterSecret != null) out.write("Cluster-Secret: " + clusterSecret + "\r\n");
+            out.write("Content-Length: " + json.getBytes(StandardCharsets.UTF_8).length + "\r\n");
+            out.write("\r\n");
+            out.write(json);
+            out.flush();
+
+            List<String> response = new ArrayList<>();
+            String line;
+            while ((line = in.readLine()) != null && !line.isEmpty()) response.add(line);
+            if (response.isEmpty()) throw new IOException("Empty response from shard " + owner);
+            return response;
+        }
+    }
+
+    /**
+     * Asks every other shard in parallel for its local records, and returns a stream over the answer
+     * of each shard that has at least one. Shards that fail or do not start answering within the
+     * gather timeout are skipped, so the result may be partial.
+     *
+     * @param clock Clock updated with the Lamport time each shard reports.
+     * @param filter Filter expression each shard applies before answering, or null for every record.
+     * @return One open stream per shard with records; the caller must close them all.
+     */
+    public List<RemoteRecords> openRemote(LamportClock clock, String filter) {
+        List<Socket> sockets = new ArrayList<>();
+        List<Future<RemoteRecords>> futures = new ArrayList<>();
+        for (String node : ring.getNodes()) {
+            if (node.equals(self)) continue;
+            Socket socket = new Socket();
+            sockets.add(socket);
+            futures.add(executor.submit(() -> openLocal(socket, node, clock, filter)));
+        }
+
+        List<RemoteRecords> opened = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + GATHER_TIMEOUT_MS;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                RemoteRecords records = futures.get(i).get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                if (records != null) opened.add(records);
+            } catch (ExecutionException | TimeoutException e) {
+                // Closing the socket ends a blocked connect or read, which cancelling the task would not
+                closeQuietly(sockets.get(i));
+                System.err.println("Shard unavailable during GET: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (int j = i; j < sockets.size(); j++) closeQuietly(sockets.get(j));
+                break;
+            }
+        }
+        return opened;
+    }
+
+    /**
+     * Hands records this node does not own to their owners. Records whose owner is unreachable or
+     * busy are retried in the background, up to REBALANCE_ATTEMPTS rounds; records an owner refuses
+     * outright, and any still pending after the last round, stay on this node until its next restart.
+     *
+     * @param data The local store, read but not modified.
+     * @param handedOff Called with the id and record once the owner has it, to remove it from the store.
+     */
+    public void rebalance(Map<String, WeatherRecord> data, BiConsumer<String, WeatherRecord> handedOff) {
+        rebalance(data, handedOff, new HashSet<>(), 1);
+    }
+
+    // One handoff round; refused holds the ids owners refused, which are not offered again
+    private void rebalance(Map<String, WeatherRecord> data, BiConsumer<String, WeatherRecord> handedOff, Set<String> refused, int attempt) {
+        int pending = 0;
+        for (Map.Entry<String, WeatherRecord> entry : data.entrySet()) {
+            String owner = ring.ownerOf(entry.getKey());
+            if (owner.equals(self) || refused.contains(entry.getKey())) continue;
+
+            WeatherRecord record = entry.getValue();
+            try {
+                String status = forwardPut(owner, SimpleJsonParser.toJson(record.getData()), record.lamport, record.source, true).get(0);
+                if (status.startsWith("HTTP/1.1 2") || status.startsWith("HTTP/1.1 409")) {
+                    handedOff.accept(entry.getKey(), record);
+                } else if (ContentServer.isRetryable(status)) {
+                    pending++;
+                } else {
+                    refused.add(entry.getKey());
+                    System.err.println("Shard " + owner + " refused handoff of id " + entry.getKey() + ": " + status);
+                }
+            } catch (IOException e) {
+                pending++;
+            }
+        }
+
+        if (pending == 0) return;
+        if (attempt >= REBALANCE_ATTEMPTS) {
+            System.err.println("Giving up handing off " + pending + " records after " + attempt
+                    + " attempts; they stay on this node until it restarts");
+            return;
+        }
+        executor.submit(() -> {
+            Thread.sleep(REBALANCE_RETRY_MS);
+            rebalance(data, handedOff, refused, attempt + 1);
+            return null;
+        });
+    }
+
+    // GETs one shard's own records matching the filter and reads its first record; returns null if
+    // it holds none, in which case it answers 404 or an empty array
+    private static RemoteRecords openLocal(Socket socket, String node, LamportClock clock, String filter) throws IOException {
+        String[] parts = node.split(":");
+        connect(socket, parts);
+        try {
+            Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            String query = filter == null ? "" : "?filter=" + URLEncoder.encode(filter, StandardCharsets.UTF_8);
+            out.write("GET /weather.json" + query + " HTTP/1.1\r\n");
+            out.write("Host: " + parts[0] + "\r\n");
+            out.write("Lamport-Clock: " + clock.getTime() + "\r\n");
+            out.write("Shard-Local: true\r\n\r\n");
+            out.flush();
+
+            String status = ChunkedInputStream.readLine(in);
+            if (status == null) throw new IOException("Empty response from shard " + node);
+
+            boolean chunked = false;
+            String line;
+            while ((line = ChunkedInputStream.readLine(in)) != null && !line.isEmpty()) {
+                if (line.startsWith("Lamport-Clock:")) clock.update(Integer.parseInt(line.substring(14).trim()));
+                if (line.equalsIgnoreCase("Transfer-Encoding: chunked")) chunked = true;
+            }
+            if (status.startsWith("HTTP/1.1 404")) {
+                socket.close();
+                return null;
+            }
+            if (!status.startsWith("HTTP/1.1 2")) throw new IOException("Shard " + node + " answered " + status);
+
+            InputStream body = chunked ? new ChunkedInputStream(in) : in;
+            RemoteRecords records = new RemoteRecords(node, socket,
+                    new JsonArrayReader(new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))));
+            if (records.next == null) {
+                socket.close();
+                return null;
+            }
+            return records;
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(socket);
+            throw e;
+        }
+    }
+
+    // Connects the socket to host:port with the connect and read timeouts, closing it on failure
+    private static Socket connect(Socket socket, String[] parts) throws IOException {
+        try {
+            socket.connect(new InetSocketAddress(parts[0], Integer.parseInt(parts[1])), CONNECT_TIMEOUT_MS);
+            socket.setSoTimeout(READ_TIMEOUT_MS);
+            return socket;
+        } catch (IOException | RuntimeException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Already unusable
+        }
+    }
+
+    /**
+     * One shard's local records, read from its response one at a time so a gathered GET holds only
+     * the record being written, however many the shard has.
+     */
+    public static final class RemoteRecords implements Closeable {
+        private final String node;
+        private final Socket socket;
+        private final JsonArrayReader reader;
+        // Record read ahead, returned by the next call to next
+        private Map<String, String> next;
+
+        private RemoteRecords(String node, Socket socket, JsonArrayReader reader) throws IOException {
+            this.node = node;
+            this.socket = socket;
+            this.reader = reader;
+            this.next = reader.next();
+        }
+
+        /**
+         * Returns the next record, or null at the end of the response. A shard that fails partway
+         * also ends it, leaving the result partial as an unreachable shard does.
+         */
+        public Map<String, String> next() {
+            Map<String, String> record = next;
+            if (record == null) return null;
+            try {
+                next = reader.next();
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Shard " + node + " failed during GET: " + e.getMessage());
+                next = null;
+            }
+            return record;
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
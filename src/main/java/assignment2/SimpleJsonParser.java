@@ -1,5 +1,7 @@
 package assignment2;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 
 /**
@@ -39,22 +41,98 @@ public class SimpleJsonParser {
         return map;
     }
 
+    /**
+     * Parses a JSON array of flat objects into a list of maps.
+     * Example input: [{"id":"A"},{"id":"B"}]
+     */
+    public static List<Map<String, String>> parseArray(String json) throws IllegalArgumentException {
+        json = json.trim();
+        if (!json.startsWith("[") || !json.endsWith("]")) {
+            throw new IllegalArgumentException("Invalid JSON array");
+        }
+
+        List<Map<String, String>> result = new ArrayList<>();
+        boolean inQuotes = false;
+        int start = -1;
+        for (int i = 1; i < json.length() - 1; i++) {
+            char c = json.charAt(i);
+            if (c == '"') inQuotes = !inQuotes;
+            if (inQuotes) continue;
+            if (c == '{') {
+                start = i;
+            } else if (c == '}' && start >= 0) {
+                result.add(parse(json.substring(start, i + 1)));
+                start = -1;
+            }
+        }
+        return result;
+    }
+
     /**
      * Converts a Map<String, String> to a JSON object string.
      * Example output: {"id":"ABC","temp":"20"}
      */
     public static String toJson(Map<String, String> map) {
         StringBuilder sb = new StringBuilder();
-        sb.append("{");
+        try {
+            writeJson(map, sb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringBuilder never throws
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes a Map<String, String> as a JSON object straight to the output, without building a String.
+     * Keys and values hold their escape sequences as parsed, so they are written as they are, except
+     * that control characters, which JSON does not allow inside a string, are written as unicode
+     * escapes. The object is therefore always one line of valid JSON, and writing it again after
+     * parsing it gives the same text.
+     */
+    public static void writeJson(Map<String, String> map, Appendable out) throws IOException {
+        out.append('{');
         boolean first = true;
         for (Map.Entry<String, String> e : map.entrySet()) {
-            if (!first) sb.append(",");
-            sb.append("\"").append(e.getKey()).append("\":");
-            sb.append("\"").append(e.getValue()).append("\"");
+            if (!first) out.append(',');
+            out.append('"');
+            writeString(e.getKey(), out);
+            out.append("\":\"");
+            writeString(e.getValue(), out);
+            out.append('"');
             first = false;
         }
-        sb.append("}");
-        return sb.toString();
+        out.append('}');
+    }
+
+    /**
+     * Escapes a raw value, such as a header, for use inside a JSON string: quotes, backslashes and
+     * control characters. Values that came from parsed JSON are already escaped and need no call.
+     */
+    public static String escape(String value) {
+        StringBuilder sb = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '"' && c != '\\' && c >= 0x20) {
+                if (sb != null) sb.append(c);
+                continue;
+            }
+            if (sb == null) sb = new StringBuilder(value.length() + 8).append(value, 0, i);
+            if (c == '"' || c == '\\') sb.append('\\').append(c);
+            else sb.append(String.format("\\u%04x", (int) c));
+        }
+        return sb == null ? value : sb.toString();
+    }
+
+    // Helper method: writes a parsed string, escaping only control characters
+    private static void writeString(String value, Appendable out) throws IOException {
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20) continue;
+            out.append(value, start, i).append(String.format("\\u%04x", (int) c));
+            start = i + 1;
+        }
+        out.append(value, start, value.length());
     }
 
     // Helper method: removes surrounding quotes if present
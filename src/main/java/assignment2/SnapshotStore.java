@@ -0,0 +1,250 @@
+package assignment2;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Crash-safe snapshot file for the AggregationServer.
+ *
+ * A snapshot is written to a temporary file, forced to disk and then atomically renamed over the
+ * live file, so a crash mid-write never leaves a truncated store behind. The previous snapshot is
+ * kept as a fallback. Each file holds one JSON object per line inside a JSON array, followed by a
+ * trailer line carrying the snapshot sequence number, the server Lamport clock and a CRC32 of the body.
+ * Every record carries its own Lamport time, last update time and source in reserved "_" fields,
+ * written after its weather data so they take precedence over any data field of the same name:
+ *
+ * <pre>
+ * [
+ * {"id":"A",...,"_lamport":"4","_timestamp":"1700000000000","_source":"/127.0.0.1:50412"},
+ * {"id":"B",...,"_lamport":"6","_timestamp":"1700000002000","_source":"/127.0.0.1:50418"}
+ * ]
+ * #snapshot seq=7 clock=6 crc32=1c291ca3
+ * </pre>
+ *
+ * A record line that cannot be parsed is skipped on load without discarding the rest of the snapshot.
+ */
+public class SnapshotStore {
+    private static final String TRAILER_PREFIX = "#snapshot ";
+    // Reserved per-record fields holding metadata rather than weather data
+    private static final String LAMPORT_FIELD = "_lamport";
+    private static final String TIMESTAMP_FIELD = "_timestamp";
+    private static final String SOURCE_FIELD = "_source";
+
+    private final Path file;
+    private final Path tempFile;
+    private final Path previousFile;
+    // Dates records persisted without an update time
+    private final TimeSource timeSource;
+
+    // Sequence number of the last snapshot written or loaded
+    private long sequence = 0;
+
+    /**
+     * Creates a store backed by the given file; ".tmp" and ".prev" siblings are used while writing.
+     *
+     * @param timeSource Clock giving the update time of loaded records that were saved without one.
+     */
+    public SnapshotStore(String fileName, TimeSource timeSource) {
+        this.file = Paths.get(fileName);
+        this.tempFile = Paths.get(fileName + ".tmp");
+        this.previousFile = Paths.get(fileName + ".prev");
+        this.timeSource = timeSource;
+    }
+
+    /**
+     * Writes the given records as a new snapshot: temp file, fsync, then atomic rename into place.
+     *
+     * @param records Records to persist.
+     * @param clockTime Current server Lamport time, restored as a high-water mark on load.
+     * @throws IOException if the snapshot could not be written.
+     */
+    public synchronized void write(Collection<WeatherRecord> records, int clockTime) throws IOException {
+        writeLines(records.stream().map(SnapshotStore::toLine).iterator(), clockTime);
+    }
+
+    /**
+     * Writes records already encoded by toLine as a new snapshot, the same way as write.
+     *
+     * @param lines One encoded record per element.
+     * @param clockTime Current server Lamport time, restored as a high-water mark on load.
+     * @throws IOException if the snapshot could not be written.
+     */
+    public synchronized void writeLines(Iterator<String> lines, int clockTime) throws IOException {
+        long seq = sequence + 1;
+        CRC32 crc = new CRC32();
+
+        try (FileOutputStream fos = new FileOutputStream(tempFile.toFile());
+             Writer writer = new BufferedWriter(new OutputStreamWriter(fos, StandardCharsets.UTF_8))) {
+            writeLine(writer, crc, "[");
+            while (lines.hasNext()) {
+                String json = lines.next();
+                writeLine(writer, crc, lines.hasNext() ? json + "," : json);
+            }
+            writeLine(writer, crc, "]");
+            writer.write(TRAILER_PREFIX + "seq=" + seq + " clock=" + clockTime + " crc32=" + Long.toHexString(crc.getValue()) + "\n");
+            writer.flush();
+            fos.getFD().sync();
+        }
+
+        // Keep the last good snapshot until the new one is in place
+        if (Files.exists(file)) {
+            Files.move(file, previousFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE);
+        sequence = seq;
+    }
+
+    /**
+     * Loads the newest valid snapshot among the live, temporary and previous files.
+     * Files with a bad checksum or missing trailer are skipped; a plain JSON array without a
+     * trailer (the legacy format) is accepted as the oldest possible snapshot, with every record
+     * dated to the file's modification time.
+     *
+     * @return The chosen snapshot, or an empty snapshot if none is valid.
+     */
+    public synchronized Snapshot load() {
+        Snapshot best = null;
+        for (Path candidate : List.of(file, tempFile, previousFile)) {
+            Snapshot snapshot = read(candidate);
+            if (snapshot != null && (best == null || snapshot.seq > best.seq)) best = snapshot;
+        }
+        if (best == null) return new Snapshot(0, 0, new ArrayList<>());
+
+        sequence = Math.max(sequence, best.seq);
+        return best;
+    }
+
+    /**
+     * Returns the sequence number of the last snapshot written or loaded.
+     */
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    // Reads and validates one snapshot file; returns null if it is missing or corrupt
+    private Snapshot read(Path path) {
+        if (!Files.exists(path)) return null;
+
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            System.err.println("Failed to read snapshot " + path + ": " + e.getMessage());
+            return null;
+        }
+
+        try {
+            String last = lines.isEmpty() ? "" : lines.get(lines.size() - 1);
+            if (!last.startsWith(TRAILER_PREFIX)) {
+                // Legacy single-array file written before checksums existed
+                String content = String.join("", lines).trim();
+                if (!content.startsWith("[") || !content.endsWith("]")) return null;
+                long modified = Files.getLastModifiedTime(path).toMillis();
+                List<WeatherRecord> records = new ArrayList<>();
+                for (Map<String, String> obj : SimpleJsonParser.parseArray(content)) {
+                    records.add(new WeatherRecord(obj, 0, "", modified));
+                }
+                return new Snapshot(0, 0, records);
+            }
+
+            long seq = -1;
+            int clockTime = 0;
+            long expectedCrc = -1;
+            for (String field : last.substring(TRAILER_PREFIX.length()).trim().split(" ")) {
+                if (field.startsWith("seq=")) seq = Long.parseLong(field.substring(4));
+                else if (field.startsWith("clock=")) clockTime = Integer.parseInt(field.substring(6));
+                else if (field.startsWith("crc32=")) expectedCrc = Long.parseLong(field.substring(6), 16);
+            }
+
+            CRC32 crc = new CRC32();
+            List<WeatherRecord> records = new ArrayList<>();
+            for (int i = 0; i < lines.size() - 1; i++) {
+                String line = lines.get(i);
+                crc.update((line + "\n").getBytes(StandardCharsets.UTF_8));
+                if (!line.startsWith("{")) continue;
+                try {
+                    records.add(fromMetadata(SimpleJsonParser.parse(line.endsWith(",") ? line.substring(0, line.length() - 1) : line), timeSource));
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Skipping unreadable record on line " + (i + 1) + " of " + path + ": " + e.getMessage());
+                }
+            }
+            if (seq < 0 || crc.getValue() != expectedCrc) {
+                System.err.println("Ignoring corrupt snapshot " + path);
+                return null;
+            }
+            return new Snapshot(seq, clockTime, records);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Ignoring unreadable snapshot " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Encodes a record as one snapshot line: its weather data followed by the metadata fields.
+     */
+    public static String toLine(WeatherRecord record) {
+        return SimpleJsonParser.toJson(withMetadata(record));
+    }
+
+    // Appends the record's Lamport time, update time and source to its weather data, replacing any
+    // data fields of the same name
+    private static Map<String, String> withMetadata(WeatherRecord record) {
+        Map<String, String> map = new LinkedHashMap<>(record.getData());
+        map.put(LAMPORT_FIELD, String.valueOf(record.lamport));
+        map.put(TIMESTAMP_FIELD, String.valueOf(record.timestamp));
+        map.put(SOURCE_FIELD, record.source);
+        return map;
+    }
+
+    // Rebuilds a record from a persisted line, stripping the reserved metadata fields; a line without an
+    // update time is dated now by timeSource. Also used by StoreTool.
+    // Throws IllegalArgumentException if a metadata field is not a number.
+    static WeatherRecord fromMetadata(Map<String, String> map, TimeSource timeSource) {
+        String lamport = map.remove(LAMPORT_FIELD);
+        String timestamp = map.remove(TIMESTAMP_FIELD);
+        String source = map.remove(SOURCE_FIELD);
+        return new WeatherRecord(map,
+                lamport == null ? 0 : Integer.parseInt(lamport),
+                source == null ? "" : source,
+                timestamp == null ? timeSource.currentTimeMillis() : Long.parseLong(timestamp));
+    }
+
+    // Writes one body line and folds it into the running checksum
+    private static void writeLine(Writer writer, CRC32 crc, String line) throws IOException {
+        String withNewline = line + "\n";
+        crc.update(withNewline.getBytes(StandardCharsets.UTF_8));
+        writer.write(withNewline);
+    }
+
+    /**
+     * A validated snapshot: its sequence number, the server clock high-water mark and its records.
+     */
+    public static class Snapshot {
+        final long seq;
+        final int clockTime;
+        final List<WeatherRecord> records;
+
+        Snapshot(long seq, int clockTime, List<WeatherRecord> records) {
+            this.seq = seq;
+            this.clockTime = clockTime;
+            this.records = records;
+        }
+
+        /**
+         * Returns the server Lamport time recorded when the snapshot was written.
+         */
+        public int getClockTime() {
+            return clockTime;
+        }
+
+        /**
+         * Returns the records with their persisted Lamport and update times.
+         */
+        public List<WeatherRecord> getRecords() {
+            return records;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package assignment2;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Bounds the stored data by station count and approximate heap size, evicting records to make room.
+ *
+ * Each stored record's estimated size (WeatherRecord.estimatedBytes) is added to a running total as it
+ * is stored and subtracted as it is evicted or expired; recount() corrects any drift from removals made
+ * elsewhere. Candidates for eviction are kept in a queue in policy order, with lazy deletion: replaced
+ * and expired records stay queued until they reach the head, where they are recognised as no longer
+ * stored and skipped. Each queued record is therefore dequeued at most once, and the queue is compacted
+ * whenever stale entries outnumber live ones. For the limits to hold under concurrent PUTs, a new
+ * station's makeRoom and the store that follows must run while holding this object's lock, as
+ * AggregationServer.store does; a station whose record is replaced by a larger one can still push
+ * the total over the byte budget until the next new station makes room.
+ */
+public final class StationCapacity {
+    // Fewest queued records before compaction is considered, so small stores are never compacted
+    private static final int MIN_COMPACT_SIZE = 64;
+
+    private final Map<String, WeatherRecord> data;
+    private final int maxStations;
+    private final long maxBytes;
+    private final ServerConfig.Eviction eviction;
+
+    // Eviction candidates in policy order; null when nothing is limited or eviction is off
+    private final Queue<WeatherRecord> candidates;
+
+    // Estimated heap size of the stored records
+    private final AtomicLong bytes = new AtomicLong();
+
+    /**
+     * Creates limits over the given store.
+     *
+     * @param maxStations Largest number of stations, or 0 for no limit.
+     * @param maxBytes Largest estimated size of all records in bytes, or 0 for no limit.
+     * @param eviction What to do with a new station when a limit is reached.
+     */
+    public StationCapacity(Map<String, WeatherRecord> data, int maxStations, long maxBytes, ServerConfig.Eviction eviction) {
+        this.data = data;
+        this.maxStations = maxStations;
+        this.maxBytes = maxBytes;
+        this.eviction = eviction;
+        if (!isLimited() || eviction == ServerConfig.Eviction.NONE) {
+            candidates = null;
+        } else if (eviction == ServerConfig.Eviction.OLDEST_LAMPORT) {
+            candidates = new PriorityQueue<>((a, b) -> a.isNewerThan(b) ? 1 : b.isNewerThan(a) ? -1 : 0);
+        } else {
+            candidates = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Returns true if a station count or byte budget is set.
+     */
+    public boolean isLimited() {
+        return maxStations > 0 || maxBytes > 0;
+    }
+
+    /**
+     * Makes room for a record of a station not yet stored, evicting records if the policy allows.
+     *
+     * @return The number of records evicted, or -1 if the record must be refused because a limit
+     *         is reached and eviction is off.
+     */
+    public int makeRoom(WeatherRecord incoming) {
+        return makeRoom(incoming, victim -> { });
+    }
+
+    /**
+     * Makes room like makeRoom(incoming), passing each evicted record to onEvict after it is removed.
+     */
+    public int makeRoom(WeatherRecord incoming, Consumer<WeatherRecord> onEvict) {
+        if (!isLimited() || !isFull(incoming.estimatedBytes())) return 0;
+        if (candidates == null) return -1;
+
+        int evicted = 0;
+        synchronized (this) {
+            while (isFull(incoming.estimatedBytes())) {
+                WeatherRecord victim = candidates.poll();
+                if (victim == null) break;
+                if (data.remove(id(victim), victim)) {
+                    bytes.addAndGet(-victim.estimatedBytes());
+                    evicted++;
+                    onEvict.accept(victim);
+                }
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Accounts for a record just stored, replacing previous (null for a new station).
+     */
+    public void stored(WeatherRecord record, WeatherRecord previous) {
+        bytes.addAndGet(record.estimatedBytes() - (previous == null ? 0 : previous.estimatedBytes()));
+        if (candidates == null) return;
+        synchronized (this) {
+            candidates.add(record);
+            if (candidates.size() > MIN_COMPACT_SIZE && candidates.size() > 2 * data.size()) {
+                candidates.removeIf(queued -> data.get(id(queued)) != queued);
+            }
+        }
+    }
+
+    /**
+     * Accounts for a record removed from the store by expiry.
+     */
+    public void removed(WeatherRecord record) {
+        bytes.addAndGet(-record.estimatedBytes());
+    }
+
+    /**
+     * Recomputes the byte total from the stored records, correcting drift from untracked removals.
+     */
+    public void recount() {
+        long total = 0;
+        for (WeatherRecord record : data.values()) total += record.estimatedBytes();
+        bytes.set(total);
+    }
+
+    /**
+     * Returns the estimated heap size of the stored records.
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    // True if storing one more station of the given size would exceed a limit
+    private boolean isFull(long incomingBytes) {
+        return (maxStations > 0 && data.size() >= maxStations)
+                || (maxBytes > 0 && bytes.get() + incomingBytes > maxBytes);
+    }
+
+    private static String id(WeatherRecord record) {
+        return record.getData().get("id");
+    }
+}
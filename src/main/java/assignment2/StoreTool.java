@@ -0,0 +1,306 @@
+package assignment2;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Bulk import into, and streaming export out of, the AggregationServer's store.
+ *
+ * Import parses weather_data.txt-format files and NDJSON (one JSON object per line) on a fork-join
+ * pool, validates every record against the schema and writes a single snapshot the server loads on
+ * start, with no sockets and no per-record disk writes. Inputs are numbered in the order given, and
+ * a record's number becomes its Lamport time unless it carries a "_lamport" field as snapshot lines
+ * do, so when an id appears more than once the last occurrence wins. Records without a "_timestamp"
+ * are dated to the import, so they expire relative to that time. Unless told to replace it, an existing
+ * snapshot at the target is merged in as the first input: its records are kept unless an input has
+ * the same id, and inputs are numbered after its clock. The new snapshot's clock never goes below the
+ * existing one's.
+ *
+ * Export GETs a live server's records and writes them as NDJSON as they arrive, in constant memory.
+ * Its output can be imported again.
+ */
+public class StoreTool implements Closeable {
+    // Lines parsed per fork-join task when importing NDJSON
+    private static final int CHUNK_LINES = 4096;
+
+    private final WeatherSchema schema;
+    private final ForkJoinPool pool;
+
+    // Imported records by id, already encoded as snapshot lines; when ids collide the newer is kept
+    private final Map<String, Imported> records = new ConcurrentHashMap<>();
+    private final LongAdder rejected = new LongAdder();
+    // Number given to the next input record, which orders duplicates
+    private int nextSequence = 1;
+    // Highest server clock of the snapshots merged in
+    private int snapshotClock = 0;
+
+    /**
+     * Usage:
+     * <pre>
+     * StoreTool import &lt;snapshot-file&gt; [file-or-directory...] [--ndjson file|-] [--schema F] [--parallelism N] [--replace]
+     * StoreTool export &lt;host:port&gt; [--filter expression]
+     * </pre>
+     * Import merges every weather file (directories are searched recursively) and NDJSON input ("-" for
+     * standard input) into the snapshot, or into a new one with "--replace", which drops the records
+     * already there. Export writes a server's records to standard output as NDJSON.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2 || !(args[0].equals("import") || args[0].equals("export"))) {
+            System.out.println("Usage: java StoreTool import <snapshot-file> [file-or-directory...] [--ndjson file|-] [--schema F] [--parallelism N] [--replace]");
+            System.out.println("       java StoreTool export <host:port> [--filter expression]");
+            return;
+        }
+
+        if (args[0].equals("export")) {
+            String filter = args.length > 3 && args[2].equals("--filter") ? args[3] : null;
+            String[] address = args[1].split(":");
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+            long count = export(address[0], Integer.parseInt(address[1]), filter, out);
+            out.flush();
+            System.err.println("Exported " + count + " stations");
+            return;
+        }
+
+        WeatherSchema schema = WeatherSchema.defaults();
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        String ndjson = null;
+        boolean replace = false;
+        List<Path> inputs = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            boolean hasValue = i + 1 < args.length;
+            if (args[i].equals("--ndjson") && hasValue) ndjson = args[++i];
+            else if (args[i].equals("--schema") && hasValue) schema = WeatherSchema.load(Paths.get(args[++i]));
+            else if (args[i].equals("--parallelism") && hasValue) parallelism = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--replace")) replace = true;
+            else inputs.add(Paths.get(args[i]));
+        }
+
+        long start = System.nanoTime();
+        try (StoreTool tool = new StoreTool(schema, parallelism)) {
+            Path target = Paths.get(args[1]);
+            if (!replace) tool.addSnapshot(target);
+            tool.addFiles(inputs);
+            if (ndjson != null) {
+                try (BufferedReader in = ndjson.equals("-")
+                        ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                        : Files.newBufferedReader(Paths.get(ndjson), StandardCharsets.UTF_8)) {
+                    tool.addNdjson(in);
+                }
+            }
+            tool.writeSnapshot(target);
+            System.out.println("Wrote " + tool.getStations() + " stations (" + tool.getRejected() + " records rejected) in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        }
+    }
+
+    /**
+     * Creates an importer validating records against the schema on a pool of the given size.
+     */
+    public StoreTool(WeatherSchema schema, int parallelism) {
+        this.schema = schema;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Merges in the records of a snapshot with their own Lamport times, and numbers every input added
+     * after this call above the snapshot's clock, so those inputs replace its records for the same ids.
+     * Call it before adding other inputs. Does nothing if the file does not exist.
+     */
+    public void addSnapshot(Path file) {
+        if (!Files.exists(file)) return;
+        SnapshotStore.Snapshot snapshot = new SnapshotStore(file.toString(), TimeSource.SYSTEM).load();
+        for (WeatherRecord record : snapshot.getRecords()) merge(record);
+        snapshotClock = Math.max(snapshotClock, snapshot.getClockTime());
+        nextSequence = Math.max(nextSequence, snapshotClock + 1);
+    }
+
+    /**
+     * Imports weather_data.txt-format files in parallel; directories are searched recursively, in
+     * name order. Files without an id or failing the schema are counted as rejected.
+     *
+     * @throws IOException if a directory cannot be listed.
+     */
+    public void addFiles(List<Path> inputs) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (Path input : inputs) {
+            if (!Files.isDirectory(input)) {
+                files.add(input);
+                continue;
+            }
+            try (Stream<Path> walk = Files.walk(input)) {
+                files.addAll(walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList()));
+            }
+        }
+
+        int base = nextSequence;
+        nextSequence += files.size();
+        try {
+            pool.submit(() -> IntStream.range(0, files.size()).parallel().forEach(i -> {
+                try {
+                    Map<String, String> data = ContentServer.readDataFile(files.get(i).toString());
+                    add(data, base + i, "import", TimeSource.SYSTEM.currentTimeMillis());
+                } catch (IOException | IllegalArgumentException e) {
+                    System.err.println("Skipping " + files.get(i) + ": " + e.getMessage());
+                    rejected.increment();
+                }
+            })).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IOException("Import interrupted", e);
+        }
+    }
+
+    /**
+     * Imports NDJSON, reading lines in order and parsing them in chunks on the pool while reading
+     * continues. Blank lines are skipped; lines that do not parse or fail the schema are rejected.
+     *
+     * @throws IOException if the input cannot be read.
+     */
+    public void addNdjson(BufferedReader in) throws IOException {
+        Deque<ForkJoinTask<?>> tasks = new ArrayDeque<>();
+        List<String> chunk = new ArrayList<>(CHUNK_LINES);
+        int chunkStart = nextSequence;
+        String line;
+        while ((line = in.readLine()) != null) {
+            chunk.add(line);
+            nextSequence++;
+            if (chunk.size() == CHUNK_LINES) {
+                tasks.add(pool.submit(parseLines(chunk, chunkStart)));
+                chunk = new ArrayList<>(CHUNK_LINES);
+                chunkStart = nextSequence;
+                // Bound the unparsed lines held in memory when reading outpaces parsing
+                while (tasks.size() > 2 * pool.getParallelism()) tasks.removeFirst().join();
+            }
+        }
+        if (!chunk.isEmpty()) tasks.add(pool.submit(parseLines(chunk, chunkStart)));
+        for (ForkJoinTask<?> task : tasks) task.join();
+    }
+
+    /**
+     * Writes the imported records as a snapshot. An existing snapshot at that path is read first, so
+     * the new one is numbered after it and is the one the server loads; the old one is kept as ".prev".
+     * Its records are only kept if it was merged in with addSnapshot, but the new clock is never lower
+     * than its clock either way.
+     *
+     * @throws IOException if the snapshot cannot be written.
+     */
+    public void writeSnapshot(Path file) throws IOException {
+        SnapshotStore store = new SnapshotStore(file.toString(), TimeSource.SYSTEM);
+        int clock = snapshotClock;
+        if (Files.exists(file)) clock = Math.max(clock, store.load().getClockTime());
+        for (Imported record : records.values()) clock = Math.max(clock, record.lamport);
+        store.writeLines(records.values().stream().map(record -> record.line).iterator(), clock);
+    }
+
+    /**
+     * Returns the number of distinct stations imported so far, including those of merged snapshots.
+     */
+    public int getStations() {
+        return records.size();
+    }
+
+    /**
+     * Returns the number of input records skipped as unreadable or invalid.
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * GETs every record from a live server, optionally filtered, and writes each as one NDJSON line.
+     *
+     * @return The number of records written.
+     * @throws IOException if the server cannot be reached or answers with an error.
+     */
+    public static long export(String host, int port, String filter, Writer out) throws IOException {
+        try (Socket socket = new Socket(host, port)) {
+            String query = filter == null ? "" : "?filter=" + URLEncoder.encode(filter, StandardCharsets.UTF_8);
+            Writer request = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            request.write("GET /weather.json" + query + " HTTP/1.1\r\nHost: " + host + "\r\n\r\n");
+            request.flush();
+
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            String status = ChunkedInputStream.readLine(in);
+            if (status == null) throw new EOFException("Connection closed without a response");
+            boolean chunked = false;
+            String line;
+            while ((line = ChunkedInputStream.readLine(in)) != null && !line.isEmpty()) {
+                if (line.equalsIgnoreCase("Transfer-Encoding: chunked")) chunked = true;
+            }
+            if (status.startsWith("HTTP/1.1 404")) return 0;
+            if (!status.startsWith("HTTP/1.1 200")) throw new IOException("Server responded " + status);
+
+            InputStream body = chunked ? new ChunkedInputStream(in) : in;
+            JsonArrayReader reader = new JsonArrayReader(new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8)));
+            long count = 0;
+            Map<String, String> record;
+            while ((record = reader.next()) != null) {
+                out.write(SimpleJsonParser.toJson(record));
+                out.write('\n');
+                count++;
+            }
+            return count;
+        }
+    }
+
+    // Task parsing one chunk of NDJSON lines numbered from first
+    private Runnable parseLines(List<String> lines, int first) {
+        return () -> {
+            for (int i = 0; i < lines.size(); i++) {
+                String line = lines.get(i).trim();
+                if (line.isEmpty()) continue;
+                try {
+                    WeatherRecord parsed = SnapshotStore.fromMetadata(SimpleJsonParser.parse(line), TimeSource.SYSTEM);
+                    add(parsed.getData(), parsed.lamport != 0 ? parsed.lamport : first + i,
+                            parsed.source.isEmpty() ? "import" : parsed.source, parsed.timestamp);
+                } catch (IllegalArgumentException e) {
+                    rejected.increment();
+                }
+            }
+        };
+    }
+
+    // Validates one record, encodes it and merges it by Lamport time
+    private void add(Map<String, String> data, int lamport, String source, long timestamp) {
+        schema.validate(data);
+        merge(new WeatherRecord(data, lamport, source, timestamp));
+    }
+
+    // Encodes one record and keeps it unless a newer one with its id is already held
+    private void merge(WeatherRecord record) {
+        Imported imported = new Imported(record.lamport, record.source, SnapshotStore.toLine(record));
+        records.merge(record.getData().get("id"), imported, (existing, incoming) -> incoming.isNewerThan(existing) ? incoming : existing);
+    }
+
+    // An imported record reduced to its snapshot line and the fields that order duplicates, so a
+    // million stations fit in far less memory than as parsed records
+    private static class Imported {
+        final int lamport;
+        final String source;
+        final String line;
+
+        Imported(int lamport, String source, String line) {
+            this.lamport = lamport;
+            this.source = source;
+            this.line = line;
+        }
+
+        // Same order as WeatherRecord.isNewerThan
+        boolean isNewerThan(Imported other) {
+            if (lamport != other.lamport) return lamport > other.lamport;
+            return source.compareTo(other.source) > 0;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package assignment2;
+
+/**
+ * Source of the current wall-clock time for record timestamps and expiry.
+ *
+ * The server reads time only through its TimeSource, so tests and simulations can substitute a
+ * ManualTimeSource and move time forward instantly instead of sleeping.
+ */
+@FunctionalInterface
+public interface TimeSource {
+    /**
+     * The system clock.
+     */
+    TimeSource SYSTEM = System::currentTimeMillis;
+
+    /**
+     * Returns the current time in milliseconds since epoch.
+     */
+    long currentTimeMillis();
+}
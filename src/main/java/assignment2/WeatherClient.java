@@ -0,0 +1,236 @@
+package assignment2;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Long-lived client for reading aggregated weather data, for programs that poll a server repeatedly.
+ *
+ * The last parsed records are cached by station id together with the server's ETag for them.
+ * Reads within the freshness TTL are answered from the cache without contacting the server; after that
+ * the cache is revalidated with If-None-Match, so an unchanged server answers 304 and nothing is
+ * downloaded or parsed again. Requests ask for "Connection: keep-alive" and idle connections are pooled,
+ * so polling does not open a new socket each time.
+ */
+public class WeatherClient implements Closeable {
+    // Idle connections kept for reuse when none is specified
+    private static final int DEFAULT_MAX_IDLE = 4;
+
+    private final String host;
+    private final int port;
+    private final long ttlMs;
+    private final int maxIdle;
+    private final LamportClock clock = new LamportClock();
+
+    // Idle keep-alive connections, most recently used last
+    private final Deque<Connection> idle = new ArrayDeque<>();
+
+    // Last parsed records by id, the ETag they were sent with (null if none) and when they were confirmed current
+    private Map<String, Map<String, String>> cached = null;
+    private String cachedETag = null;
+    private long validatedAt = 0;
+
+    // Counters describing how reads were answered
+    private long cacheHits = 0;
+    private long revalidations = 0;
+    private long fullFetches = 0;
+    private long connectionsOpened = 0;
+
+    /**
+     * Creates a client for the server at host:port with the default connection pool size.
+     *
+     * @param ttlMs How long fetched data is served from the cache before it is revalidated; 0 always revalidates.
+     */
+    public WeatherClient(String host, int port, long ttlMs) {
+        this(host, port, ttlMs, DEFAULT_MAX_IDLE);
+    }
+
+    /**
+     * Creates a client for the server at host:port.
+     *
+     * @param ttlMs How long fetched data is served from the cache before it is revalidated; 0 always revalidates.
+     * @param maxIdle Largest number of idle connections kept open for reuse.
+     */
+    public WeatherClient(String host, int port, long ttlMs, int maxIdle) {
+        this.host = host;
+        this.port = port;
+        this.ttlMs = ttlMs;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Returns every station's latest record, keyed by id.
+     *
+     * @return An unmodifiable map, empty if the server holds no data.
+     * @throws IOException if the server cannot be reached or answers with an error.
+     */
+    public synchronized Map<String, Map<String, String>> getAll() throws IOException {
+        if (cached != null && System.currentTimeMillis() - validatedAt < ttlMs) {
+            cacheHits++;
+            return cached;
+        }
+        fetch();
+        return cached;
+    }
+
+    /**
+     * Returns one station's latest record, or null if the server has none for that id.
+     *
+     * @throws IOException if the server cannot be reached or answers with an error.
+     */
+    public Map<String, String> get(String id) throws IOException {
+        return getAll().get(id);
+    }
+
+    /**
+     * Drops the cached records so the next read downloads everything.
+     */
+    public synchronized void invalidate() {
+        cached = null;
+        cachedETag = null;
+    }
+
+    /**
+     * Returns the number of reads answered from the cache without contacting the server.
+     */
+    public synchronized long getCacheHits() {
+        return cacheHits;
+    }
+
+    /**
+     * Returns the number of reads the server confirmed unchanged with 304 Not Modified.
+     */
+    public synchronized long getRevalidations() {
+        return revalidations;
+    }
+
+    /**
+     * Returns the number of reads that downloaded and parsed the full data set.
+     */
+    public synchronized long getFullFetches() {
+        return fullFetches;
+    }
+
+    /**
+     * Returns the number of sockets opened so far.
+     */
+    public synchronized long getConnectionsOpened() {
+        return connectionsOpened;
+    }
+
+    /**
+     * Closes every pooled connection.
+     */
+    @Override
+    public synchronized void close() {
+        for (Connection connection : idle) connection.close();
+        idle.clear();
+    }
+
+    // Sends a conditional GET, retrying once on a fresh connection if a pooled one turns out to be closed
+    private void fetch() throws IOException {
+        Connection connection = idle.pollLast();
+        if (connection != null) {
+            try {
+                exchange(connection);
+                return;
+            } catch (IOException e) {
+                connection.close(); // The server closed it while idle
+            }
+        }
+        exchange(open());
+    }
+
+    // Runs one request/response on the connection, returning it to the pool if it can be reused
+    private void exchange(Connection connection) throws IOException {
+        boolean reusable = false;
+        try {
+            clock.tick();
+            Writer out = connection.out;
+            out.write("GET /weather.json HTTP/1.1\r\n");
+            out.write("Host: " + host + "\r\n");
+            out.write("Lamport-Clock: " + clock.getTime() + "\r\n");
+            if (cached != null && cachedETag != null) out.write("If-None-Match: " + cachedETag + "\r\n");
+            out.write("Connection: keep-alive\r\n\r\n");
+            out.flush();
+
+            InputStream in = connection.in;
+            String status = ChunkedInputStream.readLine(in);
+            if (status == null) throw new EOFException("Connection closed without a response");
+
+            String etag = null;
+            long contentLength = -1;
+            boolean chunked = false;
+            boolean close = false;
+            String line;
+            while ((line = ChunkedInputStream.readLine(in)) != null && !line.isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon < 0) continue;
+                String name = line.substring(0, colon).trim();
+                String value = line.substring(colon + 1).trim();
+                if (name.equalsIgnoreCase("Lamport-Clock")) clock.update(Integer.parseInt(value));
+                else if (name.equalsIgnoreCase("ETag")) etag = value;
+                else if (name.equalsIgnoreCase("Content-Length")) contentLength = Long.parseLong(value);
+                else if (name.equalsIgnoreCase("Transfer-Encoding")) chunked = value.equalsIgnoreCase("chunked");
+                else if (name.equalsIgnoreCase("Connection")) close = value.equalsIgnoreCase("close");
+            }
+
+            // Read the body to its exact end so the connection is positioned at the next response
+            InputStream body = chunked ? new ChunkedInputStream(in)
+                    : new ByteArrayInputStream(in.readNBytes((int) Math.max(0, contentLength)));
+
+            if (status.startsWith("HTTP/1.1 304")) {
+                revalidations++;
+            } else if (status.startsWith("HTTP/1.1 200")) {
+                Map<String, Map<String, String>> records = new LinkedHashMap<>();
+                new JsonArrayReader(new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8)))
+                        .forEach(record -> records.put(record.get("id"), record));
+                cached = Collections.unmodifiableMap(records);
+                cachedETag = etag;
+                fullFetches++;
+            } else if (status.startsWith("HTTP/1.1 404")) {
+                cached = Collections.emptyMap();
+                cachedETag = etag;
+                fullFetches++;
+            } else {
+                throw new IOException("Server responded " + status);
+            }
+            while (body.read() != -1) {
+                // Drain anything after the array, such as the final chunk
+            }
+
+            validatedAt = System.currentTimeMillis();
+            reusable = !close && (chunked || contentLength >= 0);
+        } finally {
+            if (reusable && idle.size() < maxIdle) idle.addLast(connection);
+            else connection.close();
+        }
+    }
+
+    private Connection open() throws IOException {
+        connectionsOpened++;
+        return new Connection(new Socket(host, port));
+    }
+
+    // A socket with its buffered streams
+    private static class Connection {
+        final Socket socket;
+        final InputStream in;
+        final Writer out;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream());
+            this.out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -1,30 +1,76 @@
 package assignment2;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.Map;
 
 /**
  * Represents a weather data record with associated Lamport timestamp and last update time.
  */
 public class WeatherRecord {
+    // Rough heap cost of the objects behind a record, for capacity accounting: the record with its
+    // two maps and cached JSON array, each map entry with its key and value Strings, and each boxed number
+    private static final int RECORD_OVERHEAD = 160;
+    private static final int FIELD_OVERHEAD = 120;
+    private static final int NUMBER_OVERHEAD = 72;
+
     // Weather data as key-value pairs (strings)
     private final Map<String, String> data;
 
+    // Numeric fields parsed once on ingest by the WeatherSchema
+    private final Map<String, Number> numbers;
+
     // Last update timestamp in milliseconds since epoch
     public long timestamp;
 
     // Lamport timestamp for this record
     public int lamport;
 
+    // Identifies the writer of this record; breaks ties between equal Lamport times
+    public String source;
+
+    // The data encoded as a UTF-8 JSON object, built on first use. A PUT replaces the whole record,
+    // so the cached bytes never go stale and only changed stations are encoded again.
+    private volatile byte[] json;
+
+    // Approximate heap size of this record, computed once
+    private final int estimatedBytes;
+
+    /**
+     * Constructs a WeatherRecord with its update timestamp, which the server takes from its TimeSource
+     * and a restore takes from disk.
+     */
+    public WeatherRecord(Map<String, String> data, int lamport, String source, long timestamp) {
+        this(data, Collections.emptyMap(), lamport, source, timestamp);
+    }
+
     /**
-     * Constructs a WeatherRecord from data map and Lamport time.
-     * Sets update timestamp to current time.
+     * Constructs a WeatherRecord carrying the typed values of its numeric fields.
      */
-    public WeatherRecord(Map<String, String> data, int lamport) {
+    public WeatherRecord(Map<String, String> data, Map<String, Number> numbers, int lamport, String source, long timestamp) {
         this.data = data;
+        this.numbers = numbers;
         this.lamport = lamport;
-        this.timestamp = System.currentTimeMillis();
+        this.source = source;
+        this.timestamp = timestamp;
+        this.estimatedBytes = estimateBytes(data, numbers);
     }
 
+    /**
+     * Returns true if this record should replace the other: it has a higher Lamport time,
+     * or the same Lamport time and a source that sorts later.
+     */
+    public boolean isNewerThan(WeatherRecord other) {
+        if (lamport != other.lamport) return lamport > other.lamport;
+        return source.compareTo(other.source) > 0;
+    }
+
+    /**
+     * Returns true if the record has not been updated for longer than expiryMs as of now.
+     */
+    public boolean isExpired(long now, long expiryMs) {
+        return now - timestamp > expiryMs;
+    }
 
     /**
      * Returns the weather data map.
@@ -33,4 +79,47 @@ public class WeatherRecord {
         return data;
     }
 
+    /**
+     * Returns the parsed value of a numeric field, or null if the field is absent or not numeric.
+     */
+    public Number getNumber(String field) {
+        return numbers.get(field);
+    }
+
+    /**
+     * Returns the parsed values of all numeric fields.
+     */
+    public Map<String, Number> getNumbers() {
+        return numbers;
+    }
+
+    /**
+     * Returns the approximate heap size of this record in bytes, including its cached JSON.
+     */
+    public int estimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * Returns the data encoded as a UTF-8 JSON object. The bytes are encoded once and shared, so
+     * callers must not modify them.
+     */
+    public byte[] getJsonBytes() {
+        byte[] bytes = json;
+        if (bytes == null) {
+            // Two threads may both encode the first time; either result is the same
+            bytes = SimpleJsonParser.toJson(data).getBytes(StandardCharsets.UTF_8);
+            json = bytes;
+        }
+        return bytes;
+    }
+
+    // Counts each character twice: once in the field's String and once in the cached JSON
+    private static int estimateBytes(Map<String, String> data, Map<String, Number> numbers) {
+        int bytes = RECORD_OVERHEAD + numbers.size() * NUMBER_OVERHEAD;
+        for (Map.Entry<String, String> entry : data.entrySet()) {
+            bytes += FIELD_OVERHEAD + 2 * (entry.getKey().length() + entry.getValue().length());
+        }
+        return bytes;
+    }
 }
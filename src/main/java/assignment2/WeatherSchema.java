@@ -0,0 +1,268 @@
+package assignment2;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Field types and ranges for weather records, checked once when a record is ingested.
+ *
+ * Each known field is a string, a decimal number or an integer, optionally required, with a range for
+ * numbers and a maximum length for strings. Validating a record also parses its numeric fields, so the
+ * typed values can be stored with the record and used later without parsing the strings again.
+ * The default schema covers the fields of weather_data.txt; a schema file can replace it, one field per line:
+ * <pre>
+ * # field: type [required] [min=N] [max=N] [maxlen=N]
+ * id: string required maxlen=64
+ * air_temp: number min=-100 max=70
+ * unknown: reject
+ * </pre>
+ * Fields not in the schema are accepted as plain strings unless the file contains "unknown: reject".
+ * Names starting with "_" are reserved for metadata the server stores alongside a record (such as its
+ * Lamport time) and are always rejected, in records and in schema files.
+ */
+public class WeatherSchema {
+    // Prefix of field names reserved for record metadata
+    static final String RESERVED_PREFIX = "_";
+
+    /**
+     * Value type of a field.
+     */
+    public enum Type {
+        STRING,
+        // Decimal number such as -34.9 or 1.2e3
+        NUMBER,
+        // Whole number such as 60
+        INTEGER
+    }
+
+    /**
+     * Thrown when a record does not satisfy the schema; the message names the offending field.
+     */
+    public static class ValidationException extends IllegalArgumentException {
+        private static final long serialVersionUID = 1L;
+
+        public ValidationException(String message) {
+            super(message);
+        }
+    }
+
+    // Rules for one field
+    private static class Field {
+        final Type type;
+        final boolean required;
+        final double min;
+        final double max;
+        final int maxLength;
+
+        Field(Type type, boolean required, double min, double max, int maxLength) {
+            this.type = type;
+            this.required = required;
+            this.min = min;
+            this.max = max;
+            this.maxLength = maxLength;
+        }
+    }
+
+    private final Map<String, Field> fields = new LinkedHashMap<>();
+    private boolean allowUnknown = true;
+
+    /**
+     * Returns the schema for the fields of weather_data.txt.
+     */
+    public static WeatherSchema defaults() {
+        WeatherSchema schema = new WeatherSchema();
+        schema.string("id", true, 64);
+        schema.string("name", false, 256);
+        schema.string("state", false, 16);
+        schema.string("time_zone", false, 16);
+        schema.number("lat", Type.NUMBER, -90, 90);
+        schema.number("lon", Type.NUMBER, -180, 180);
+        schema.string("local_date_time", false, 32);
+        schema.number("local_date_time_full", Type.INTEGER, 0, 99999999999999L);
+        schema.number("air_temp", Type.NUMBER, -100, 70);
+        schema.number("apparent_t", Type.NUMBER, -100, 70);
+        schema.string("cloud", false, 64);
+        schema.number("dewpt", Type.NUMBER, -100, 70);
+        schema.number("press", Type.NUMBER, 800, 1200);
+        schema.number("rel_hum", Type.INTEGER, 0, 100);
+        schema.string("wind_dir", false, 8);
+        schema.number("wind_spd_kmh", Type.NUMBER, 0, 500);
+        schema.number("wind_spd_kt", Type.NUMBER, 0, 300);
+        return schema;
+    }
+
+    /**
+     * Reads a schema file in the format described above. An "id" field is always required, even if
+     * the file does not mention it.
+     *
+     * @throws IOException if the file cannot be read.
+     * @throws IllegalArgumentException if a line is malformed.
+     */
+    public static WeatherSchema load(Path file) throws IOException {
+        WeatherSchema schema = new WeatherSchema();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            int colon = line.indexOf(':');
+            if (colon <= 0) throw new IllegalArgumentException("Line " + lineNumber + ": expected 'field: type'");
+            String name = line.substring(0, colon).trim();
+            if (name.startsWith(RESERVED_PREFIX)) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": field names starting with '" + RESERVED_PREFIX + "' are reserved");
+            }
+            String[] words = line.substring(colon + 1).trim().split("\\s+");
+
+            if (name.equals("unknown")) {
+                schema.allowUnknown = !words[0].equalsIgnoreCase("reject");
+                continue;
+            }
+
+            Type type;
+            try {
+                type = Type.valueOf(words[0].toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": unknown type '" + words[0] + "'");
+            }
+            boolean required = false;
+            double min = Double.NEGATIVE_INFINITY;
+            double max = Double.POSITIVE_INFINITY;
+            int maxLength = Integer.MAX_VALUE;
+            for (int i = 1; i < words.length; i++) {
+                String word = words[i];
+                try {
+                    if (word.equals("required")) required = true;
+                    else if (word.startsWith("min=")) min = Double.parseDouble(word.substring(4));
+                    else if (word.startsWith("max=")) max = Double.parseDouble(word.substring(4));
+                    else if (word.startsWith("maxlen=")) maxLength = Integer.parseInt(word.substring(7));
+                    else throw new IllegalArgumentException("Line " + lineNumber + ": unknown option '" + word + "'");
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Line " + lineNumber + ": bad number in '" + word + "'");
+                }
+            }
+            schema.fields.put(name, new Field(type, required, min, max, maxLength));
+        }
+
+        Field id = schema.fields.get("id");
+        if (id == null || id.type != Type.STRING || !id.required) {
+            schema.fields.put("id", new Field(Type.STRING, true, 0, 0, id != null ? id.maxLength : Integer.MAX_VALUE));
+        }
+        return schema;
+    }
+
+    /**
+     * Checks a record against the schema and parses its numeric fields.
+     *
+     * @return The parsed value of every NUMBER (as Double) and INTEGER (as Long) field present.
+     * @throws ValidationException naming the first field that is missing, malformed or out of range.
+     */
+    public Map<String, Number> validate(Map<String, String> record) throws ValidationException {
+        Map<String, Number> numbers = new HashMap<>();
+        for (Map.Entry<String, Field> entry : fields.entrySet()) {
+            String name = entry.getKey();
+            Field field = entry.getValue();
+            String value = record.get(name);
+            if (value == null || (field.required && value.isEmpty())) {
+                if (field.required) throw new ValidationException("Missing required field '" + name + "'");
+                continue;
+            }
+
+            if (field.type == Type.STRING) {
+                if (value.length() > field.maxLength) {
+                    throw new ValidationException("Field '" + name + "' is longer than " + field.maxLength + " characters");
+                }
+                continue;
+            }
+
+            // Assigned separately: a conditional expression would unbox both to double
+            Number number;
+            try {
+                if (field.type == Type.INTEGER) number = parseInteger(value);
+                else number = parseDecimal(value);
+            } catch (NumberFormatException e) {
+                number = null; // Reported below as malformed, like any other value the checks let through
+            }
+            if (number == null) {
+                throw new ValidationException("Field '" + name + "' must be " + (field.type == Type.INTEGER ? "an integer" : "a number"));
+            }
+            double d = number.doubleValue();
+            if (d < field.min || d > field.max) {
+                throw new ValidationException("Field '" + name + "' is outside [" + format(field.min) + ", " + format(field.max) + "]");
+            }
+            numbers.put(name, number);
+        }
+
+        for (String name : record.keySet()) {
+            if (name.startsWith(RESERVED_PREFIX)) throw new ValidationException("Field '" + name + "' is reserved");
+            if (!allowUnknown && !fields.containsKey(name)) throw new ValidationException("Unknown field '" + name + "'");
+        }
+        return numbers;
+    }
+
+    /**
+     * Returns the type of a field, or null if the schema does not define it.
+     */
+    public Type typeOf(String name) {
+        Field field = fields.get(name);
+        return field == null ? null : field.type;
+    }
+
+    private void string(String name, boolean required, int maxLength) {
+        fields.put(name, new Field(Type.STRING, required, 0, 0, maxLength));
+    }
+
+    private void number(String name, Type type, double min, double max) {
+        fields.put(name, new Field(type, false, min, max, 0));
+    }
+
+    // Accepts an optional sign and digits only, unlike Long.parseLong which also takes '+'
+    private static Long parseInteger(String s) {
+        int start = s.startsWith("-") ? 1 : 0;
+        if (start == s.length() || s.length() - start > 18) return null;
+        for (int i = start; i < s.length(); i++) {
+            if (!isDigit(s.charAt(i))) return null;
+        }
+        return Long.parseLong(s);
+    }
+
+    // Accepts plain JSON numbers only, unlike Double.parseDouble which also takes "NaN", "0x1p3" or "1d"
+    private static Double parseDecimal(String s) {
+        int i = s.startsWith("-") ? 1 : 0;
+        int digits = 0;
+        while (i < s.length() && isDigit(s.charAt(i))) {
+            i++;
+            digits++;
+        }
+        if (i < s.length() && s.charAt(i) == '.') {
+            i++;
+            while (i < s.length() && isDigit(s.charAt(i))) {
+                i++;
+                digits++;
+            }
+        }
+        if (digits == 0) return null;
+        if (i < s.length() && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+            i++;
+            if (i < s.length() && (s.charAt(i) == '+' || s.charAt(i) == '-')) i++;
+            int exponentDigits = 0;
+            while (i < s.length() && isDigit(s.charAt(i))) {
+                i++;
+                exponentDigits++;
+            }
+            if (exponentDigits == 0) return null;
+        }
+        return i == s.length() ? Double.parseDouble(s) : null;
+    }
+
+    // ASCII digits only; Character.isDigit also accepts digits of other scripts, which the parsers refuse
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static String format(double bound) {
+        return bound == (long) bound ? Long.toString((long) bound) : Double.toString(bound);
+    }
+}
@@ -0,0 +1,44 @@
+package assignment2;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for Acceptor.
+ * Verifies that failed accepts are counted and retried after a backoff instead of in a tight loop.
+ */
+public class AcceptorTest {
+
+    /**
+     * Tests that an accept failing every time, as it does when file descriptors run out, is retried
+     * only a handful of times per second, and that the loop still ends once the socket is closed.
+     */
+    @Test
+    public void testFailedAcceptBacksOff() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        ServerSocket failing = new ServerSocket() {
+            @Override
+            public Socket accept() throws IOException {
+                attempts.incrementAndGet();
+                throw new IOException("Too many open files");
+            }
+        };
+        Acceptor acceptor = new Acceptor(failing, socket -> fail("Nothing should be accepted"));
+        Thread thread = new Thread(acceptor);
+        thread.start();
+        Thread.sleep(1000);
+        failing.close();
+        thread.join(2000);
+
+        assertFalse(thread.isAlive());
+        assertTrue(attempts.get() >= 2);
+        assertTrue("Retried " + attempts.get() + " times in a second", attempts.get() < 100);
+        assertEquals(attempts.get() - 1, acceptor.getErrors(), 1);
+    }
+}
@@ -1,51 +1,58 @@
 package assignment2;
 
+import static assignment2.TestRecords.record;
 import static org.junit.Assert.*;
 import org.junit.*;
 
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.*;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * JUnit test class for AggregationServer.
  * Tests PUT and GET HTTP-like requests, data expiry, and persistence functionality.
- * Starts a real server socket on localhost and port 4567 for integration tests.
+ * Starts a real server instance on localhost and an ephemeral port for integration tests.
  */
 public class AggregationServerTest {
 
     private static final String TEST_FILE = "test_server_data.json";  // Test persistent store file
     private static final String LOCALHOST = "localhost";
-    private static final int TEST_PORT = 4567;
+    private static final String CLUSTER_SECRET = "test-secret";  // Marks the tests' replicated PUTs as from a peer
+    private static final String TEST_SOURCE = "test-client";  // Source-Id of the tests' client PUTs
 
-    private static ServerSocket serverSocket;
-    private static ExecutorService serverExecutor;
+    private static AggregationServer server;
+    private static int port;
+    // Time as the shared server sees it; tests move it forward to expire records
+    private static final ManualTimeSource time = new ManualTimeSource(System.currentTimeMillis());
 
     /**
      * Set up method executed once before all tests.
-     * Deletes any test data file, clears in-memory data, and starts the AggregationServer asynchronously.
+     * Deletes any test data file and starts an AggregationServer on an ephemeral port, reading time
+     * from a manual source so expiry is tested without waiting.
+     * Checkpoints are left to the tests so they never race with a test reloading the file.
      */
     @BeforeClass
     public static void startServer() throws Exception {
         // Remove old test data file for clean testing
         Files.deleteIfExists(Paths.get(TEST_FILE));
-        AggregationServer.data.clear();
-        startServerAsync();
-        Thread.sleep(500); // Wait for server to start
+        server = new AggregationServer(new ServerConfig().setPort(0).setDataFile(TEST_FILE).setCheckpointMs(600000).setTimeSource(time)
+                .setClusterSecret(CLUSTER_SECRET));
+        server.start();
+        port = server.getPort();
     }
 
     /**
      * Tear down method executed once after all tests.
-     * Closes server socket, shuts down executor, and deletes test data file.
+     * Stops the server and deletes test data file.
      */
     @AfterClass
     public static void stopServer() throws Exception {
-        if (serverSocket != null) serverSocket.close();
-        if (serverExecutor != null) serverExecutor.shutdownNow();
+        if (server != null) server.stop();
         Files.deleteIfExists(Paths.get(TEST_FILE));
     }
 
@@ -72,8 +79,8 @@ public class AggregationServerTest {
     @Test
     public void testGetReturnsDataOr404() throws Exception {
         Files.deleteIfExists(Paths.get(TEST_FILE));
-        AggregationServer.data.clear();
-        AggregationServer.saveToDisk();
+        server.data.clear();
+        server.saveToDisk();
 
         HttpResponse response = sendGet(0);
         assertEquals("404 Not Found", response.status);
@@ -84,6 +91,7 @@ public class AggregationServerTest {
         response = sendGet(1);
         assertEquals("200 OK", response.status);
         assertTrue(response.body.contains("ID1"));
+        assertEquals("chunked", response.headers.get("Transfer-Encoding"));
     }
 
     /**
@@ -94,60 +102,544 @@ public class AggregationServerTest {
         String json = "{\"id\":\"ID1\",\"temp\":25}";
         sendPut(json, 0);
 
-        // Access internal data map using reflection for test manipulation
-        var dataField = AggregationServer.class.getDeclaredField("data");
-        dataField.setAccessible(true);
-        @SuppressWarnings("unchecked")
-        Map<String, WeatherRecord> dataMap = (Map<String, WeatherRecord>) dataField.get(null);
-
-        // Simulate old timestamp to trigger expiry
-        WeatherRecord record = dataMap.get("ID1");
-        record.timestamp = System.currentTimeMillis() - 31000; // 31 seconds ago
-
-        AggregationServer.removeExpired();
+        // Let 31 seconds pass without an update
+        time.advance(31000);
+        server.removeExpired();
 
         HttpResponse response = sendGet(1);
         assertEquals("404 Not Found", response.status);
     }
 
     /**
-     * Tests persistence by saving data, clearing memory, reloading from disk,
+     * Tests persistence by checkpointing data, clearing memory, reloading from disk,
      * and verifying the previously saved record is restored.
      */
     @Test
     public void testPersistence() throws Exception {
         String json = "{\"id\":\"ID1\",\"temp\":25}";
         sendPut(json, 0);
+        server.checkpoint();
 
-        var dataField = AggregationServer.class.getDeclaredField("data");
-        dataField.setAccessible(true);
-        @SuppressWarnings("unchecked")
-        Map<String, WeatherRecord> dataMap = (Map<String, WeatherRecord>) dataField.get(null);
-        dataMap.clear();
+        server.data.clear();
 
-        AggregationServer.loadFromDisk();
+        server.loadFromDisk();
 
-        assertTrue(dataMap.containsKey("ID1"));
+        assertTrue(server.data.containsKey("ID1"));
     }
 
     /**
-     * Starts AggregationServer asynchronously in a separate thread using a ServerSocket
-     * and handles connections via AggregationServer.handleConnection method.
-     *
-     * @throws IOException if server socket fails to bind
-     */
-    private static void startServerAsync() throws IOException {
-        serverSocket = new ServerSocket(TEST_PORT);
-        serverExecutor = Executors.newSingleThreadExecutor();
-        serverExecutor.submit(() -> {
-            try {
-                while (!serverSocket.isClosed()) {
-                    Socket socket = serverSocket.accept();
-                    AggregationServer.handleConnection(socket);
+     * Tests that PUTs arriving out of order are resolved by the Lamport time they were sent at:
+     * one sent earlier but arriving later is rejected with 409 Conflict and leaves the newer record
+     * in place, even though the server's clock has moved past both.
+     */
+    @Test
+    public void testStalePutReturns409() throws Exception {
+        int base = Integer.parseInt(sendPut("{\"id\":\"RACE\",\"temp\":\"first\"}", 0).headers.get("Lamport-Clock"));
+
+        assertEquals("200 OK", sendPut("{\"id\":\"RACE\",\"temp\":\"newer\"}", base + 20).status);
+        HttpResponse response = sendPut("{\"id\":\"RACE\",\"temp\":\"older\"}", base + 10);
+        assertEquals("409 Conflict", response.status);
+        assertTrue(Integer.parseInt(response.headers.get("Lamport-Clock")) > base + 20);
+        assertEquals("newer", server.data.get("RACE").getData().get("temp"));
+        assertEquals(base + 20, server.data.remove("RACE").lamport);
+    }
+
+    /**
+     * Tests that a Lamport-Clock too close to the int limit is refused with 400 and does not pin the
+     * station, while the largest accepted time still leaves a positive clock in the response.
+     */
+    @Test
+    public void testHugeLamportClockIsRefused() throws Exception {
+        AggregationServer fresh = new AggregationServer(new ServerConfig().setPort(0)
+                .setPersistence(ServerConfig.Persistence.NONE));
+        fresh.start();
+        try {
+            assertEquals("400 Bad Request", sendPut(fresh.getPort(), "{\"id\":\"PINNED\"}", Integer.MAX_VALUE).status);
+            assertFalse(fresh.data.containsKey("PINNED"));
+            assertEquals("201 Created", sendPut(fresh.getPort(), "{\"id\":\"PINNED\"}", 5).status);
+
+            HttpResponse response = sendPut(fresh.getPort(), "{\"id\":\"PINNED\"}", LamportClock.MAX_RECEIVED);
+            assertEquals("200 OK", response.status);
+            assertEquals(LamportClock.MAX_RECEIVED + 1, Integer.parseInt(response.headers.get("Lamport-Clock")));
+        } finally {
+            fresh.stop();
+        }
+    }
+
+    /**
+     * Tests that a ContentServer drops its update when another source holds a newer record, and
+     * resends it once when the newer record is its own from an earlier run whose clock was lost.
+     */
+    @Test
+    public void testContentServerConflicts() throws Exception {
+        File dataFile = File.createTempFile("conflict_data", ".txt");
+        dataFile.deleteOnExit();
+        Files.writeString(dataFile.toPath(), "id:CONFLICT\nair_temp:10\n");
+        String[] args = { "localhost:" + port, dataFile.getAbsolutePath(), "--source-id", "station-feed" };
+
+        // Far ahead of any clock the ContentServer can have reached
+        int ahead = Integer.parseInt(sendPut("{\"id\":\"CONFLICT\",\"air_temp\":\"20\"}", 0).headers.get("Lamport-Clock")) + 100000;
+        assertEquals("200 OK", sendPut("{\"id\":\"CONFLICT\",\"air_temp\":\"30\"}", ahead).status);
+        ContentServer.main(args);
+        assertEquals("30", server.data.get("CONFLICT").getData().get("air_temp"));
+
+        WeatherRecord own = server.data.get("CONFLICT");
+        own.source = "station-feed";
+        ContentServer.main(args);
+        assertEquals("10", server.data.get("CONFLICT").getData().get("air_temp"));
+        assertEquals("station-feed", server.data.remove("CONFLICT").source);
+    }
+
+    /**
+     * Tests that removing a record handed off to another shard updates the capacity accounting
+     * and the data version, and leaves a record that replaced it in the meantime alone.
+     */
+    @Test
+    public void testHandedOffRecordIsRemoved() throws Exception {
+        assertEquals("201 Created", sendPut("{\"id\":\"MOVED\",\"temp\":25}", 0).status);
+        WeatherRecord handedOff = server.data.get("MOVED");
+        assertEquals("200 OK", sendPut("{\"id\":\"MOVED\",\"temp\":26}", 0).status);
+        server.removeHandedOff("MOVED", handedOff);
+        assertTrue(server.data.containsKey("MOVED"));
+
+        handedOff = server.data.get("MOVED");
+        long bytes = server.capacity.getBytes();
+        String etag = sendGet(0).headers.get("ETag");
+        server.removeHandedOff("MOVED", handedOff);
+        assertFalse(server.data.containsKey("MOVED"));
+        assertEquals(bytes - handedOff.estimatedBytes(), server.capacity.getBytes());
+        assertNotEquals(etag, sendGet(0).headers.get("ETag"));
+    }
+
+    /**
+     * Tests that a payload failing the schema is refused with 400, and that a valid one is stored
+     * with its numeric fields already parsed.
+     */
+    @Test
+    public void testSchemaValidation() throws Exception {
+        HttpResponse response = sendPut("{\"id\":\"TYPED\",\"air_temp\":\"hot\"}", 0);
+        assertEquals("400 Bad Request", response.status);
+        assertTrue(response.body.contains("air_temp"));
+        assertEquals("400 Bad Request", sendPut("{\"temp\":25}", 0).status);
+        assertEquals("400 Bad Request", sendPut("not json", 0).status);
+        assertFalse(server.data.containsKey("TYPED"));
+
+        assertEquals("201 Created", sendPut("{\"id\":\"TYPED\",\"air_temp\":\"13.3\",\"rel_hum\":60}", 0).status);
+        WeatherRecord record = server.data.remove("TYPED");
+        assertEquals(13.3, record.getNumber("air_temp").doubleValue(), 0.0);
+        assertEquals(60L, record.getNumber("rel_hum"));
+    }
+
+    /**
+     * Tests that a filtered GET returns only matching records, reuses the compiled filter,
+     * and rejects a malformed expression with 400.
+     */
+    @Test
+    public void testFilteredGet() throws Exception {
+        assertEquals("201 Created", sendPut("{\"id\":\"HOT_SA\",\"state\":\"FT\",\"air_temp\":\"35.5\"}", 0).status);
+        assertEquals("201 Created", sendPut("{\"id\":\"MILD_SA\",\"state\":\"FT\",\"air_temp\":\"21\"}", 0).status);
+        assertEquals("201 Created", sendPut("{\"id\":\"HOT_NT\",\"state\":\"FU\",\"air_temp\":\"38\"}", 0).status);
+        try {
+            long compiled = server.metrics.get("get.filter.compiled");
+            String path = "/weather.json?filter=" + URLEncoder.encode("air_temp>30 AND state=FT", StandardCharsets.UTF_8);
+            for (int i = 0; i < 2; i++) {
+                HttpResponse response = sendGetPath(path);
+                assertEquals("200 OK", response.status);
+                assertTrue(response.body.contains("HOT_SA"));
+                assertFalse(response.body.contains("MILD_SA"));
+                assertFalse(response.body.contains("HOT_NT"));
+            }
+            assertEquals(compiled + 1, server.metrics.get("get.filter.compiled"));
+
+            HttpResponse response = sendGetPath("/weather.json?filter=" + URLEncoder.encode("air_temp>hot", StandardCharsets.UTF_8));
+            assertEquals("400 Bad Request", response.status);
+            assertTrue(response.body.contains("air_temp"));
+        } finally {
+            server.data.remove("HOT_SA");
+            server.data.remove("MILD_SA");
+            server.data.remove("HOT_NT");
+        }
+    }
+
+    /**
+     * Tests that a full server evicts the oldest station for a new one, or refuses it with 507
+     * when eviction is off, and counts both in the metrics.
+     */
+    @Test
+    public void testStationCapacity() throws Exception {
+        AggregationServer evicting = new AggregationServer(new ServerConfig().setPort(0)
+                .setPersistence(ServerConfig.Persistence.NONE).setMaxStations(2));
+        AggregationServer refusing = new AggregationServer(new ServerConfig().setPort(0)
+                .setPersistence(ServerConfig.Persistence.NONE).setMaxStations(2).setEviction(ServerConfig.Eviction.NONE));
+        evicting.start();
+        refusing.start();
+        try {
+            for (String id : new String[] { "CAP1", "CAP2", "CAP3" }) {
+                sendPut(evicting.getPort(), "{\"id\":\"" + id + "\"}", 0);
+                sendPut(refusing.getPort(), "{\"id\":\"" + id + "\"}", 0);
+            }
+            assertEquals(new HashSet<>(Arrays.asList("CAP2", "CAP3")), evicting.data.keySet());
+            assertEquals(1, evicting.metrics.get("capacity.evicted"));
+
+            assertEquals(new HashSet<>(Arrays.asList("CAP1", "CAP2")), refusing.data.keySet());
+            assertEquals("507 Insufficient Storage", sendPut(refusing.getPort(), "{\"id\":\"CAP4\"}", 0).status);
+            assertEquals("200 OK", sendPut(refusing.getPort(), "{\"id\":\"CAP1\"}", 0).status);
+            assertEquals(2, refusing.metrics.get("capacity.rejected"));
+        } finally {
+            evicting.stop();
+            refusing.stop();
+        }
+    }
+
+    /**
+     * Tests that concurrent PUTs of new stations never take a refusing server past its limit, and
+     * that a replicated write is stored over the limit rather than refused.
+     */
+    @Test
+    public void testConcurrentNewStationsStayWithinLimit() throws Exception {
+        AggregationServer limited = new AggregationServer(new ServerConfig()
+                .setPersistence(ServerConfig.Persistence.NONE).setMaxStations(50).setEviction(ServerConfig.Eviction.NONE));
+        int threads = 8;
+        int perThread = 100;
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int first = t * perThread;
+            Thread writer = new Thread(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
                 }
-            } catch (IOException ignored) {
+                for (int i = first; i < first + perThread; i++) limited.store(record("NEW" + i, i + 1));
+            });
+            writer.start();
+            writers.add(writer);
+        }
+        go.countDown();
+        for (Thread writer : writers) writer.join();
+
+        assertEquals(50, limited.data.size());
+        assertEquals(threads * perThread - 50, limited.metrics.get("capacity.rejected"));
+
+        assertEquals(AggregationServer.StoreResult.CREATED, limited.store(record("REPLICA", 1), true));
+        assertEquals(51, limited.data.size());
+        assertEquals(1, limited.metrics.get("capacity.exceeded"));
+    }
+
+    /**
+     * Tests that several acceptors share one port and each reports its accepted connections.
+     */
+    @Test
+    public void testMultipleAcceptors() throws Exception {
+        AggregationServer multi = new AggregationServer(new ServerConfig().setPort(0)
+                .setPersistence(ServerConfig.Persistence.NONE).setAcceptors(4).setBacklog(256));
+        multi.start();
+        try {
+            for (int i = 0; i < 40; i++) {
+                try (Socket socket = new Socket(LOCALHOST, multi.getPort())) {
+                    BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+                    out.write("GET /ready HTTP/1.1\r\n\r\n");
+                    out.flush();
+                    assertEquals("200 OK", readResponse(new BufferedReader(new InputStreamReader(socket.getInputStream()))).status);
+                }
+            }
+            long accepted = 0;
+            for (int i = 0; i < 4; i++) accepted += multi.metrics.get("accept." + i + ".connections");
+            assertEquals(40, accepted);
+            assertTrue(multi.metrics.render().contains("accept.3.last_second"));
+        } finally {
+            multi.stop();
+        }
+    }
+
+    /**
+     * Tests that GET /changes streams applied PUTs and expiries from an offset, with the offset to
+     * resume from in Next-Offset, and that servers without a change log answer 404.
+     */
+    @Test
+    public void testChangeFeed() throws Exception {
+        ManualTimeSource feedTime = new ManualTimeSource(0);
+        AggregationServer logged = new AggregationServer(new ServerConfig().setPort(0).setTimeSource(feedTime)
+                .setPersistence(ServerConfig.Persistence.NONE).setChangeLogDir(Files.createTempDirectory("changes")));
+        logged.start();
+        try {
+            assertEquals("201 Created", sendPut(logged.getPort(), "{\"id\":\"FEED1\",\"temp\":25}", 0).status);
+            assertEquals("201 Created", sendPut(logged.getPort(), "{\"id\":\"FEED2\",\"temp\":26}", 0).status);
+            feedTime.advance(20000);
+            assertEquals("200 OK", sendPut(logged.getPort(), "{\"id\":\"FEED2\",\"temp\":27}", 0).status);
+            feedTime.advance(11000);
+            logged.removeExpired();
+
+            HttpResponse all = sendGetPath(logged.getPort(), "/changes?offset=0");
+            assertEquals("200 OK", all.status);
+            assertEquals("application/x-ndjson", all.headers.get("Content-Type"));
+            assertTrue(all.body.contains("\"_change\":\"put\""));
+            assertTrue(all.body.contains("{\"_change\":\"expire\",\"_lamport\":\"4\",\"_timestamp\":\"31000\",\"id\":\"FEED1\"}"));
+            assertTrue(logged.data.containsKey("FEED2"));
+            long end = Long.parseLong(all.headers.get("Next-Offset"));
+            assertEquals(Long.parseLong(all.headers.get("Content-Length")), end);
+
+            HttpResponse first = sendGetPath(logged.getPort(), "/changes?offset=0&max=1");
+            assertTrue(first.body.contains("FEED1") && !first.body.contains("FEED2"));
+            HttpResponse rest = sendGetPath(logged.getPort(), "/changes?offset=" + first.headers.get("Next-Offset"));
+            assertEquals(end, Long.parseLong(rest.headers.get("Next-Offset")));
+            assertEquals("0", sendGetPath(logged.getPort(), "/changes?offset=" + end).headers.get("Content-Length"));
+            assertEquals("400 Bad Request", sendGetPath(logged.getPort(), "/changes?offset=1").status);
+            assertEquals("400 Bad Request", sendGetPath(logged.getPort(), "/changes?offset=-1").status);
+        } finally {
+            logged.stop();
+        }
+        assertEquals("404 Not Found", sendGetPath("/changes").status);
+    }
+
+    /**
+     * Tests that a replicated PUT is stored with the primary's Lamport time and source
+     * rather than a time from this server's clock.
+     */
+    @Test
+    public void testReplicatedPutKeepsPrimaryLamport() throws Exception {
+        assertEquals("201 Created", sendReplicatedPut("{\"id\":\"REPL\",\"temp\":25}", 100000, CLUSTER_SECRET).status);
+
+        WeatherRecord record = server.data.remove("REPL");
+        assertEquals(100000, record.lamport);
+        assertEquals("primary", record.source);
+    }
+
+    /**
+     * Tests that "Replicated" and "Shard-Forwarded" headers without the cluster secret, from an
+     * address that is not a configured peer, do not skip the rate limit.
+     */
+    @Test
+    public void testSpoofedPeerHeadersAreRateLimited() throws Exception {
+        RateLimiter original = server.addressLimiter;
+        server.addressLimiter = new RateLimiter(0.01, 1);
+        try {
+            long unverified = server.metrics.get("put.peer_unverified");
+            String json = "{\"id\":\"SPOOF\",\"temp\":25}";
+            assertEquals("201 Created", sendReplicatedPut(json, 100000, "wrong").status);
+
+            assertEquals("429 Too Many Requests", sendReplicatedPut(json, 100001, null).status);
+            assertEquals(unverified + 2, server.metrics.get("put.peer_unverified"));
+        } finally {
+            server.addressLimiter = original;
+            server.data.remove("SPOOF");
+        }
+    }
+
+    /**
+     * Tests that PUTs for a station beyond its token bucket are refused with 429
+     * and counted in the metrics.
+     */
+    @Test
+    public void testStationRateLimitReturns429() throws Exception {
+        RateLimiter original = server.stationLimiter;
+        server.stationLimiter = new RateLimiter(0.01, 1);
+        try {
+            long rejected = server.metrics.get("ratelimit.rejected.station");
+            String json = "{\"id\":\"NOISY\",\"temp\":25}";
+            assertEquals("201 Created", sendPut(json, 0).status);
+
+            HttpResponse response = sendPut(json, 0);
+            assertEquals("429 Too Many Requests", response.status);
+            assertEquals("1", response.headers.get("Retry-After"));
+            assertEquals(rejected + 1, server.metrics.get("ratelimit.rejected.station"));
+        } finally {
+            server.stationLimiter = original;
+            server.data.remove("NOISY");
+        }
+    }
+
+    /**
+     * Tests that a client which connects but never finishes its headers gets 408
+     * once the header deadline passes, and that the timeout is counted.
+     */
+    @Test
+    public void testStalledHeadersReturn408() throws Exception {
+        long original = server.headerTimeoutMs;
+        server.headerTimeoutMs = 300;
+        try (Socket socket = new Socket(LOCALHOST, port)) {
+            long timeouts = server.metrics.get("timeouts.header");
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+
+            // Send part of a request and then stall
+            out.write("PUT /weather.json HTTP/1.1\r\nContent-Le");
+            out.flush();
+
+            assertEquals("408 Request Timeout", readResponse(in).status);
+            assertEquals(timeouts + 1, server.metrics.get("timeouts.header"));
+        } finally {
+            server.headerTimeoutMs = original;
+        }
+    }
+
+    /**
+     * Tests that a PUT declaring a body larger than the limit is refused with 413 without being read.
+     */
+    @Test
+    public void testOversizedBodyReturns413() throws Exception {
+        try (Socket socket = new Socket(LOCALHOST, port)) {
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+
+            out.write("PUT /weather.json HTTP/1.1\r\n");
+            out.write("Content-Length: 2000000000\r\n\r\n");
+            out.flush();
+
+            assertEquals("413 Payload Too Large", readResponse(in).status);
+        }
+    }
+
+    /**
+     * Tests that Content-Length is counted in bytes, so a multi-byte UTF-8 body is stored intact.
+     */
+    @Test
+    public void testMultiByteBodyRoundTrip() throws Exception {
+        String json = "{\"id\":\"UTF8\",\"name\":\"Zürich 東京\"}";
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        try (Socket socket = new Socket(LOCALHOST, port)) {
+            OutputStream out = socket.getOutputStream();
+            out.write(("PUT /weather.json HTTP/1.1\r\nContent-Length: " + body.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.write(body);
+            out.flush();
+
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            assertTrue(readResponse(in).status.startsWith("20"));
+        }
+        assertEquals("Zürich 東京", server.data.get("UTF8").getData().get("name"));
+    }
+
+    /**
+     * Tests that GET /ready turns unhealthy once shutdown starts, and that an idle server drains at once.
+     */
+    @Test
+    public void testReadinessAndDrain() throws Exception {
+        assertEquals("200 OK", sendGetPath("/ready").status);
+        server.ready = false;
+        try {
+            HttpResponse response = sendGetPath("/ready");
+            assertEquals("503 Service Unavailable", response.status);
+            assertEquals("draining", response.body);
+        } finally {
+            server.ready = true;
+        }
+        assertTrue(server.awaitIdle(1000));
+    }
+
+    /**
+     * Tests that stop() closes an idle keep-alive connection at once instead of waiting for it, and
+     * lets a PUT whose body is still arriving finish, with the update in the final snapshot.
+     */
+    @Test
+    public void testStopDrainsSlowPutAndClosesIdleConnections() throws Exception {
+        Path file = Files.createTempDirectory("drain").resolve("data.json");
+        AggregationServer draining = new AggregationServer(new ServerConfig().setPort(0).setDataFile(file.toString())
+                .setCheckpointMs(600000).setDrainMs(10000));
+        draining.start();
+        String json = "{\"id\":\"SLOW\",\"temp\":25}";
+        Thread stopper = new Thread(draining::stop);
+        try (Socket idle = new Socket(LOCALHOST, draining.getPort());
+             Socket slow = new Socket(LOCALHOST, draining.getPort())) {
+            BufferedWriter idleOut = new BufferedWriter(new OutputStreamWriter(idle.getOutputStream()));
+            BufferedReader idleIn = new BufferedReader(new InputStreamReader(idle.getInputStream()));
+            idleOut.write("GET /ready HTTP/1.1\r\nConnection: keep-alive\r\n\r\n");
+            idleOut.flush();
+            assertEquals("HTTP/1.1 200 OK", idleIn.readLine());
+            while (!idleIn.readLine().isEmpty()) {
+                // Skip headers
             }
-        });
+            assertEquals("ready", idleIn.readLine());
+
+            BufferedWriter slowOut = new BufferedWriter(new OutputStreamWriter(slow.getOutputStream()));
+            slowOut.write("PUT /weather.json HTTP/1.1\r\nContent-Length: " + json.length() + "\r\n\r\n");
+            slowOut.write(json, 0, 10);
+            slowOut.flush();
+            Thread.sleep(200);
+
+            long start = System.currentTimeMillis();
+            stopper.start();
+            idle.setSoTimeout(2000);
+            assertEquals(-1, idle.getInputStream().read());
+            assertTrue(System.currentTimeMillis() - start < 2000);
+
+            slowOut.write(json, 10, json.length() - 10);
+            slowOut.flush();
+            assertEquals("201 Created", readResponse(new BufferedReader(new InputStreamReader(slow.getInputStream()))).status);
+        } finally {
+            stopper.join(10000);
+        }
+        assertFalse(stopper.isAlive());
+        assertTrue(new SnapshotStore(file.toString(), TimeSource.SYSTEM).load().getRecords().stream()
+                .anyMatch(record -> record.getData().get("id").equals("SLOW")));
+    }
+
+    /**
+     * Tests that servers in the same JVM keep separate state, whatever their threading mode.
+     */
+    @Test
+    public void testInstancesAreIndependent() throws Exception {
+        AggregationServer pooled = new AggregationServer(new ServerConfig().setPort(0)
+                .setThreading(ServerConfig.Threading.POOL).setPoolSize(2).setPersistence(ServerConfig.Persistence.NONE));
+        AggregationServer virtual = new AggregationServer(new ServerConfig().setPort(0)
+                .setThreading(ServerConfig.Threading.VIRTUAL).setPersistence(ServerConfig.Persistence.NONE));
+        pooled.start();
+        virtual.start();
+        try {
+            assertNotEquals(pooled.getPort(), virtual.getPort());
+            assertEquals("201 Created", sendPut(pooled.getPort(), "{\"id\":\"ONLY_POOLED\"}", 0).status);
+            assertEquals("201 Created", sendPut(virtual.getPort(), "{\"id\":\"ONLY_VIRTUAL\"}", 0).status);
+
+            assertEquals(Collections.singleton("ONLY_POOLED"), pooled.data.keySet());
+            assertEquals(Collections.singleton("ONLY_VIRTUAL"), virtual.data.keySet());
+            assertFalse(server.data.containsKey("ONLY_POOLED"));
+        } finally {
+            pooled.stop();
+            virtual.stop();
+        }
+    }
+
+    /**
+     * Tests that with SYNC persistence a PUT is on disk by the time it is acknowledged.
+     */
+    @Test
+    public void testSyncPersistenceWritesBeforeAcknowledging() throws Exception {
+        Path dir = Files.createTempDirectory("aggregation-sync");
+        ServerConfig config = new ServerConfig().setPort(0).setDataDir(dir).setPersistence(ServerConfig.Persistence.SYNC);
+        AggregationServer synced = new AggregationServer(config);
+        synced.start();
+        try {
+            assertEquals("201 Created", sendPut(synced.getPort(), "{\"id\":\"DURABLE\"}", 0).status);
+            List<WeatherRecord> onDisk = new SnapshotStore(config.getDataPath().toString(), TimeSource.SYSTEM).load().getRecords();
+            assertEquals(1, onDisk.size());
+            assertEquals("DURABLE", onDisk.get(0).getData().get("id"));
+        } finally {
+            synced.stop();
+            for (File file : dir.toFile().listFiles()) file.delete();
+            Files.delete(dir);
+        }
+    }
+
+    /**
+     * Tests that a reload restores each record's Lamport time and drops entries
+     * whose 30-second lease ran out while the data was on disk.
+     */
+    @Test
+    public void testReloadKeepsLamportAndDropsStale() throws Exception {
+        server.data.clear();
+        sendPut("{\"id\":\"STALE\",\"temp\":25}", 0);
+        time.advance(20000);
+        sendPut("{\"id\":\"FRESH\",\"temp\":25}", 0);
+
+        int freshLamport = server.data.get("FRESH").lamport;
+        server.saveToDisk();
+        time.advance(11000);
+        server.data.clear();
+
+        server.loadFromDisk();
+
+        assertEquals(freshLamport, server.data.get("FRESH").lamport);
+        assertFalse(server.data.containsKey("STALE"));
     }
 
     /**
@@ -159,14 +651,48 @@ public class AggregationServerTest {
      * @throws IOException on socket or IO error
      */
     private HttpResponse sendPut(String json, int lamportClock) throws IOException {
-        try (Socket socket = new Socket(LOCALHOST, TEST_PORT)) {
+        return sendPut(port, json, lamportClock);
+    }
+
+    /**
+     * Sends a PUT request to the server listening on the given port.
+     */
+    private HttpResponse sendPut(int targetPort, String json, int lamportClock) throws IOException {
+        try (Socket socket = new Socket(LOCALHOST, targetPort)) {
             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
 
             out.write("PUT /weather.json HTTP/1.1\r\n");
             out.write("Content-Type: application/json\r\n");
             out.write("Content-Length: " + json.length() + "\r\n");
-            out.write("Lamport-Clock: " + lamportClock + "\r\n\r\n");
+            out.write("Lamport-Clock: " + lamportClock + "\r\n");
+            out.write("Source-Id: " + TEST_SOURCE + "\r\n\r\n");
+            out.write(json);
+            out.flush();
+
+            return readResponse(in);
+        }
+    }
+
+    /**
+     * Sends a PUT marked as replicated and shard-forwarded from source "primary", as another node
+     * of the cluster would.
+     *
+     * @param secret Cluster-Secret header value, or null to send none.
+     */
+    private HttpResponse sendReplicatedPut(String json, int lamportClock, String secret) throws IOException {
+        try (Socket socket = new Socket(LOCALHOST, port)) {
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+
+            out.write("PUT /weather.json HTTP/1.1\r\n");
+            out.write("Content-Length: " + json.length() + "\r\n");
+            out.write("Lamport-Clock: " + lamportClock + "\r\n");
+            out.write("Source-Id: primary\r\n");
+            out.write("Replicated: true\r\n");
+            out.write("Shard-Forwarded: true\r\n");
+            if (secret != null) out.write("Cluster-Secret: " + secret + "\r\n");
+            out.write("\r\n");
             out.write(json);
             out.flush();
 
@@ -182,7 +708,7 @@ public class AggregationServerTest {
      * @throws IOException on socket or IO error
      */
     private HttpResponse sendGet(int lamportClock) throws IOException {
-        try (Socket socket = new Socket(LOCALHOST, TEST_PORT)) {
+        try (Socket socket = new Socket(LOCALHOST, port)) {
             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
 
@@ -194,6 +720,28 @@ public class AggregationServerTest {
         }
     }
 
+    /**
+     * Sends a GET request for the given path and returns the parsed response.
+     */
+    private HttpResponse sendGetPath(String path) throws IOException {
+        return sendGetPath(port, path);
+    }
+
+    /**
+     * Sends a GET request for the given path to the server listening on the given port.
+     */
+    private HttpResponse sendGetPath(int targetPort, String path) throws IOException {
+        try (Socket socket = new Socket(LOCALHOST, targetPort)) {
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+
+            out.write("GET " + path + " HTTP/1.1\r\n\r\n");
+            out.flush();
+
+            return readResponse(in);
+        }
+    }
+
     /**
      * Reads HTTP-like response from BufferedReader, parsing status line, headers, and body.
      *
@@ -0,0 +1,50 @@
+package assignment2;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for Backoff.
+ * Verifies that delays stay within the doubling ceiling and the cap, and that reset starts over.
+ */
+public class BackoffTest {
+
+    /**
+     * Tests that every delay lies within [0, min(cap, base * 2^attempt)].
+     */
+    @Test
+    public void testDelaysStayWithinCeiling() {
+        Backoff backoff = new Backoff(100, 1000, new Random(42));
+        long[] ceilings = { 100, 200, 400, 800, 1000, 1000, 1000 };
+        for (long ceiling : ceilings) {
+            long delay = backoff.nextDelay();
+            assertTrue(delay >= 0 && delay <= ceiling);
+        }
+    }
+
+    /**
+     * Tests that many attempts never overflow past the cap.
+     */
+    @Test
+    public void testManyAttemptsStayCapped() {
+        Backoff backoff = new Backoff(500, 30000);
+        for (int i = 0; i < 200; i++) {
+            long delay = backoff.nextDelay();
+            assertTrue(delay >= 0 && delay <= 30000);
+        }
+    }
+
+    /**
+     * Tests that reset brings the ceiling back to the base delay.
+     */
+    @Test
+    public void testResetStartsOver() {
+        Backoff backoff = new Backoff(10, 100000);
+        for (int i = 0; i < 10; i++) backoff.nextDelay();
+        backoff.reset();
+        assertTrue(backoff.nextDelay() <= 10);
+    }
+}
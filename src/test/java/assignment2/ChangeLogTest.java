@@ -0,0 +1,215 @@
+package assignment2;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static assignment2.TestRecords.record;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ChangeLog.
+ * Verifies entry encoding, reads bounded to whole entries, segment rolling, retention and recovery.
+ */
+public class ChangeLogTest {
+
+    /**
+     * Tests that PUTs and removals are read back in order as NDJSON, each tagged with its Lamport
+     * time, and that reading from the returned next offset yields nothing once caught up.
+     */
+    @Test
+    public void testAppendAndReadFromOffset() throws IOException {
+        try (ChangeLog log = new ChangeLog(Files.createTempDirectory("changes"), 1 << 20, 0, 0, TimeSource.SYSTEM)) {
+            long afterFirst = log.appendPut(record("A", 3));
+            log.appendPut(record("B", 4));
+            long end = log.appendRemoval("expire", "A", 5, 1000);
+            assertEquals(end, log.getEndOffset());
+
+            List<Map<String, String>> entries = readEntries(log, 0, 1 << 20);
+            assertEquals(3, entries.size());
+            assertEquals("put", entries.get(0).get("_change"));
+            assertEquals("3", entries.get(0).get("_lamport"));
+            assertEquals("20", entries.get(0).get("air_temp"));
+            assertEquals("expire", entries.get(2).get("_change"));
+            assertEquals("A", entries.get(2).get("id"));
+            assertEquals("5", entries.get(2).get("_lamport"));
+
+            assertEquals("B", readEntries(log, afterFirst, 1 << 20).get(0).get("id"));
+            try (ChangeLog.Slice slice = log.read(end, 1 << 20)) {
+                assertEquals(0, slice.getCount());
+                assertEquals(end, slice.getNextOffset());
+            }
+        }
+    }
+
+    /**
+     * Tests that a read stops at the last entry that fits in max, returns one entry even when it
+     * alone is larger, and refuses offsets inside an entry or past the end.
+     */
+    @Test
+    public void testReadsEndOnEntryBoundaries() throws IOException {
+        try (ChangeLog log = new ChangeLog(Files.createTempDirectory("changes"), 1 << 20, 0, 0, TimeSource.SYSTEM)) {
+            for (int i = 0; i < 10; i++) log.appendPut(record("S" + i, i + 1));
+            long first = entryLength(log, 0);
+
+            try (ChangeLog.Slice slice = log.read(0, 3 * first - 1)) {
+                assertEquals(2 * first, slice.getCount());
+                assertEquals(2 * first, slice.getNextOffset());
+            }
+            try (ChangeLog.Slice slice = log.read(0, 1)) {
+                assertEquals(first, slice.getCount());
+            }
+            try {
+                log.read(1, 100);
+                fail("Expected an offset inside an entry to be refused");
+            } catch (IllegalArgumentException expected) {
+            }
+            try {
+                log.read(log.getEndOffset() + 1, 100);
+                fail("Expected an offset past the end to be refused");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    /**
+     * Tests that segments roll at the segment size, reads continue across them, and retention
+     * deletes the oldest so that reads before the new start report the entries gone.
+     */
+    @Test
+    public void testSegmentsRollAndRetentionDeletesOldest() throws IOException {
+        Path dir = Files.createTempDirectory("changes");
+        long entry;
+        try (ChangeLog probe = new ChangeLog(Files.createTempDirectory("probe"), 1 << 20, 0, 0, TimeSource.SYSTEM)) {
+            entry = probe.appendPut(record("S0", 1));
+        }
+
+        try (ChangeLog log = new ChangeLog(dir, 2 * entry, 4 * entry, 0, TimeSource.SYSTEM)) {
+            for (int i = 0; i < 8; i++) log.appendPut(record("S" + i, i + 1));
+            assertTrue(log.getSegmentCount() > 1);
+            log.enforceRetention();
+            assertTrue(log.getEndOffset() - log.getStartOffset() <= 4 * entry);
+            assertNull(log.read(0, 1 << 20));
+
+            long offset = log.getStartOffset();
+            int read = 0;
+            while (offset < log.getEndOffset()) {
+                try (ChangeLog.Slice slice = log.read(offset, 1 << 20)) {
+                    read += (int) (slice.getCount() / entry);
+                    offset = slice.getNextOffset();
+                }
+            }
+            assertEquals((log.getEndOffset() - log.getStartOffset()) / entry, read);
+        }
+    }
+
+    /**
+     * Tests that segments older than the retention age are deleted by the log's clock, not the system's.
+     */
+    @Test
+    public void testRetentionAgeUsesTimeSource() throws IOException {
+        ManualTimeSource time = new ManualTimeSource(System.currentTimeMillis());
+        long entry;
+        try (ChangeLog probe = new ChangeLog(Files.createTempDirectory("probe"), 1 << 20, 0, 0, TimeSource.SYSTEM)) {
+            entry = probe.appendPut(record("S0", 1));
+        }
+
+        try (ChangeLog log = new ChangeLog(Files.createTempDirectory("changes"), entry, 0, 60000, time)) {
+            for (int i = 0; i < 3; i++) log.appendPut(record("S" + i, i + 1));
+            int segments = log.getSegmentCount();
+            assertEquals(0, log.enforceRetention());
+
+            time.advance(120000);
+            assertEquals(segments - 1, log.enforceRetention());
+            assertEquals(1, log.getSegmentCount());
+        }
+    }
+
+    /**
+     * Tests that reopening resumes at the end of the last complete entry, cutting off a partly written one.
+     */
+    @Test
+    public void testReopenTruncatesPartialEntry() throws IOException {
+        Path dir = Files.createTempDirectory("changes");
+        long end;
+        try (ChangeLog log = new ChangeLog(dir, 1 << 20, 0, 0, TimeSource.SYSTEM)) {
+            log.appendPut(record("A", 1));
+            end = log.appendPut(record("B", 2));
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            Path segment = files.findFirst().orElseThrow();
+            Files.write(segment, "{\"_change\":\"put\",\"id\":".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        }
+
+        try (ChangeLog log = new ChangeLog(dir, 1 << 20, 0, 0, TimeSource.SYSTEM)) {
+            assertEquals(end, log.getEndOffset());
+            log.appendRemoval("evict", "A", 3, 1000);
+            assertEquals(3, readEntries(log, 0, 1 << 20).size());
+        }
+    }
+
+    /**
+     * Tests that quotes, backslashes and line breaks in a source or removed id are escaped, so each
+     * entry stays one well-formed line.
+     */
+    @Test
+    public void testSourceAndIdAreEscaped() throws IOException {
+        try (ChangeLog log = new ChangeLog(Files.createTempDirectory("changes"), 1 << 20, 0, 0, TimeSource.SYSTEM)) {
+            Map<String, String> map = new LinkedHashMap<>();
+            map.put("id", "A");
+            log.appendPut(new WeatherRecord(map, 1, "say \"hi\"\n", 1000));
+            log.appendRemoval("evict", "B\"\\", 2, 1000);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ChangeLog.Slice slice = log.read(0, 1 << 20)) {
+                slice.transferTo(Channels.newChannel(bytes));
+            }
+            String[] lines = bytes.toString(StandardCharsets.UTF_8).split("\n");
+            assertEquals(2, lines.length);
+            assertTrue(lines[0], lines[0].contains("\"_source\":\"say \\\"hi\\\"\\u000a\","));
+            assertTrue(lines[1], lines[1].endsWith("\"id\":\"B\\\"\\\\\"}"));
+        }
+    }
+
+    /**
+     * Tests that a line break inside a data value is written as an escape, leaving the value intact
+     * and the entry on one line.
+     */
+    @Test
+    public void testDataValuesAreEscaped() throws IOException {
+        try (ChangeLog log = new ChangeLog(Files.createTempDirectory("changes"), 1 << 20, 0, 0, TimeSource.SYSTEM)) {
+            log.appendPut(record("A", "line\nbreak", 1));
+
+            List<Map<String, String>> entries = readEntries(log, 0, 1 << 20);
+            assertEquals(1, entries.size());
+            assertEquals("line\\u000abreak", entries.get(0).get("air_temp"));
+        }
+    }
+
+    // Reads one slice and parses its lines
+    private static List<Map<String, String>> readEntries(ChangeLog log, long offset, long max) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ChangeLog.Slice slice = log.read(offset, max)) {
+            slice.transferTo(Channels.newChannel(bytes));
+        }
+        List<Map<String, String>> entries = new ArrayList<>();
+        for (String line : bytes.toString(StandardCharsets.UTF_8).split("\n")) {
+            if (!line.isEmpty()) entries.add(SimpleJsonParser.parse(line));
+        }
+        return entries;
+    }
+
+    // Length of the entry at offset, from a one-byte read that always returns one whole entry
+    private static long entryLength(ChangeLog log, long offset) throws IOException {
+        try (ChangeLog.Slice slice = log.read(offset, 1)) {
+            return slice.getCount();
+        }
+    }
+}
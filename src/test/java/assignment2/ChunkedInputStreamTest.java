@@ -0,0 +1,55 @@
+package assignment2;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ChunkedInputStream and ChunkedOutputStream.
+ * Verifies round trips across chunk boundaries and the wire format of small bodies.
+ */
+public class ChunkedInputStreamTest {
+
+    /**
+     * Tests that a body larger than the chunk buffer survives encoding and decoding unchanged.
+     */
+    @Test
+    public void testRoundTripAcrossChunks() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) sb.append("{\"id\":\"ID").append(i).append("\"},");
+        byte[] payload = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        try (OutputStream out = new ChunkedOutputStream(wire, 64)) {
+            out.write(payload);
+        }
+
+        InputStream in = new ChunkedInputStream(new ByteArrayInputStream(wire.toByteArray()));
+        assertArrayEquals(payload, in.readAllBytes());
+    }
+
+    /**
+     * Tests the exact framing of a single short chunk and the terminating chunk.
+     */
+    @Test
+    public void testWireFormat() throws IOException {
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        try (OutputStream out = new ChunkedOutputStream(wire, 64)) {
+            out.write("[1,2]".getBytes(StandardCharsets.US_ASCII));
+        }
+        assertEquals("5\r\n[1,2]\r\n0\r\n\r\n", wire.toString(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Tests that data following the terminating chunk is left unread.
+     */
+    @Test
+    public void testStopsAtLastChunk() throws IOException {
+        InputStream raw = new ByteArrayInputStream("3\r\nabc\r\n0\r\n\r\nNEXT".getBytes(StandardCharsets.US_ASCII));
+        assertEquals("abc", new String(new ChunkedInputStream(raw).readAllBytes(), StandardCharsets.US_ASCII));
+        assertEquals("NEXT", new String(raw.readAllBytes(), StandardCharsets.US_ASCII));
+    }
+}
@@ -105,6 +105,66 @@ public class ContentServerTest {
         assertTrue(output.contains("HTTP/1.1 201 Created"));
     }
 
+    /**
+     * Test that ContentServer fails over to the next server in its list when the first is unreachable.
+     */
+    @Test
+    public void testContentServerFailsOverToNextServer() throws Exception {
+        File tempFile = File.createTempFile("valid_weather_data", ".txt");
+        tempFile.deleteOnExit();
+        try (FileWriter writer = new FileWriter(tempFile)) {
+            writer.write(SAMPLE_VALID_DATA);
+        }
+
+        ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+        PrintStream originalOut = System.out;
+        System.setOut(new PrintStream(outContent));
+
+        try {
+            // Port 1 is never listening locally, so the first attempt is refused
+            ContentServer.main(new String[] { "localhost:1,localhost:" + TEST_PORT, tempFile.getAbsolutePath() });
+        } finally {
+            System.setOut(originalOut);
+        }
+
+        String output = outContent.toString();
+        assertTrue(output.contains("failing over to localhost:" + TEST_PORT));
+        assertTrue(output.contains("HTTP/1.1 201 Created"));
+    }
+
+    /**
+     * Test that updates left in the outbox by a previous run are delivered along with the new one,
+     * and that the outbox is empty afterwards.
+     */
+    @Test
+    public void testContentServerResumesFromOutbox() throws Exception {
+        File tempFile = File.createTempFile("valid_weather_data", ".txt");
+        tempFile.deleteOnExit();
+        try (FileWriter writer = new FileWriter(tempFile)) {
+            writer.write(SAMPLE_VALID_DATA);
+        }
+        File outboxFile = File.createTempFile("outbox", ".ndjson");
+        outboxFile.deleteOnExit();
+        try (FileWriter writer = new FileWriter(outboxFile)) {
+            writer.write("{\"id\":\"LeftOver\",\"temp\":\"10\"}\n");
+        }
+
+        ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+        PrintStream originalOut = System.out;
+        System.setOut(new PrintStream(outContent));
+
+        try {
+            ContentServer.main(new String[] { "localhost:" + TEST_PORT, tempFile.getAbsolutePath(),
+                    "--outbox", outboxFile.getAbsolutePath() });
+        } finally {
+            System.setOut(originalOut);
+        }
+
+        String output = outContent.toString();
+        assertEquals(2, output.split("Sending PUT", -1).length - 1);
+        assertEquals(0, new Outbox(outboxFile.getAbsolutePath()).size());
+    }
+
     /**
      * Test that ContentServer rejects files missing the mandatory 'id' key.
      * Verifies proper error message is printed to console.
@@ -133,4 +193,20 @@ public class ContentServerTest {
         // Verify output contains expected error message about missing id
         assertTrue(output.contains("Data file must contain 'id' field."));
     }
+
+    /**
+     * Tests that timeouts, rate limiting and every server error keep the update queued for a retry,
+     * while success and client errors settle it.
+     */
+    @Test
+    public void testRetryableStatuses() {
+        assertTrue(ContentServer.isRetryable("HTTP/1.1 408 Request Timeout"));
+        assertTrue(ContentServer.isRetryable("HTTP/1.1 429 Too Many Requests"));
+        assertTrue(ContentServer.isRetryable("HTTP/1.1 500 Internal Server Error"));
+        assertTrue(ContentServer.isRetryable("HTTP/1.1 502 Bad Gateway"));
+        assertTrue(ContentServer.isRetryable("HTTP/1.1 507 Insufficient Storage"));
+        assertFalse(ContentServer.isRetryable("HTTP/1.1 201 Created"));
+        assertFalse(ContentServer.isRetryable("HTTP/1.1 400 Bad Request"));
+        assertFalse(ContentServer.isRetryable("HTTP/1.1 409 Conflict"));
+    }
 }
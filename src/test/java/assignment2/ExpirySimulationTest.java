@@ -0,0 +1,29 @@
+package assignment2;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ExpirySimulation.
+ * Verifies that runs in virtual time expire stations and are repeatable for a given seed.
+ */
+public class ExpirySimulationTest {
+
+    /**
+     * Tests that stations left without PUTs for longer than the expiry time are swept, and that a
+     * second run with the same settings makes the same PUTs and expires the same stations.
+     */
+    @Test
+    public void testRunsAreDeterministic() {
+        ExpirySimulation.Result first = new ExpirySimulation(2000, 200, 20, 2000, 10000, 42).run();
+        ExpirySimulation.Result second = new ExpirySimulation(2000, 200, 20, 2000, 10000, 42).run();
+
+        assertEquals(2000 + 20 * 200, first.getPuts());
+        assertTrue(first.getRemoved() > 0);
+        assertTrue(first.getStations() < 2000);
+        assertEquals(first.getRemoved(), second.getRemoved());
+        assertEquals(first.getStations(), second.getStations());
+        assertTrue(first.report().contains("Expired: " + first.getRemoved()));
+    }
+}
@@ -44,6 +44,13 @@ public class GETClientTest {
                             // Return response depending on request path
                             if (requestLine.contains("/empty.json")) {
                                 out.write("HTTP/1.1 404 Not Found\r\n\r\nNo weather data available.\r\n");
+                            } else if (requestLine.contains("/chunked.json")) {
+                                out.write("HTTP/1.1 200 OK\r\n");
+                                out.write("Content-Type: application/json\r\n");
+                                out.write("Transfer-Encoding: chunked\r\n\r\n");
+                                out.write("f\r\n[{\"id\":\"Chunked\r\n");
+                                out.write("10\r\nStation\",\"t\":1}]\r\n");
+                                out.write("0\r\n\r\n");
                             } else if (requestLine.contains("/error.json")) {
                                 out.write("HTTP/1.1 500 Internal Server Error\r\n\r\nServer failed.\r\n");
                             } else {
@@ -128,4 +135,40 @@ public class GETClientTest {
         assertTrue(output.contains("id: TestStation"));
         assertTrue(output.contains("temp: 20"));
     }
+
+    /**
+     * Tests that GETClient decodes a chunked response whose chunks split a record.
+     */
+    @Test
+    public void testGetClientChunkedResponse() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PrintStream originalOut = System.out;
+        System.setOut(new PrintStream(outputStream));
+        try {
+            GETClient.main(new String[] { "http://localhost:" + TEST_PORT + "/chunked.json" });
+        } finally {
+            System.setOut(originalOut);
+        }
+        String output = outputStream.toString();
+        assertTrue(output.contains("id: ChunkedStation"));
+        assertTrue(output.contains("t: 1"));
+    }
+
+    /**
+     * Tests that GETClient fails over to the next server in its list when the first is unreachable.
+     */
+    @Test
+    public void testGetClientFailsOver() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PrintStream originalOut = System.out;
+        System.setOut(new PrintStream(outputStream));
+        try {
+            GETClient.main(new String[] { "localhost:1,localhost:" + TEST_PORT });
+        } finally {
+            System.setOut(originalOut);
+        }
+        String output = outputStream.toString();
+        assertTrue(output.contains("failing over to localhost:" + TEST_PORT));
+        assertTrue(output.contains("id: TestStation"));
+    }
 }
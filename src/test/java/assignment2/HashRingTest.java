@@ -0,0 +1,62 @@
+package assignment2;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for HashRing.
+ * Verifies stable ownership, an even spread, and minimal movement when a shard is added.
+ */
+public class HashRingTest {
+
+    private static final int KEYS = 10000;
+
+    /**
+     * Tests that the same id always maps to the same node, regardless of node order.
+     */
+    @Test
+    public void testOwnershipIsStable() {
+        HashRing ring = new HashRing(List.of("a:1", "b:2", "c:3"));
+        HashRing reordered = new HashRing(List.of("c:3", "a:1", "b:2"));
+        for (int i = 0; i < 100; i++) {
+            assertEquals(ring.ownerOf("ID" + i), reordered.ownerOf("ID" + i));
+        }
+    }
+
+    /**
+     * Tests that every node receives a reasonable share of the ids.
+     */
+    @Test
+    public void testSpreadsIdsAcrossNodes() {
+        HashRing ring = new HashRing(List.of("a:1", "b:2", "c:3"));
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) counts.merge(ring.ownerOf("ID" + i), 1, Integer::sum);
+
+        assertEquals(3, counts.size());
+        for (int count : counts.values()) assertTrue(count > KEYS / 6);
+    }
+
+    /**
+     * Tests that adding a fourth node only moves ids to the new node, and roughly a quarter of them.
+     */
+    @Test
+    public void testAddingNodeMovesFewIds() {
+        HashRing ring = new HashRing(List.of("a:1", "b:2", "c:3"));
+        Map<String, String> before = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) before.put("ID" + i, ring.ownerOf("ID" + i));
+
+        ring.addNode("d:4");
+        int moved = 0;
+        for (Map.Entry<String, String> entry : before.entrySet()) {
+            String owner = ring.ownerOf(entry.getKey());
+            if (!owner.equals(entry.getValue())) {
+                assertEquals("d:4", owner);
+                moved++;
+            }
+        }
+        assertTrue(moved > KEYS / 8 && moved < KEYS / 2);
+    }
+}
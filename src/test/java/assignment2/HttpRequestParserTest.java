@@ -0,0 +1,114 @@
+package assignment2;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for HttpRequestParser.
+ * Verifies header matching, byte-accurate bodies and rejection of malformed or oversized requests.
+ */
+public class HttpRequestParserTest {
+
+    /**
+     * Tests that header names match regardless of case and that values are trimmed.
+     */
+    @Test
+    public void testHeadersAreCaseInsensitive() throws IOException {
+        HttpRequestParser parser = parser("PUT /weather.json HTTP/1.1\r\n"
+                + "content-LENGTH:  2\r\nLAMPORT-CLOCK: 17\r\nsource-id: station-a \r\nReplicated: TRUE\r\n\r\n{}");
+        assertTrue(parser.readHead());
+        assertSame(HttpRequestParser.PUT, parser.getMethod());
+        assertEquals("/weather.json", parser.getPath());
+        assertEquals(2, parser.getContentLength());
+        assertEquals(17, parser.getLamportClock());
+        assertEquals("station-a", parser.getSourceId());
+        assertTrue(parser.isReplicated());
+        assertFalse(parser.isShardForwarded());
+        assertEquals("{}", parser.readBody(2));
+    }
+
+    /**
+     * Tests that query parameters are found by name and percent-decoded.
+     */
+    @Test
+    public void testQueryParameters() throws IOException {
+        HttpRequestParser parser = parser("GET /weather.json?x=1&filter=air_temp%3E30+AND+state%3DSA HTTP/1.1\r\n\r\n");
+        assertTrue(parser.readHead());
+        assertEquals("air_temp>30 AND state=SA", parser.getQueryParameter("filter"));
+        assertEquals("1", parser.getQueryParameter("x"));
+        assertNull(parser.getQueryParameter("missing"));
+    }
+
+    /**
+     * Tests that Content-Length counts bytes, so multi-byte UTF-8 bodies arrive intact.
+     */
+    @Test
+    public void testBodyLengthIsInBytes() throws IOException {
+        String json = "{\"id\":\"Zürich\",\"name\":\"東京\"}";
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        HttpRequestParser parser = parser("PUT / HTTP/1.1\r\nContent-Length: " + body.length + "\r\n\r\n" + json + "NEXT");
+        assertTrue(parser.readHead());
+        assertEquals(body.length, parser.getContentLength());
+        assertEquals(json, parser.readBody(body.length));
+    }
+
+    /**
+     * Tests bodies larger than the buffer and several requests read from one stream.
+     */
+    @Test
+    public void testLargeBodyAndSecondRequest() throws IOException {
+        String big = "x".repeat(100);
+        HttpRequestParser parser = new HttpRequestParser(stream("PUT / HTTP/1.1\nContent-Length: 100\n\n" + big
+                + "GET /metrics HTTP/1.1\r\n\r\n"), 64);
+        assertTrue(parser.readHead());
+        assertEquals(big, parser.readBody(100));
+        assertTrue(parser.readHead());
+        assertSame(HttpRequestParser.GET, parser.getMethod());
+        assertEquals("/metrics", parser.getPath());
+        assertEquals(-1, parser.getContentLength());
+        assertFalse(parser.readHead());
+    }
+
+    /**
+     * Tests that a header line longer than the buffer is rejected with 431.
+     */
+    @Test
+    public void testOversizedHeaderIs431() {
+        HttpRequestParser parser = new HttpRequestParser(stream("GET / HTTP/1.1\r\nX-Long: " + "a".repeat(200) + "\r\n\r\n"), 64);
+        try {
+            parser.readHead();
+            fail("Expected ParseException");
+        } catch (HttpRequestParser.ParseException e) {
+            assertEquals(431, e.getStatus());
+        } catch (IOException e) {
+            fail("Unexpected " + e);
+        }
+    }
+
+    /**
+     * Tests that non-numeric and overflowing numbers are rejected with 400.
+     */
+    @Test
+    public void testInvalidNumbersAre400() throws IOException {
+        for (String header : new String[]{"Content-Length: 12a", "Content-Length: -1", "Lamport-Clock: 99999999999", "Lamport-Clock: 2147483647"}) {
+            try {
+                parser("PUT / HTTP/1.1\r\n" + header + "\r\n\r\n").readHead();
+                fail("Expected ParseException for " + header);
+            } catch (HttpRequestParser.ParseException e) {
+                assertEquals(400, e.getStatus());
+            }
+        }
+    }
+
+    private static HttpRequestParser parser(String request) {
+        return new HttpRequestParser(stream(request));
+    }
+
+    private static InputStream stream(String request) {
+        return new ByteArrayInputStream(request.getBytes(StandardCharsets.UTF_8));
+    }
+}
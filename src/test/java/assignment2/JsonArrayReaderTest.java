@@ -0,0 +1,65 @@
+package assignment2;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for JsonArrayReader.
+ * Verifies object-by-object parsing, empty arrays, bare values and malformed input.
+ */
+public class JsonArrayReaderTest {
+
+    /**
+     * Tests that objects are returned one at a time in order, then null at the end.
+     */
+    @Test
+    public void testReadsObjectsInOrder() throws IOException {
+        JsonArrayReader reader = new JsonArrayReader(new StringReader(
+                " [ {\"id\":\"A\", \"temp\" : 25} ,\n{\"id\":\"B\",\"name\":\"x, y: {z}\"} ] "));
+
+        Map<String, String> first = reader.next();
+        assertEquals("A", first.get("id"));
+        assertEquals("25", first.get("temp"));
+
+        Map<String, String> second = reader.next();
+        assertEquals("x, y: {z}", second.get("name"));
+
+        assertNull(reader.next());
+        assertNull(reader.next());
+    }
+
+    /**
+     * Tests that the callback sees every object and that empty arrays and objects are accepted.
+     */
+    @Test
+    public void testForEachAndEmptyValues() throws IOException {
+        List<Map<String, String>> seen = new ArrayList<>();
+        assertEquals(2, new JsonArrayReader(new StringReader("[{},{\"id\":\"\"}]")).forEach(seen::add));
+        assertTrue(seen.get(0).isEmpty());
+        assertEquals("", seen.get(1).get("id"));
+
+        assertEquals(0, new JsonArrayReader(new StringReader("[ ]")).forEach(seen::add));
+    }
+
+    /**
+     * Tests that the first object is available before the rest of the input exists.
+     */
+    @Test
+    public void testFirstObjectBeforeEndOfInput() throws IOException {
+        // Reading past the first object would hit the end of this truncated input
+        JsonArrayReader reader = new JsonArrayReader(new StringReader("[{\"id\":\"A\"},{\"id\":"));
+        assertEquals("A", reader.next().get("id"));
+    }
+
+    /**
+     * Tests that malformed input is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsMalformedInput() throws IOException {
+        new JsonArrayReader(new StringReader("[{\"id\" \"A\"}]")).next();
+    }
+}
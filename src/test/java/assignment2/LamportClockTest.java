@@ -46,6 +46,17 @@ public class LamportClockTest {
         assertEquals(7, clock.getTime());
     }
 
+    /**
+     * Tests that the clock stops at Integer.MAX_VALUE instead of wrapping to a negative time.
+     */
+    @Test
+    public void testClockNeverOverflows() {
+        LamportClock clock = new LamportClock();
+        assertEquals(Integer.MAX_VALUE, clock.update(Integer.MAX_VALUE));
+        assertEquals(Integer.MAX_VALUE, clock.tick());
+        assertEquals(Integer.MAX_VALUE, clock.update(5));
+    }
+
     /**
      * Tests concurrent ticking of the LamportClock from two threads.
      * Verifies logical time reflects all increments (at least 2000 after two threads run 1000 ticks each).
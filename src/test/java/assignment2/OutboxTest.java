@@ -0,0 +1,69 @@
+package assignment2;
+
+import org.junit.*;
+
+import java.nio.file.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for Outbox.
+ * Verifies coalescing per id, delivery removal and persistence of updates and clock across instances.
+ */
+public class OutboxTest {
+
+    private static final String TEST_FILE = "test_outbox.ndjson";
+
+    /**
+     * Removes the outbox file left behind by a test.
+     */
+    @After
+    public void cleanUp() throws Exception {
+        Files.deleteIfExists(Paths.get(TEST_FILE));
+    }
+
+    /**
+     * Tests that a newer update for the same id replaces the pending one.
+     */
+    @Test
+    public void testCoalescesById() throws Exception {
+        Outbox outbox = new Outbox(null);
+        outbox.put("A", "{\"id\":\"A\",\"temp\":\"1\"}");
+        outbox.put("A", "{\"id\":\"A\",\"temp\":\"2\"}");
+
+        assertEquals(1, outbox.size());
+        assertEquals("{\"id\":\"A\",\"temp\":\"2\"}", outbox.peek().getValue());
+    }
+
+    /**
+     * Tests that delivering an update that has since been replaced keeps the newer one.
+     */
+    @Test
+    public void testRemoveKeepsNewerUpdate() throws Exception {
+        Outbox outbox = new Outbox(null);
+        outbox.put("A", "old");
+        outbox.put("A", "new");
+        outbox.remove("A", "old");
+        assertEquals(1, outbox.size());
+
+        outbox.remove("A", "new");
+        assertNull(outbox.peek());
+    }
+
+    /**
+     * Tests that pending updates and the Lamport time are reloaded by a new instance over the same file.
+     */
+    @Test
+    public void testSurvivesRestart() throws Exception {
+        Outbox outbox = new Outbox(TEST_FILE);
+        outbox.put("A", "{\"id\":\"A\",\"temp\":\"1\"}");
+        outbox.put("B", "{\"id\":\"B\",\"temp\":\"2\"}");
+        outbox.setClock(42);
+        outbox.remove("A", "{\"id\":\"A\",\"temp\":\"1\"}");
+
+        Outbox restarted = new Outbox(TEST_FILE);
+        assertEquals(1, restarted.size());
+        assertEquals("B", restarted.peek().getKey());
+        assertEquals(42, restarted.getClock());
+    }
+}
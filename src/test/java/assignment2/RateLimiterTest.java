@@ -0,0 +1,79 @@
+package assignment2;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for RateLimiter.
+ * Verifies burst admission, per-key isolation, disabling, refill and concurrent use.
+ */
+public class RateLimiterTest {
+
+    /**
+     * Tests that a key may use its whole burst at once and is then refused.
+     */
+    @Test
+    public void testBurstThenReject() {
+        RateLimiter limiter = new RateLimiter(1, 3);
+        assertTrue(limiter.tryAcquire("A"));
+        assertTrue(limiter.tryAcquire("A"));
+        assertTrue(limiter.tryAcquire("A"));
+        assertFalse(limiter.tryAcquire("A"));
+
+        // Other keys have their own bucket
+        assertTrue(limiter.tryAcquire("B"));
+    }
+
+    /**
+     * Tests that a rate of zero admits everything.
+     */
+    @Test
+    public void testZeroRateDisablesLimiting() {
+        RateLimiter limiter = new RateLimiter(0, 1);
+        for (int i = 0; i < 1000; i++) assertTrue(limiter.tryAcquire("A"));
+        assertEquals(0, limiter.size());
+    }
+
+    /**
+     * Tests that tokens refill over time and that refilled buckets are evicted.
+     */
+    @Test
+    public void testRefillAndEvictIdle() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(100, 1);
+        assertTrue(limiter.tryAcquire("A"));
+        assertFalse(limiter.tryAcquire("A"));
+
+        Thread.sleep(30);
+        assertTrue(limiter.tryAcquire("A"));
+
+        Thread.sleep(30);
+        limiter.evictIdle();
+        assertEquals(0, limiter.size());
+    }
+
+    /**
+     * Tests that concurrent callers never get more than the burst between them.
+     */
+    @Test
+    public void testConcurrentAcquireHonoursBurst() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(0.001, 50);
+        AtomicInteger admitted = new AtomicInteger();
+        Runnable r = () -> {
+            for (int i = 0; i < 100; i++) {
+                if (limiter.tryAcquire("A")) admitted.incrementAndGet();
+            }
+        };
+
+        Thread t1 = new Thread(r);
+        Thread t2 = new Thread(r);
+        t1.start();
+        t2.start();
+        t1.join();
+        t2.join();
+
+        assertEquals(50, admitted.get());
+    }
+}
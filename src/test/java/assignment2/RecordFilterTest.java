@@ -0,0 +1,71 @@
+package assignment2;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for RecordFilter.
+ * Verifies typed comparisons, operator precedence and parentheses, and rejection of malformed expressions.
+ */
+public class RecordFilterTest {
+    private static final WeatherSchema SCHEMA = WeatherSchema.defaults();
+
+    /**
+     * Tests that numeric fields compare by value and other fields compare as strings.
+     */
+    @Test
+    public void testTypedComparisons() {
+        WeatherRecord adelaide = record("id", "IDS60901", "state", "SA", "air_temp", "13.3", "rel_hum", "60");
+
+        assertTrue(matches("air_temp>9", adelaide));        // As strings "13.3" < "9"
+        assertTrue(matches("air_temp = 13.30", adelaide));
+        assertTrue(matches("rel_hum<=60", adelaide));
+        assertFalse(matches("rel_hum<60", adelaide));
+        assertTrue(matches("state=SA", adelaide));
+        assertTrue(matches("state != \"New South Wales\"", adelaide));
+        assertFalse(matches("press>0", adelaide));          // Missing fields never match
+        assertFalse(matches("cloud!=Sunny", adelaide));
+    }
+
+    /**
+     * Tests that AND binds tighter than OR and parentheses override it.
+     */
+    @Test
+    public void testPrecedenceAndParentheses() {
+        WeatherRecord hotNt = record("id", "A", "state", "NT", "air_temp", "38");
+
+        assertTrue(matches("state=SA AND air_temp>40 OR air_temp>30", hotNt));
+        assertFalse(matches("state=SA and (air_temp>40 or air_temp>30)", hotNt));
+        assertTrue(matches("(state=SA || state=NT) && air_temp>=38", hotNt));
+    }
+
+    /**
+     * Tests that malformed expressions and non-numeric literals for numeric fields are rejected.
+     */
+    @Test
+    public void testRejectsMalformedExpressions() {
+        for (String expression : new String[] { "", "air_temp", "air_temp>", "(state=SA", "state=SA)",
+                "state=SA AND", "air_temp>hot", "state=\"SA", "state~SA", "(".repeat(40) + "state=SA" + ")".repeat(40) }) {
+            try {
+                RecordFilter.compile(expression, SCHEMA);
+                fail("Accepted " + expression);
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage().contains("position"));
+            }
+        }
+    }
+
+    private static boolean matches(String expression, WeatherRecord record) {
+        return RecordFilter.compile(expression, SCHEMA).test(record);
+    }
+
+    // Builds a validated record from alternating field names and values
+    private static WeatherRecord record(String... fields) {
+        Map<String, String> data = new LinkedHashMap<>();
+        for (int i = 0; i < fields.length; i += 2) data.put(fields[i], fields[i + 1]);
+        return new WeatherRecord(data, SCHEMA.validate(data), 1, "", 0);
+    }
+}
@@ -0,0 +1,143 @@
+package assignment2;
+
+import static assignment2.TestRecords.record;
+import static org.junit.Assert.*;
+import org.junit.*;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * JUnit test class for Replicator.
+ * Uses a mock backup server that records every replicated PUT it receives.
+ */
+public class ReplicatorTest {
+
+    private static ServerSocket serverSocket;
+    private static int port;
+    private static ExecutorService serverExecutor;
+
+    // Lamport-Clock header of each replicated PUT, in arrival order
+    private static final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+    // Status lines, with any extra headers, to answer the next PUTs with; 201 Created once empty
+    private static final Queue<String> answers = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Starts a mock backup that answers each PUT with the next queued answer, or 201 Created.
+     */
+    @BeforeClass
+    public static void startMockBackup() throws IOException {
+        serverSocket = new ServerSocket(0);
+        port = serverSocket.getLocalPort();
+        serverExecutor = Executors.newSingleThreadExecutor();
+        serverExecutor.submit(() -> {
+            try {
+                while (!serverSocket.isClosed()) {
+                    try (Socket socket = serverSocket.accept()) {
+                        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                        BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+
+                        String line;
+                        String lamport = null;
+                        boolean replicated = false;
+                        while (!(line = in.readLine()).isEmpty()) {
+                            if (line.startsWith("Lamport-Clock:")) lamport = line.split(":")[1].trim();
+                            if (line.equals("Replicated: true")) replicated = true;
+                        }
+                        if (replicated) received.add(lamport);
+
+                        String answer = answers.poll();
+                        out.write("HTTP/1.1 " + (answer != null ? answer : "201 Created") + "\r\nLamport-Clock: 1\r\n\r\n");
+                        out.flush();
+                    }
+                }
+            } catch (IOException ignored) {
+                // Server socket closed: ignore for test shutdown
+            }
+        });
+    }
+
+    /**
+     * Stops the mock backup after all tests complete.
+     */
+    @AfterClass
+    public static void stopMockBackup() throws IOException {
+        if (serverSocket != null) serverSocket.close();
+        if (serverExecutor != null) serverExecutor.shutdownNow();
+    }
+
+    /**
+     * Tests that the initial resync sends the current state in Lamport order,
+     * and that later published records follow.
+     */
+    @Test
+    public void testStreamsRecordsInLamportOrder() throws Exception {
+        List<WeatherRecord> current = List.of(record("B", 7), record("A", 3), record("C", 5));
+        Replicator replicator = new Replicator("localhost:" + port, () -> current, null);
+        replicator.start();
+        try {
+            assertEquals("3", received.poll(5, TimeUnit.SECONDS));
+            assertEquals("5", received.poll(5, TimeUnit.SECONDS));
+            assertEquals("7", received.poll(5, TimeUnit.SECONDS));
+
+            replicator.publish(record("D", 9));
+            assertEquals("9", received.poll(5, TimeUnit.SECONDS));
+        } finally {
+            replicator.stop();
+        }
+    }
+
+    /**
+     * Tests that a record the backup is too busy for is sent again after Retry-After, one it refuses
+     * with another 4xx is skipped, and neither starts a resync of the whole state.
+     */
+    @Test
+    public void testBusyBackupIsRetriedWithoutResync() throws Exception {
+        AtomicInteger resyncs = new AtomicInteger();
+        answers.add("429 Too Many Requests\r\nRetry-After: 1");
+        answers.add("400 Bad Request");
+        Replicator replicator = new Replicator("localhost:" + port, () -> {
+            resyncs.incrementAndGet();
+            return List.of(record("A", 3));
+        }, null);
+        replicator.start();
+        try {
+            assertEquals("3", received.poll(5, TimeUnit.SECONDS));
+            long refused = System.nanoTime();
+            assertEquals("3", received.poll(5, TimeUnit.SECONDS));
+            assertTrue(System.nanoTime() - refused >= TimeUnit.MILLISECONDS.toNanos(900));
+
+            replicator.publish(record("B", 9));
+            assertEquals("9", received.poll(5, TimeUnit.SECONDS));
+            assertEquals(1, resyncs.get());
+        } finally {
+            replicator.stop();
+        }
+    }
+
+    /**
+     * Tests that the queue holds at most one record per station while the backup is down,
+     * however many records are published.
+     */
+    @Test
+    public void testQueueStaysBoundedWhileBackupDown() throws Exception {
+        int unusedPort;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            unusedPort = probe.getLocalPort();
+        }
+        Replicator replicator = new Replicator("localhost:" + unusedPort, List::of, null);
+        replicator.start();
+        try {
+            for (int i = 1; i <= 20000; i++) {
+                replicator.publish(record("S" + (i % 10), i));
+                assertTrue(replicator.pending() <= 10);
+                if (i % 5000 == 0) Thread.sleep(600); // Let several connection attempts fail
+            }
+        } finally {
+            replicator.stop();
+        }
+    }
+}
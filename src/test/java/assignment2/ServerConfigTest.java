@@ -0,0 +1,62 @@
+package assignment2;
+
+import org.junit.Test;
+
+import java.nio.file.Paths;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ServerConfig.
+ * Verifies defaults and that command-line flags map onto the matching settings.
+ */
+public class ServerConfigTest {
+
+    /**
+     * Tests the defaults of the standalone server.
+     */
+    @Test
+    public void testDefaults() {
+        ServerConfig config = ServerConfig.fromArgs(new String[0]);
+        assertEquals(4567, config.getPort());
+        assertEquals(30000, config.getExpiryMs());
+        assertEquals(ServerConfig.Threading.THREAD_PER_CONNECTION, config.getThreading());
+        assertEquals(ServerConfig.Persistence.CHECKPOINT, config.getPersistence());
+        assertEquals(Paths.get("server_data.json"), config.getDataPath());
+        assertTrue(config.getShards().isEmpty());
+    }
+
+    /**
+     * Tests that the port, modes and data location are read from flags.
+     */
+    @Test
+    public void testFromArgs() {
+        ServerConfig config = ServerConfig.fromArgs(new String[]{"0", "--threading", "virtual", "--persistence", "sync",
+                "--data-dir", "state", "--data-file", "node1.json", "--expiry-ms", "5000", "--shards", "a:1,b:2"});
+        assertEquals(0, config.getPort());
+        assertEquals(ServerConfig.Threading.VIRTUAL, config.getThreading());
+        assertEquals(ServerConfig.Persistence.SYNC, config.getPersistence());
+        assertEquals(Paths.get("state", "node1.json"), config.getDataPath());
+        assertEquals(5000, config.getExpiryMs());
+        assertEquals(2, config.getShards().size());
+
+        assertEquals(ServerConfig.Threading.THREAD_PER_CONNECTION,
+                ServerConfig.fromArgs(new String[]{"--threading", "thread-per-connection"}).getThreading());
+    }
+
+    /**
+     * Tests that an unknown mode name is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownModeRejected() {
+        ServerConfig.fromArgs(new String[]{"--persistence", "sometimes"});
+    }
+
+    /**
+     * Tests that replicating to a backup requires a cluster secret.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testReplicationNeedsClusterSecret() {
+        ServerConfig.fromArgs(new String[]{"--replicate-to", "localhost:4568"});
+    }
+}
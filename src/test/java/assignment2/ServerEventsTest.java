@@ -0,0 +1,99 @@
+package assignment2;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ServerEvents.
+ * Verifies that the events are off by default and that a recording captures every phase of a PUT,
+ * persistence, expiry sweeps and GET sizes.
+ */
+public class ServerEventsTest {
+
+    /**
+     * Tests that no event is recorded unless a recording enables it.
+     */
+    @Test
+    public void testDisabledByDefault() {
+        assertFalse(new ServerEvents.RequestPhase().isEnabled());
+        assertFalse(new ServerEvents.Persist().isEnabled());
+        assertFalse(new ServerEvents.ExpirySweep().isEnabled());
+        assertFalse(new ServerEvents.GetResponse().isEnabled());
+    }
+
+    /**
+     * Tests that a recording sees each PUT phase, the sync write, an expiry sweep and a GET's size.
+     */
+    @Test
+    public void testRecordingCapturesServerWork() throws Exception {
+        Path dir = Files.createTempDirectory("events");
+        AggregationServer server = new AggregationServer(new ServerConfig().setPort(0).setDataDir(dir)
+                .setPersistence(ServerConfig.Persistence.SYNC));
+        Path jfr = dir.resolve("server.jfr");
+        String json = "{\"id\":\"EVENTS\",\"air_temp\":\"20\"}";
+        try (Recording recording = new Recording()) {
+            recording.enable(ServerEvents.RequestPhase.class);
+            recording.enable(ServerEvents.Persist.class);
+            recording.enable(ServerEvents.ExpirySweep.class);
+            recording.enable(ServerEvents.GetResponse.class);
+            recording.start();
+
+            server.start();
+            assertTrue(exchange(server.getPort(), "PUT /weather.json HTTP/1.1\r\nContent-Length: " + json.length() + "\r\n\r\n" + json)
+                    .startsWith("HTTP/1.1 201"));
+            assertTrue(exchange(server.getPort(), "GET /weather.json HTTP/1.1\r\n\r\n").startsWith("HTTP/1.1 200"));
+            server.data.get("EVENTS").timestamp = 0;
+            server.removeExpired();
+
+            recording.stop();
+            recording.dump(jfr);
+        } finally {
+            server.stop();
+        }
+
+        Set<String> phases = new HashSet<>();
+        boolean synced = false;
+        int expired = 0;
+        long getBytes = 0;
+        for (RecordedEvent event : RecordingFile.readAllEvents(jfr)) {
+            switch (event.getEventType().getName()) {
+                case "assignment2.RequestPhase":
+                    phases.add(event.getString("phase"));
+                    break;
+                case "assignment2.Persist":
+                    synced |= event.getString("trigger").equals("sync") && event.getBoolean("succeeded");
+                    break;
+                case "assignment2.ExpirySweep":
+                    expired += event.getInt("removed");
+                    break;
+                case "assignment2.GetResponse":
+                    getBytes += event.getLong("bytes");
+                    break;
+            }
+        }
+        assertTrue(phases.containsAll(Arrays.asList("header", "body", "parse", "validate", "clock", "store", "response")));
+        assertTrue(synced);
+        assertEquals(1, expired);
+        assertEquals(json.length() + 2, getBytes);
+    }
+
+    // Sends one request on a new connection, reads the response until the server closes it, and returns the status line
+    private static String exchange(int port, String request) throws IOException {
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.getOutputStream().write(request.getBytes(StandardCharsets.UTF_8));
+            InputStream in = socket.getInputStream();
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\r\n", 2)[0];
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package assignment2;
+
+import static assignment2.TestRecords.record;
+import static org.junit.Assert.*;
+import org.junit.*;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * JUnit test class for ShardRouter.
+ * Uses a mock shard that answers every request with a fixed response.
+ */
+public class ShardRouterTest {
+
+    // Address of this node in the ring; nothing listens there, it is never contacted
+    private static final String SELF = "localhost:1";
+
+    private ServerSocket shardSocket;
+    private ExecutorService shardExecutor;
+    // Requests the mock shard has received
+    private final AtomicInteger requests = new AtomicInteger();
+
+    /**
+     * Stops the mock shard after each test.
+     */
+    @After
+    public void stopMockShard() throws IOException {
+        if (shardSocket != null) shardSocket.close();
+        if (shardExecutor != null) shardExecutor.shutdownNow();
+    }
+
+    /**
+     * Starts a mock shard that reads each request's headers and answers with the response, then closes
+     * the connection; a null response means it never answers.
+     */
+    private String startMockShard(String response) throws IOException {
+        shardSocket = new ServerSocket(0);
+        shardExecutor = Executors.newSingleThreadExecutor();
+        shardExecutor.submit(() -> {
+            try {
+                while (!shardSocket.isClosed()) {
+                    try (Socket socket = shardSocket.accept()) {
+                        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                        String line;
+                        while ((line = in.readLine()) != null && !line.isEmpty()) {
+                            // Headers are not checked
+                        }
+                        requests.incrementAndGet();
+                        if (response == null) {
+                            Thread.sleep(Long.MAX_VALUE);
+                        }
+                        OutputStream out = socket.getOutputStream();
+                        out.write(response.getBytes(StandardCharsets.UTF_8));
+                        out.flush();
+                    }
+                }
+            } catch (IOException | InterruptedException ignored) {
+                // Server socket closed: ignore for test shutdown
+            }
+            return null;
+        });
+        return "localhost:" + shardSocket.getLocalPort();
+    }
+
+    /**
+     * Tests that a shard's records are read one by one, and its Lamport time reaches the clock.
+     */
+    @Test
+    public void testStreamsRemoteRecords() throws Exception {
+        String shard = startMockShard("HTTP/1.1 200 OK\r\nLamport-Clock: 40\r\n\r\n"
+                + "[{\"id\":\"A\",\"air_temp\":\"1\"},{\"id\":\"B\",\"air_temp\":\"2\"}]");
+        ShardRouter router = new ShardRouter(new HashRing(List.of(SELF, shard)), SELF, null);
+        LamportClock clock = new LamportClock();
+
+        List<ShardRouter.RemoteRecords> remote = router.openRemote(clock, null);
+        assertEquals(1, remote.size());
+        try (ShardRouter.RemoteRecords records = remote.get(0)) {
+            assertEquals("A", records.next().get("id"));
+            assertEquals("B", records.next().get("id"));
+            assertNull(records.next());
+        }
+        assertTrue(clock.getTime() > 40);
+    }
+
+    /**
+     * Tests that a shard which accepts the connection but never answers is skipped after the gather
+     * timeout instead of holding up the GET.
+     */
+    @Test
+    public void testHungShardIsSkipped() throws Exception {
+        String shard = startMockShard(null);
+        ShardRouter router = new ShardRouter(new HashRing(List.of(SELF, shard)), SELF, null);
+
+        long start = System.currentTimeMillis();
+        assertTrue(router.openRemote(new LamportClock(), null).isEmpty());
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    /**
+     * Tests that a record the owner refuses with a 4xx is neither handed off nor offered again.
+     */
+    @Test
+    public void testRefusedHandoffIsNotRetried() throws Exception {
+        String shard = startMockShard("HTTP/1.1 400 Bad Request\r\nLamport-Clock: 1\r\nContent-Length: 0\r\n\r\n");
+        HashRing ring = new HashRing(List.of(SELF, shard));
+        String id = "ID0";
+        for (int i = 1; !ring.ownerOf(id).equals(shard); i++) id = "ID" + i;
+
+        Map<String, WeatherRecord> data = new ConcurrentHashMap<>();
+        data.put(id, record(id, 3));
+        List<String> handedOff = new CopyOnWriteArrayList<>();
+        new ShardRouter(ring, SELF, null).rebalance(data, (key, record) -> handedOff.add(key));
+
+        // Longer than the delay before a retry round
+        Thread.sleep(3000);
+        assertEquals(1, requests.get());
+        assertTrue(handedOff.isEmpty());
+    }
+}
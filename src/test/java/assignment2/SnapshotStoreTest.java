@@ -0,0 +1,123 @@
+package assignment2;
+
+import static assignment2.TestRecords.record;
+import static org.junit.Assert.*;
+import org.junit.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Unit tests for SnapshotStore.
+ * Verifies round trips, fallback to the previous snapshot on corruption, and legacy file loading.
+ */
+public class SnapshotStoreTest {
+
+    private static final String TEST_FILE = "test_snapshot.json";
+
+    /**
+     * Removes snapshot files left behind by a test.
+     */
+    @After
+    public void cleanUp() throws Exception {
+        for (String suffix : new String[] { "", ".tmp", ".prev" }) {
+            Files.deleteIfExists(Paths.get(TEST_FILE + suffix));
+        }
+    }
+
+    /**
+     * Tests that written records are loaded back unchanged.
+     */
+    @Test
+    public void testWriteThenLoad() throws Exception {
+        SnapshotStore store = new SnapshotStore(TEST_FILE, TimeSource.SYSTEM);
+        store.write(List.of(record("A", "20", 1), record("B", "21", 1)), 5);
+
+        List<WeatherRecord> loaded = new SnapshotStore(TEST_FILE, TimeSource.SYSTEM).load().getRecords();
+        assertEquals(2, loaded.size());
+        assertEquals("A", loaded.get(0).getData().get("id"));
+        assertEquals("21", loaded.get(1).getData().get("air_temp"));
+    }
+
+    /**
+     * Tests that Lamport times, update timestamps and the clock high-water mark survive a reload,
+     * and that the reserved metadata fields do not leak into the weather data.
+     */
+    @Test
+    public void testPreservesLamportAndTimestamp() throws Exception {
+        WeatherRecord original = record("A", "20", 1);
+        original.lamport = 42;
+        original.timestamp = 1234567L;
+        new SnapshotStore(TEST_FILE, TimeSource.SYSTEM).write(List.of(original), 50);
+
+        SnapshotStore.Snapshot snapshot = new SnapshotStore(TEST_FILE, TimeSource.SYSTEM).load();
+        WeatherRecord loaded = snapshot.getRecords().get(0);
+        assertEquals(50, snapshot.getClockTime());
+        assertEquals(42, loaded.lamport);
+        assertEquals(1234567L, loaded.timestamp);
+        assertEquals(original.getData(), loaded.getData());
+    }
+
+    /**
+     * Tests that data fields named like the metadata cannot override it, and that a record line
+     * with unreadable metadata is skipped without losing the rest of the snapshot.
+     */
+    @Test
+    public void testBadRecordSkippedAlone() throws Exception {
+        WeatherRecord spoofed = record("A", "20", 1);
+        spoofed.getData().put("_lamport", "x");
+        spoofed.lamport = 7;
+        SnapshotStore store = new SnapshotStore(TEST_FILE, TimeSource.SYSTEM);
+        store.write(List.of(spoofed), 7);
+        assertEquals(7, new SnapshotStore(TEST_FILE, TimeSource.SYSTEM).load().getRecords().get(0).lamport);
+
+        store.writeLines(List.of("{\"id\":\"BAD\",\"_lamport\":\"x\"}", SnapshotStore.toLine(record("B", "21", 1))).iterator(), 8);
+        List<WeatherRecord> loaded = new SnapshotStore(TEST_FILE, TimeSource.SYSTEM).load().getRecords();
+        assertEquals(1, loaded.size());
+        assertEquals("B", loaded.get(0).getData().get("id"));
+    }
+
+    /**
+     * Tests that a corrupted live file is skipped in favour of the previous valid snapshot.
+     */
+    @Test
+    public void testCorruptSnapshotFallsBackToPrevious() throws Exception {
+        SnapshotStore store = new SnapshotStore(TEST_FILE, TimeSource.SYSTEM);
+        store.write(List.of(record("A", "20", 1)), 1);
+        store.write(List.of(record("A", "30", 1)), 2);
+
+        // Flip a value without fixing the checksum
+        Path live = Paths.get(TEST_FILE);
+        String content = Files.readString(live, StandardCharsets.UTF_8).replace("30", "99");
+        Files.writeString(live, content, StandardCharsets.UTF_8);
+
+        List<WeatherRecord> loaded = new SnapshotStore(TEST_FILE, TimeSource.SYSTEM).load().getRecords();
+        assertEquals(1, loaded.size());
+        assertEquals("20", loaded.get(0).getData().get("air_temp"));
+    }
+
+    /**
+     * Tests that a plain JSON array written by older versions is still accepted.
+     */
+    @Test
+    public void testLoadsLegacyFormat() throws Exception {
+        Files.writeString(Paths.get(TEST_FILE), "[{\"id\":\"A\",\"temp\":\"20\"},{\"id\":\"B\",\"temp\":\"21\"}]");
+
+        List<WeatherRecord> loaded = new SnapshotStore(TEST_FILE, TimeSource.SYSTEM).load().getRecords();
+        assertEquals(2, loaded.size());
+        assertEquals("B", loaded.get(1).getData().get("id"));
+    }
+
+    /**
+     * Tests that a record saved without an update time is dated by the store's time source.
+     */
+    @Test
+    public void testMissingTimestampTakenFromTimeSource() throws Exception {
+        new SnapshotStore(TEST_FILE, TimeSource.SYSTEM).writeLines(List.of("{\"id\":\"A\",\"_lamport\":\"3\"}").iterator(), 3);
+
+        WeatherRecord loaded = new SnapshotStore(TEST_FILE, new ManualTimeSource(5000)).load().getRecords().get(0);
+        assertEquals(3, loaded.lamport);
+        assertEquals(5000, loaded.timestamp);
+    }
+}
@@ -0,0 +1,83 @@
+package assignment2;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static assignment2.TestRecords.record;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for StationCapacity.
+ * Verifies both eviction orders, refusal when eviction is off, the byte budget and lazy deletion.
+ */
+public class StationCapacityTest {
+    private final Map<String, WeatherRecord> data = new ConcurrentHashMap<>();
+
+    /**
+     * Tests that LRU evicts the station whose last PUT is oldest, skipping records already replaced.
+     */
+    @Test
+    public void testLruEvictsLeastRecentlyPut() {
+        StationCapacity capacity = new StationCapacity(data, 2, 0, ServerConfig.Eviction.LRU);
+        put(capacity, "A", 1);
+        put(capacity, "B", 2);
+        put(capacity, "A", 3);   // A is now more recent than B; its first record is stale in the queue
+
+        WeatherRecord c = record("C", 4);
+        assertEquals(1, capacity.makeRoom(c));
+        assertEquals(Collections.singleton("A"), data.keySet());
+    }
+
+    /**
+     * Tests that OLDEST_LAMPORT evicts by Lamport time rather than by arrival order.
+     */
+    @Test
+    public void testOldestLamportEvictsLowestTime() {
+        StationCapacity capacity = new StationCapacity(data, 2, 0, ServerConfig.Eviction.OLDEST_LAMPORT);
+        put(capacity, "A", 10);
+        put(capacity, "B", 5);   // Arrived later, but replicated with an older time
+
+        assertEquals(1, capacity.makeRoom(record("C", 11)));
+        assertEquals(Collections.singleton("A"), data.keySet());
+    }
+
+    /**
+     * Tests that a full store refuses new stations when eviction is off and accepts them otherwise.
+     */
+    @Test
+    public void testNoEvictionRefuses() {
+        StationCapacity capacity = new StationCapacity(data, 1, 0, ServerConfig.Eviction.NONE);
+        assertEquals(0, capacity.makeRoom(record("A", 1)));
+        put(capacity, "A", 1);
+        assertEquals(-1, capacity.makeRoom(record("B", 2)));
+        assertEquals(1, data.size());
+    }
+
+    /**
+     * Tests that the byte budget counts estimated record sizes and evicts enough to fit a new record.
+     */
+    @Test
+    public void testByteBudget() {
+        long size = record("A", 1).estimatedBytes();
+        StationCapacity capacity = new StationCapacity(data, 0, 3 * size, ServerConfig.Eviction.LRU);
+        put(capacity, "A", 1);
+        put(capacity, "B", 2);
+        put(capacity, "C", 3);
+        assertEquals(3 * size, capacity.getBytes());
+
+        assertEquals(1, capacity.makeRoom(record("D", 4)));
+        assertEquals(2 * size, capacity.getBytes());
+        assertFalse(data.containsKey("A"));
+
+        data.clear();
+        capacity.recount();
+        assertEquals(0, capacity.getBytes());
+    }
+
+    private void put(StationCapacity capacity, String id, int lamport) {
+        WeatherRecord record = record(id, lamport);
+        capacity.stored(record, data.put(id, record));
+    }
+}
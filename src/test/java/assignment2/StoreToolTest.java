@@ -0,0 +1,118 @@
+package assignment2;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static assignment2.TestRecords.record;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for StoreTool.
+ * Verifies importing weather files and NDJSON into one snapshot, and exporting a live server as NDJSON.
+ */
+public class StoreToolTest {
+
+    /**
+     * Tests that files and NDJSON merge into one loadable snapshot, later inputs winning for
+     * duplicate ids and invalid records being counted rather than stored.
+     */
+    @Test
+    public void testImportMergesIntoOneSnapshot() throws IOException {
+        Path dir = Files.createTempDirectory("import");
+        Path stations = Files.createDirectory(dir.resolve("stations"));
+        Files.write(stations.resolve("a.txt"), "id: A\nair_temp: 20\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(stations.resolve("b.txt"), "id: B\nair_temp: 21\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(stations.resolve("bad.txt"), "id: BAD\nair_temp: hot\n".getBytes(StandardCharsets.UTF_8));
+        String ndjson = "{\"id\":\"C\",\"air_temp\":\"22\"}\n\nnot json\n{\"id\":\"A\",\"air_temp\":\"30\"}\n";
+
+        Path snapshot = dir.resolve("server_data.json");
+        try (StoreTool tool = new StoreTool(WeatherSchema.defaults(), 2)) {
+            tool.addFiles(Collections.singletonList(stations));
+            tool.addNdjson(new BufferedReader(new StringReader(ndjson)));
+            tool.writeSnapshot(snapshot);
+            assertEquals(3, tool.getStations());
+            assertEquals(2, tool.getRejected());
+        }
+
+        Map<String, String> temps = new HashMap<>();
+        for (WeatherRecord record : new SnapshotStore(snapshot.toString(), TimeSource.SYSTEM).load().getRecords()) {
+            temps.put(record.getData().get("id"), record.getData().get("air_temp"));
+        }
+        assertEquals("30", temps.get("A"));
+        assertEquals("21", temps.get("B"));
+        assertEquals("22", temps.get("C"));
+        assertEquals(3, temps.size());
+    }
+
+    /**
+     * Tests that an existing snapshot is merged in by Lamport time, with inputs numbered after its
+     * clock, and that replacing it drops its records but never moves the clock back.
+     */
+    @Test
+    public void testMergesOrReplacesExistingSnapshot() throws IOException {
+        Path snapshot = Files.createTempDirectory("import").resolve("server_data.json");
+        String ndjson = "{\"id\":\"A\",\"air_temp\":\"30\"}\n"
+                + "{\"id\":\"B\",\"air_temp\":\"31\",\"_lamport\":\"10\"}\n";
+
+        new SnapshotStore(snapshot.toString(), TimeSource.SYSTEM).write(List.of(record("A", "20", 50), record("B", "21", 60), record("C", "22", 70)), 100);
+        try (StoreTool tool = new StoreTool(WeatherSchema.defaults(), 1)) {
+            tool.addSnapshot(snapshot);
+            tool.addNdjson(new BufferedReader(new StringReader(ndjson)));
+            tool.writeSnapshot(snapshot);
+        }
+        SnapshotStore.Snapshot merged = new SnapshotStore(snapshot.toString(), TimeSource.SYSTEM).load();
+        Map<String, WeatherRecord> byId = new HashMap<>();
+        for (WeatherRecord record : merged.getRecords()) byId.put(record.getData().get("id"), record);
+        assertEquals("30", byId.get("A").getData().get("air_temp"));
+        assertTrue(byId.get("A").lamport > 100);
+        assertEquals("21", byId.get("B").getData().get("air_temp"));
+        assertEquals("22", byId.get("C").getData().get("air_temp"));
+        assertTrue(merged.getClockTime() > 100);
+
+        int clock = merged.getClockTime();
+        try (StoreTool tool = new StoreTool(WeatherSchema.defaults(), 1)) {
+            tool.addNdjson(new BufferedReader(new StringReader(ndjson)));
+            tool.writeSnapshot(snapshot);
+        }
+        SnapshotStore.Snapshot replaced = new SnapshotStore(snapshot.toString(), TimeSource.SYSTEM).load();
+        assertEquals(2, replaced.getRecords().size());
+        assertEquals(clock, replaced.getClockTime());
+    }
+
+    /**
+     * Tests that export writes one NDJSON line per stored record, in a form import accepts.
+     */
+    @Test
+    public void testExportRoundTrip() throws Exception {
+        AggregationServer server = new AggregationServer(new ServerConfig().setPort(0).setPersistence(ServerConfig.Persistence.NONE));
+        server.start();
+        StringWriter out = new StringWriter();
+        try {
+            for (String id : new String[] { "X", "Y" }) {
+                Map<String, String> data = new LinkedHashMap<>();
+                data.put("id", id);
+                data.put("name", "Zürich " + id);
+                server.data.put(id, new WeatherRecord(data, 1, "test", TimeSource.SYSTEM.currentTimeMillis()));
+            }
+            assertEquals(2, StoreTool.export("localhost", server.getPort(), null, out));
+            assertEquals(1, StoreTool.export("localhost", server.getPort(), "id=X", new StringWriter()));
+        } finally {
+            server.stop();
+        }
+
+        String[] lines = out.toString().split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(out.toString().contains("Zürich X"));
+
+        try (StoreTool tool = new StoreTool(WeatherSchema.defaults(), 1)) {
+            tool.addNdjson(new BufferedReader(new StringReader(out.toString())));
+            assertEquals(2, tool.getStations());
+            assertEquals(0, tool.getRejected());
+        }
+    }
+}
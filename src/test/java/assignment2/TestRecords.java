@@ -0,0 +1,31 @@
+package assignment2;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Weather record fixtures shared by the unit tests.
+ * Every record comes from source "test" and is dated at time 1000.
+ */
+final class TestRecords {
+
+    private TestRecords() {
+    }
+
+    /**
+     * Returns a record for the station with an air temperature of 20.
+     */
+    static WeatherRecord record(String id, int lamport) {
+        return record(id, "20", lamport);
+    }
+
+    /**
+     * Returns a record for the station with the given air temperature.
+     */
+    static WeatherRecord record(String id, String temp, int lamport) {
+        Map<String, String> data = new LinkedHashMap<>();
+        data.put("id", id);
+        data.put("air_temp", temp);
+        return new WeatherRecord(data, lamport, "test", 1000);
+    }
+}
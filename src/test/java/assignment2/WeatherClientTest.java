@@ -0,0 +1,119 @@
+package assignment2;
+
+import org.junit.*;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for WeatherClient against an in-process AggregationServer.
+ * Verifies TTL cache hits, 304 revalidation, refetching after changes and connection reuse.
+ */
+public class WeatherClientTest {
+    private AggregationServer server;
+
+    @Before
+    public void startServer() throws IOException {
+        server = new AggregationServer(new ServerConfig().setPort(0).setPersistence(ServerConfig.Persistence.NONE));
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop();
+    }
+
+    /**
+     * Tests that reads within the TTL never reach the server.
+     */
+    @Test
+    public void testReadsWithinTtlAreLocal() throws IOException {
+        put("{\"id\":\"A\",\"air_temp\":\"13.3\"}");
+        try (WeatherClient client = new WeatherClient("localhost", server.getPort(), 60000)) {
+            assertEquals("13.3", client.get("A").get("air_temp"));
+            long requests = server.metrics.get("get.requests");
+            for (int i = 0; i < 10; i++) assertEquals(1, client.getAll().size());
+
+            assertEquals(requests, server.metrics.get("get.requests"));
+            assertEquals(10, client.getCacheHits());
+            assertEquals(1, client.getFullFetches());
+        }
+    }
+
+    /**
+     * Tests that expired entries are revalidated with 304 while the data is unchanged,
+     * refetched once it changes, and that every request reuses one pooled connection.
+     */
+    @Test
+    public void testRevalidationAndRefetch() throws IOException {
+        put("{\"id\":\"A\",\"air_temp\":\"13.3\"}");
+        try (WeatherClient client = new WeatherClient("localhost", server.getPort(), 0)) {
+            client.getAll();
+            client.getAll();
+            client.getAll();
+            assertEquals(1, client.getFullFetches());
+            assertEquals(2, client.getRevalidations());
+            assertEquals(2, server.metrics.get("get.not_modified"));
+
+            put("{\"id\":\"B\",\"air_temp\":\"9.1\"}");
+            Map<String, Map<String, String>> records = client.getAll();
+            assertEquals(2, records.size());
+            assertEquals("9.1", records.get("B").get("air_temp"));
+            assertEquals(2, client.getFullFetches());
+            assertEquals(1, client.getConnectionsOpened());
+        }
+    }
+
+    /**
+     * Tests that after a restart, whose data version starts over, the cached ETag no longer matches,
+     * so the client downloads the new server's records instead of getting a false 304.
+     */
+    @Test
+    public void testRestartedServerDoesNotMatchOldETag() throws IOException {
+        put("{\"id\":\"A\",\"air_temp\":\"13.3\"}");
+        int port = server.getPort();
+        try (WeatherClient client = new WeatherClient("localhost", port, 0)) {
+            assertTrue(client.getAll().containsKey("A"));
+
+            server.stop();
+            server = new AggregationServer(new ServerConfig().setPort(port).setPersistence(ServerConfig.Persistence.NONE));
+            server.start();
+            put("{\"id\":\"B\",\"air_temp\":\"9.1\"}");
+
+            Map<String, Map<String, String>> records = client.getAll();
+            assertFalse(records.containsKey("A"));
+            assertTrue(records.containsKey("B"));
+            assertEquals(0, client.getRevalidations());
+            assertEquals(0, server.metrics.get("get.not_modified"));
+        }
+    }
+
+    /**
+     * Tests that an empty server yields an empty map rather than an error.
+     */
+    @Test
+    public void testEmptyServer() throws IOException {
+        try (WeatherClient client = new WeatherClient("localhost", server.getPort(), 0)) {
+            assertTrue(client.getAll().isEmpty());
+            assertTrue(client.getAll().isEmpty());
+            assertEquals(1, client.getRevalidations());
+        }
+    }
+
+    // Stores one record through a plain PUT
+    private void put(String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write(("PUT /weather.json HTTP/1.1\r\nContent-Length: " + body.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.write(body);
+            out.flush();
+            String status = new BufferedReader(new InputStreamReader(socket.getInputStream())).readLine();
+            assertTrue(status, status.startsWith("HTTP/1.1 20"));
+        }
+    }
+}
@@ -2,6 +2,7 @@ package assignment2;
 
 import org.junit.Test;
 
+import java.nio.charset.StandardCharsets;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -15,10 +16,50 @@ public class WeatherRecordTest {
         map.put("id", "ID123");
         map.put("temp", "25");
 
-        WeatherRecord wr = new WeatherRecord(map, 3);
+        WeatherRecord wr = new WeatherRecord(map, 3, "a", 1000);
 
         assertEquals(map, wr.getData());
         assertEquals(3, wr.lamport);
-        assertTrue(wr.timestamp > 0);
+        assertEquals(1000, wr.timestamp);
+    }
+
+    @Test
+    public void testNewerByLamportThenSource() {
+        Map<String, String> map = new LinkedHashMap<>();
+        map.put("id", "ID123");
+
+        WeatherRecord older = new WeatherRecord(map, 3, "b", 1000);
+        WeatherRecord newer = new WeatherRecord(map, 4, "a", 1000);
+        WeatherRecord tie = new WeatherRecord(map, 4, "c", 1000);
+
+        assertTrue(newer.isNewerThan(older));
+        assertFalse(older.isNewerThan(newer));
+        assertTrue(tie.isNewerThan(newer));
+        assertFalse(newer.isNewerThan(tie));
+    }
+
+    @Test
+    public void testJsonBytesAreEncodedOnce() {
+        Map<String, String> map = new LinkedHashMap<>();
+        map.put("id", "ID123");
+        map.put("name", "Mélbourne");
+
+        WeatherRecord wr = new WeatherRecord(map, 1, "a", 1000);
+
+        byte[] json = wr.getJsonBytes();
+        assertSame(json, wr.getJsonBytes());
+        assertEquals(SimpleJsonParser.toJson(map), new String(json, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testExpiryIsJudgedAgainstGivenTime() {
+        Map<String, String> map = new LinkedHashMap<>();
+        map.put("id", "ID123");
+        ManualTimeSource time = new ManualTimeSource(1000);
+
+        WeatherRecord wr = new WeatherRecord(map, 1, "a", time.currentTimeMillis());
+
+        assertFalse(wr.isExpired(time.advance(30000), 30000));
+        assertTrue(wr.isExpired(time.advance(1), 30000));
     }
 }
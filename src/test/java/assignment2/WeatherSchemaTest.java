@@ -0,0 +1,114 @@
+package assignment2;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for WeatherSchema.
+ * Verifies typed parsing, range and format checks, and loading a schema file.
+ */
+public class WeatherSchemaTest {
+
+    /**
+     * Tests that the sample station passes the default schema and its numbers are parsed once.
+     */
+    @Test
+    public void testDefaultsAcceptSampleData() {
+        Map<String, String> record = new LinkedHashMap<>();
+        record.put("id", "IDS60901");
+        record.put("lat", "-34.9");
+        record.put("local_date_time_full", "20230715160000");
+        record.put("air_temp", "13.3");
+        record.put("rel_hum", "60");
+        record.put("wind_dir", "S");
+
+        Map<String, Number> numbers = WeatherSchema.defaults().validate(record);
+        assertEquals(-34.9, numbers.get("lat").doubleValue(), 0.0);
+        assertEquals(13.3, numbers.get("air_temp").doubleValue(), 0.0);
+        assertEquals(20230715160000L, numbers.get("local_date_time_full"));
+        assertEquals(60L, numbers.get("rel_hum"));
+        assertFalse(numbers.containsKey("wind_dir"));
+    }
+
+    /**
+     * Tests that malformed, out-of-range, reserved and missing values are rejected.
+     */
+    @Test
+    public void testRejectsInvalidValues() {
+        WeatherSchema schema = WeatherSchema.defaults();
+        String[][] invalid = {
+                {"air_temp", "warm"},
+                {"air_temp", "NaN"},
+                {"air_temp", "1e"},
+                {"lat", "-91"},
+                {"rel_hum", "60.5"},
+                {"press", "0x3FF"},
+                {"air_temp", "\u0661\u0662"},
+                {"rel_hum", "\u0661\u0662"},
+        };
+        for (String[] field : invalid) {
+            Map<String, String> record = new HashMap<>();
+            record.put("id", "A");
+            record.put(field[0], field[1]);
+            try {
+                schema.validate(record);
+                fail("Expected rejection of " + field[0] + "=" + field[1]);
+            } catch (WeatherSchema.ValidationException e) {
+                assertTrue(e.getMessage().contains(field[0]));
+            }
+        }
+
+        Map<String, String> reserved = new HashMap<>();
+        reserved.put("id", "A");
+        reserved.put("_lamport", "x");
+        try {
+            schema.validate(reserved);
+            fail("Expected rejection of a reserved field");
+        } catch (WeatherSchema.ValidationException e) {
+            assertTrue(e.getMessage().contains("_lamport"));
+        }
+
+        try {
+            schema.validate(Collections.singletonMap("air_temp", "1"));
+            fail("Expected rejection of a record without id");
+        } catch (WeatherSchema.ValidationException e) {
+            assertTrue(e.getMessage().contains("id"));
+        }
+    }
+
+    /**
+     * Tests loading a schema file, including rejection of unknown fields.
+     */
+    @Test
+    public void testLoadFromFile() throws IOException {
+        Path file = Files.createTempFile("schema", ".txt");
+        try {
+            Files.write(file, Arrays.asList("# test schema", "temp: number min=-50 max=60", "unknown: reject"), StandardCharsets.UTF_8);
+            WeatherSchema schema = WeatherSchema.load(file);
+            assertEquals(WeatherSchema.Type.NUMBER, schema.typeOf("temp"));
+            assertEquals(WeatherSchema.Type.STRING, schema.typeOf("id"));
+
+            Map<String, String> record = new HashMap<>();
+            record.put("id", "A");
+            record.put("temp", "25");
+            assertEquals(25.0, schema.validate(record).get("temp").doubleValue(), 0.0);
+
+            record.put("extra", "x");
+            try {
+                schema.validate(record);
+                fail("Expected rejection of an unknown field");
+            } catch (WeatherSchema.ValidationException e) {
+                assertTrue(e.getMessage().contains("extra"));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+}